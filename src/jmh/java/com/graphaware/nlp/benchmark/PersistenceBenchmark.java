@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.benchmark;
+
+import com.graphaware.nlp.NLPManager;
+import com.graphaware.nlp.configuration.DynamicConfiguration;
+import com.graphaware.nlp.domain.AnnotatedText;
+import com.graphaware.nlp.persistence.constants.Labels;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the persistence of annotated texts into an impermanent database. Run with {@code -prof gc} (the default
+ * of the benchmark profile) to get the allocation rate, and compare the {@code feature} values to isolate the cost
+ * of tags, tag occurrences, dependencies, phrases and coreferences.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class PersistenceBenchmark {
+
+    private static final int DOCUMENTS_PER_ITERATION = 1000;
+
+    @Param({"TAGS", "OCCURRENCES", "DEPENDENCIES", "PHRASES", "COREF"})
+    public SyntheticAnnotatedTextGenerator.Feature feature;
+
+    @Param({"20"})
+    public int sentences;
+
+    @Param({"25"})
+    public int tokensPerSentence;
+
+    @Param({"10000"})
+    public int vocabulary;
+
+    @Param({"0.8"})
+    public double dependencyDensity;
+
+    @Param({"3"})
+    public int phrasesPerSentence;
+
+    @Param({"0.3"})
+    public double corefRatio;
+
+    private GraphDatabaseService database;
+    private NLPManager manager;
+    private SyntheticAnnotatedTextGenerator generator;
+    private List<AnnotatedText> documents;
+    private int next;
+    private long documentId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        DynamicConfiguration configuration = new DynamicConfiguration(database);
+        manager = NLPManager.getInstance();
+        manager.init(database, configuration);
+        createSchema(configuration);
+        generator = new SyntheticAnnotatedTextGenerator(sentences, tokensPerSentence, vocabulary, dependencyDensity,
+                phrasesPerSentence, corefRatio, feature, 42L);
+    }
+
+    @Setup(Level.Iteration)
+    public void generateDocuments() {
+        // Generation is kept out of the measured code
+        documents = new ArrayList<>(DOCUMENTS_PER_ITERATION);
+        for (int i = 0; i < DOCUMENTS_PER_ITERATION; ++i) {
+            documents.add(generator.next());
+        }
+        next = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public Node persistAnnotatedText() {
+        AnnotatedText annotatedText = documents.get(next++ % documents.size());
+        String id = "doc-" + documentId++;
+        try (Transaction tx = database.beginTx()) {
+            Node node = manager.persistAnnotatedText(annotatedText, id, id);
+            tx.success();
+            return node;
+        }
+    }
+
+    private void createSchema(DynamicConfiguration configuration) {
+        try (Transaction tx = database.beginTx()) {
+            for (Labels label : new Labels[]{Labels.AnnotatedText, Labels.Sentence, Labels.Tag}) {
+                Label schemaLabel = configuration.getLabelFor(label);
+                database.schema().constraintFor(schemaLabel).assertPropertyIsUnique("id").create();
+            }
+            tx.success();
+        }
+        try (Transaction tx = database.beginTx()) {
+            database.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+            tx.success();
+        }
+    }
+}
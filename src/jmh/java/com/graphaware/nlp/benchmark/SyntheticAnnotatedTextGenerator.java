@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.benchmark;
+
+import com.graphaware.nlp.domain.AnnotatedText;
+import com.graphaware.nlp.domain.OptimizedCoreference;
+import com.graphaware.nlp.domain.Phrase;
+import com.graphaware.nlp.domain.Sentence;
+import com.graphaware.nlp.domain.Tag;
+import com.graphaware.nlp.domain.TagOccurrence;
+import com.graphaware.nlp.domain.TypedDependency;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds deterministic {@link AnnotatedText} instances of configurable size without running a text processor.
+ * Each {@link Feature} includes the previous ones, so the difference between two successive features measures
+ * the cost of one persistence sub-step.
+ */
+public class SyntheticAnnotatedTextGenerator {
+
+    public enum Feature {
+        TAGS, OCCURRENCES, DEPENDENCIES, PHRASES, COREF
+    }
+
+    private static final String LANGUAGE = "en";
+    private static final String[] POS = {"NN", "NNS", "VB", "JJ", "RB", "DT"};
+    private static final String[] NE = {"PERSON", "LOCATION", "ORGANIZATION"};
+
+    private final int sentences;
+    private final int tokensPerSentence;
+    private final int vocabulary;
+    private final double dependencyDensity;
+    private final int phrasesPerSentence;
+    private final double corefRatio;
+    private final Feature feature;
+    private final Random random;
+
+    public SyntheticAnnotatedTextGenerator(int sentences, int tokensPerSentence, int vocabulary, double dependencyDensity,
+                                           int phrasesPerSentence, double corefRatio, Feature feature, long seed) {
+        this.sentences = sentences;
+        this.tokensPerSentence = tokensPerSentence;
+        this.vocabulary = vocabulary;
+        this.dependencyDensity = dependencyDensity;
+        this.phrasesPerSentence = phrasesPerSentence;
+        this.corefRatio = corefRatio;
+        this.feature = feature;
+        this.random = new Random(seed);
+    }
+
+    public AnnotatedText next() {
+        AnnotatedText annotatedText = new AnnotatedText();
+        Sentence previous = null;
+        for (int s = 0; s < sentences; ++s) {
+            Sentence sentence = nextSentence(s);
+            if (includes(Feature.COREF) && previous != null && random.nextDouble() < corefRatio) {
+                TagOccurrence mention = firstOccurrence(sentence);
+                mention.setCoreference(new OptimizedCoreference(previous, firstOccurrence(previous)));
+            }
+            annotatedText.addSentence(sentence);
+            previous = sentence;
+        }
+
+        return annotatedText;
+    }
+
+    private Sentence nextSentence(int sentenceNumber) {
+        List<String> words = new ArrayList<>();
+        for (int t = 0; t < tokensPerSentence; ++t) {
+            words.add("w" + random.nextInt(vocabulary));
+        }
+        Sentence sentence = new Sentence(String.join(" ", words), sentenceNumber);
+        int begin = 0;
+        for (int t = 0; t < words.size(); ++t) {
+            String word = words.get(t);
+            Tag tag = sentence.addTag(newTag(word));
+            if (includes(Feature.OCCURRENCES)) {
+                sentence.addTagOccurrence(begin, begin + word.length(), word, tag,
+                        Collections.singletonList(sentenceNumber + "_" + (t + 1)));
+            }
+            if (includes(Feature.DEPENDENCIES) && t > 0 && random.nextDouble() < dependencyDensity) {
+                sentence.addTypedDependency(new TypedDependency(sentenceNumber + "_" + t,
+                        sentenceNumber + "_" + (t + 1), "dep", null));
+            }
+            begin += word.length() + 1;
+        }
+        if (includes(Feature.PHRASES)) {
+            for (int p = 0; p < phrasesPerSentence && p + 1 < words.size(); ++p) {
+                String content = words.get(p) + " " + words.get(p + 1);
+                int start = sentence.getSentence().indexOf(content);
+                sentence.addPhraseOccurrence(Math.max(start, 0), Math.max(start, 0) + content.length(), new Phrase(content));
+            }
+        }
+
+        return sentence;
+    }
+
+    private Tag newTag(String word) {
+        Tag tag = new Tag(word, LANGUAGE);
+        tag.setPos(Collections.singletonList(POS[random.nextInt(POS.length)]));
+        if (random.nextInt(10) == 0) {
+            tag.setNe(Collections.singletonList(NE[random.nextInt(NE.length)]));
+        }
+
+        return tag;
+    }
+
+    private TagOccurrence firstOccurrence(Sentence sentence) {
+        return sentence.getTagOccurrences().get(0).get(0);
+    }
+
+    private boolean includes(Feature required) {
+        return feature.ordinal() >= required.ordinal();
+    }
+}
@@ -24,6 +24,8 @@ import com.graphaware.nlp.configuration.SettingsConstants;
 import com.graphaware.nlp.domain.AnnotatedText;
 import com.graphaware.nlp.domain.VectorContainer;
 import com.graphaware.nlp.dsl.request.*;
+import com.graphaware.nlp.dsl.result.BatchAnnotationResult;
+import com.graphaware.nlp.dsl.result.BulkImportExportResult;
 import com.graphaware.nlp.dsl.result.TextProcessorItem;
 import com.graphaware.nlp.enrich.Enricher;
 import com.graphaware.nlp.enrich.EnrichmentRegistry;
@@ -36,7 +38,10 @@ import com.graphaware.nlp.language.LanguageManager;
 import com.graphaware.nlp.ml.textrank.TextRankSummarizer;
 import com.graphaware.nlp.ml.word2vec.Word2VecProcessor;
 import com.graphaware.nlp.persistence.PersistenceRegistry;
+import com.graphaware.nlp.persistence.PersistenceSession;
+import com.graphaware.nlp.persistence.bulk.BulkImportExporter;
 import com.graphaware.nlp.persistence.constants.Properties;
+import com.graphaware.nlp.persistence.persisters.AnnotatedTextPersister;
 import com.graphaware.nlp.persistence.persisters.Persister;
 import com.graphaware.nlp.processor.TextProcessor;
 import com.graphaware.nlp.processor.TextProcessorsManager;
@@ -47,12 +52,22 @@ import com.graphaware.nlp.vector.VectorHandler;
 import org.apache.http.MethodNotSupportedException;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.api.KernelTransaction;
 import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 
 import javax.ws.rs.NotSupportedException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public final class NLPManager {
 
@@ -60,8 +75,14 @@ public final class NLPManager {
     private static final String NEO4j_HOME = "unsupported.dbms.directories.neo4j_home";
     private static final String IMPORT_DIR_CONF_KEY = "dbms.directories.import";
 
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
     private static NLPManager instance = null;
 
+    // actions deferred until the commit of the transaction of the thread, transaction objects are pooled so the
+    // start time tells a new transaction from the one the actions were registered in
+    private final ThreadLocal<PendingActions> pendingActions = new ThreadLocal<>();
+
     private TextProcessorsManager textProcessorsManager;
 
     protected GraphDatabaseService database;
@@ -109,7 +130,7 @@ public final class NLPManager {
         this.database = database;
         this.persistenceRegistry = new PersistenceRegistry(database);
         this.enrichmentRegistry = buildAndRegisterEnrichers();
-        this.eventDispatcher = new EventDispatcher();
+        this.eventDispatcher = createEventDispatcher();
         loadExtensions();
         if (textProcessorsManager == null) {
             this.textProcessorsManager = new TextProcessorsManager(configuration);
@@ -122,6 +143,23 @@ public final class NLPManager {
         initialized = true;
     }
 
+    private EventDispatcher createEventDispatcher() {
+        int threads = EventDispatcher.DEFAULT_THREADS;
+        int queueSize = EventDispatcher.DEFAULT_QUEUE_SIZE;
+        EventDispatcher.BackPressurePolicy policy = EventDispatcher.BackPressurePolicy.BLOCK;
+        if (configuration.hasSettingValue(SettingsConstants.EVENT_DISPATCHER_THREADS)) {
+            threads = Integer.valueOf(configuration.getSettingValueFor(SettingsConstants.EVENT_DISPATCHER_THREADS).toString());
+        }
+        if (configuration.hasSettingValue(SettingsConstants.EVENT_DISPATCHER_QUEUE_SIZE)) {
+            queueSize = Integer.valueOf(configuration.getSettingValueFor(SettingsConstants.EVENT_DISPATCHER_QUEUE_SIZE).toString());
+        }
+        if (configuration.hasSettingValue(SettingsConstants.EVENT_DISPATCHER_BACK_PRESSURE)) {
+            policy = EventDispatcher.BackPressurePolicy.valueOf(configuration.getSettingValueFor(SettingsConstants.EVENT_DISPATCHER_BACK_PRESSURE).toString().toUpperCase());
+        }
+
+        return new EventDispatcher(threads, queueSize, policy);
+    }
+
     public TextProcessorsManager getTextProcessorsManager() {
         return textProcessorsManager;
     }
@@ -136,14 +174,18 @@ public final class NLPManager {
 
     public Node annotateTextAndPersist(AnnotationRequest annotationRequest) {
         return annotateTextAndPersist(annotationRequest.getText(), annotationRequest.getId(),
-                annotationRequest.getPipeline());
+                annotationRequest.getPipeline(), annotationRequest.isIncremental());
     }
 
     public Node annotateTextAndPersist(String text, String id, String pipelineName) {
+        return annotateTextAndPersist(text, id, pipelineName, false);
+    }
+
+    public Node annotateTextAndPersist(String text, String id, String pipelineName, boolean incremental) {
         PipelineSpecification pipelineSpecification = textProcessorsManager.getPipelineSpecification(pipelineName);
         LOG.info("Annotating with ID " + id);
         AnnotatedText at = textProcessorsManager.annotate(text, pipelineSpecification);
-        return processAnnotationPersist(id, text, at, pipelineSpecification);
+        return processAnnotationPersist(id, text, at, pipelineSpecification, new PersistenceSession(), incremental);
     }
 
     public Node annotateTextAndPersist(String text, String id, PipelineSpecification pipelineSpecification) {
@@ -153,22 +195,258 @@ public final class NLPManager {
         return processAnnotationPersist(id, text, annotatedText, pipelineSpecification);
     }
 
+    public List<BatchAnnotationResult> annotateTextAndPersistBatch(BatchAnnotationRequest request) {
+        PipelineSpecification pipelineSpecification = textProcessorsManager.getPipelineSpecification(request.getPipeline());
+        List<Map<String, Object>> input = request.getInput();
+        int batchSize = request.getBatchSize();
+        ExecutorService annotators = Executors.newFixedThreadPool(request.getConcurrency());
+        // Top level transactions are bound to the calling thread, batches are committed from a dedicated writer
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        List<BatchAnnotationResult> results = new ArrayList<>();
+        try {
+            LOG.info("Batch annotating " + input.size() + " documents in batches of " + batchSize);
+            List<Future<AnnotatedText>> current = submitBatchAnnotations(annotators, input, 0, batchSize, pipelineSpecification);
+            Future<List<BatchAnnotationResult>> pendingWrite = null;
+            for (int start = 0; start < input.size(); start += batchSize) {
+                // Annotation of the next batch overlaps with the persistence of the current one
+                List<Future<AnnotatedText>> next = submitBatchAnnotations(annotators, input, start + batchSize, batchSize, pipelineSpecification);
+                List<BatchAnnotationItem> items = new ArrayList<>();
+                for (int i = 0; i < current.size(); ++i) {
+                    items.add(new BatchAnnotationItem(input.get(start + i), current.get(i)));
+                }
+                if (pendingWrite != null) {
+                    results.addAll(pendingWrite.get());
+                }
+                pendingWrite = writer.submit(() -> persistBatch(items, pipelineSpecification));
+                current = next;
+            }
+            if (pendingWrite != null) {
+                results.addAll(pendingWrite.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Error while processing the batch annotation", e);
+        } finally {
+            annotators.shutdownNow();
+            writer.shutdownNow();
+        }
+
+        return results;
+    }
+
+    private List<Future<AnnotatedText>> submitBatchAnnotations(ExecutorService annotators, List<Map<String, Object>> input, int start, int batchSize, PipelineSpecification pipelineSpecification) {
+        List<Future<AnnotatedText>> futures = new ArrayList<>();
+        for (int i = start; i < Math.min(start + batchSize, input.size()); ++i) {
+            String text = getBatchItemText(input.get(i));
+            futures.add(annotators.submit(() -> textProcessorsManager.annotate(text, pipelineSpecification)));
+        }
+
+        return futures;
+    }
+
+    private List<BatchAnnotationResult> persistBatch(List<BatchAnnotationItem> items, PipelineSpecification pipelineSpecification) {
+        List<BatchAnnotationResult> results = new ArrayList<>();
+        // asynchronous listeners must not see the documents of a batch which is rolled back and retried
+        List<Runnable> afterCommit = new ArrayList<>();
+        try (Transaction tx = database.beginTx()) {
+            PersistenceSession session = new PersistenceSession();
+            for (BatchAnnotationItem item : items) {
+                results.add(persistBatchItem(item, pipelineSpecification, session, afterCommit));
+            }
+            tx.success();
+        } catch (Exception e) {
+            LOG.warn("Error while persisting a batch of " + items.size() + " documents, retrying one by one", e);
+            results.clear();
+            for (BatchAnnotationItem item : items) {
+                try {
+                    results.add(persistBatchItemInTransaction(item, pipelineSpecification));
+                } catch (Exception ex) {
+                    LOG.error("Error while persisting document with ID " + item.id, ex);
+                    results.add(new BatchAnnotationResult(item.id, ex.getMessage()));
+                }
+            }
+            return results;
+        }
+        afterCommit.forEach(Runnable::run);
+
+        return results;
+    }
+
+    private BatchAnnotationResult persistBatchItemInTransaction(BatchAnnotationItem item, PipelineSpecification pipelineSpecification) {
+        List<Runnable> afterCommit = new ArrayList<>();
+        BatchAnnotationResult result;
+        try (Transaction tx = database.beginTx()) {
+            result = persistBatchItem(item, pipelineSpecification, new PersistenceSession(), afterCommit);
+            tx.success();
+        }
+        afterCommit.forEach(Runnable::run);
+
+        return result;
+    }
+
+    private BatchAnnotationResult persistBatchItem(BatchAnnotationItem item, PipelineSpecification pipelineSpecification, PersistenceSession session, List<Runnable> afterCommit) {
+        if (item.error != null) {
+            return new BatchAnnotationResult(item.id, item.error);
+        }
+        Node node = processAnnotationPersist(item.id, item.text, item.annotatedText, pipelineSpecification, session, false, afterCommit);
+
+        return new BatchAnnotationResult(item.id, node);
+    }
+
+    private static String getBatchItemText(Map<String, Object> item) {
+        Object text = item.get(RequestConstants.TEXT_KEY);
+        return text != null ? String.valueOf(text) : "";
+    }
+
+    private static class BatchAnnotationItem {
+
+        private final String id;
+
+        private final String text;
+
+        private AnnotatedText annotatedText;
+
+        private String error;
+
+        BatchAnnotationItem(Map<String, Object> item, Future<AnnotatedText> annotation) throws InterruptedException {
+            this.id = String.valueOf(item.get(RequestConstants.ID_KEY));
+            this.text = getBatchItemText(item);
+            try {
+                this.annotatedText = annotation.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                LOG.error("Error while annotating document with ID " + id, cause);
+                this.error = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getName();
+            }
+        }
+    }
+
+    public BulkImportExportResult annotateAndExportForBulkImport(BulkImportExportRequest request) {
+        return new BulkImportExporter(configuration, textProcessorsManager, getImportDirectory()).export(request);
+    }
+
     public Node processAnnotationPersist(String id, String text, AnnotatedText annotatedText, PipelineSpecification pipelineSpecification) {
+        return processAnnotationPersist(id, text, annotatedText, pipelineSpecification, new PersistenceSession());
+    }
+
+    public Node processAnnotationPersist(String id, String text, AnnotatedText annotatedText, PipelineSpecification pipelineSpecification, PersistenceSession session) {
+        return processAnnotationPersist(id, text, annotatedText, pipelineSpecification, session, false);
+    }
+
+    public Node processAnnotationPersist(String id, String text, AnnotatedText annotatedText, PipelineSpecification pipelineSpecification, PersistenceSession session, boolean incremental) {
+        return processAnnotationPersist(id, text, annotatedText, pipelineSpecification, session, incremental, null);
+    }
+
+    /**
+     * @param afterCommit when not null, the notifications of the asynchronous listeners are added to it instead of
+     *                    being sent, to be run once the transaction has been committed
+     */
+    private Node processAnnotationPersist(String id, String text, AnnotatedText annotatedText, PipelineSpecification pipelineSpecification, PersistenceSession session, boolean incremental, List<Runnable> afterCommit) {
         String txId = String.valueOf(System.currentTimeMillis());
         TextAnnotationEvent preStorageEvent = new TextAnnotationEvent(annotatedText, txId, pipelineSpecification);
-        eventDispatcher.notify(NLPEvents.PRE_ANNOTATION_STORAGE, preStorageEvent);
-        Node annotatedNode = persistAnnotatedText(annotatedText, id, txId);
+        notifyListeners(NLPEvents.PRE_ANNOTATION_STORAGE, preStorageEvent, afterCommit);
+        Node annotatedNode = persistAnnotatedText(annotatedText, id, txId, session, incremental);
         TextAnnotationEvent event = new TextAnnotationEvent(annotatedNode, annotatedText, id, txId, pipelineSpecification);
         annotatedText.setText(text);
-        eventDispatcher.notify(NLPEvents.POST_TEXT_ANNOTATION, event);
+        notifyListeners(NLPEvents.POST_TEXT_ANNOTATION, event, afterCommit);
 
         return annotatedNode;
     }
 
+    private void notifyListeners(NLPEvents eventName, TextAnnotationEvent event, List<Runnable> afterCommit) {
+        eventDispatcher.notifySync(eventName, event);
+        if (afterCommit == null) {
+            runAfterCommit(() -> eventDispatcher.notifyAsync(eventName, event));
+        } else {
+            afterCommit.add(() -> eventDispatcher.notifyAsync(eventName, event));
+        }
+    }
+
+    /**
+     * Defers the action until the transaction bound to the current thread commits, it is run right away outside of
+     * a transaction and dropped if the transaction rolls back.
+     */
+    public void runAfterCommit(Runnable action) {
+        KernelTransaction transaction = getTransactionBoundToThread();
+        if (transaction == null) {
+            action.run();
+            return;
+        }
+        PendingActions pending = pendingActions.get();
+        if (pending == null || !pending.belongsTo(transaction)) {
+            // the previous actions of the thread belong to a transaction which has been rolled back
+            pending = new PendingActions(transaction);
+            pendingActions.set(pending);
+        }
+        pending.actions.add(action);
+    }
+
+    /**
+     * @return the actions deferred by {@link #runAfterCommit(Runnable)} in the transaction bound to the current
+     * thread, which is about to commit
+     */
+    public List<Runnable> takeAfterCommitActions() {
+        PendingActions pending = pendingActions.get();
+        pendingActions.remove();
+        KernelTransaction transaction = getTransactionBoundToThread();
+        if (pending == null || transaction == null || !pending.belongsTo(transaction)) {
+            return Collections.emptyList();
+        }
+
+        return pending.actions;
+    }
+
+    private KernelTransaction getTransactionBoundToThread() {
+        return ((GraphDatabaseAPI) database).getDependencyResolver()
+                .resolveDependency(ThreadToStatementContextBridge.class)
+                .getKernelTransactionBoundToThisThread(false);
+    }
+
+    /**
+     * Waits for the events already submitted to the asynchronous listeners, then stops their executor and the
+     * extensions.
+     */
+    public void shutdown() {
+        if (eventDispatcher == null) {
+            return;
+        }
+        try {
+            if (!eventDispatcher.awaitCompletion(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Asynchronous listeners still running after " + SHUTDOWN_TIMEOUT_SECONDS + " seconds, stopping them");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            eventDispatcher.shutdown();
+        }
+        extensions.values().forEach(extension -> {
+            try {
+                extension.shutdown();
+            } catch (Exception e) {
+                LOG.error("Error while shutting down the extension " + extension.getClass().getName(), e);
+            }
+        });
+    }
+
     public Node persistAnnotatedText(AnnotatedText annotatedText, String id, String txId) {
         return getPersister(annotatedText.getClass()).persist(annotatedText, id, txId);
     }
 
+    public Node persistAnnotatedText(AnnotatedText annotatedText, String id, String txId, PersistenceSession session) {
+        return persistAnnotatedText(annotatedText, id, txId, session, false);
+    }
+
+    public Node persistAnnotatedText(AnnotatedText annotatedText, String id, String txId, PersistenceSession session, boolean incremental) {
+        Persister persister = getPersister(annotatedText.getClass());
+        if (persister instanceof AnnotatedTextPersister) {
+            AnnotatedTextPersister annotatedTextPersister = (AnnotatedTextPersister) persister;
+            return incremental
+                    ? annotatedTextPersister.persistIncremental(annotatedText, id, txId, session)
+                    : annotatedTextPersister.persist(annotatedText, id, txId, session);
+        }
+
+        return persister.persist(annotatedText, id, txId);
+    }
+
     public DynamicConfiguration getConfiguration() {
         return configuration;
     }
@@ -182,8 +460,7 @@ public final class NLPManager {
         String text = filterRequest.getText();
         String filter = filterRequest.getFilter();
         PipelineSpecification pipelineSpecification = textProcessorsManager.getPipelineSpecification(filterRequest.getPipeline());
-        TextProcessor currentTP = textProcessorsManager.getTextProcessor(pipelineSpecification.getTextProcessor());
-        AnnotatedText annotatedText = currentTP.annotateText(text, pipelineSpecification);
+        AnnotatedText annotatedText = textProcessorsManager.annotateCached(text, pipelineSpecification);
         return annotatedText.filter(filter);
     }
 
@@ -327,6 +604,19 @@ public final class NLPManager {
         return p.toString();
     }
 
+    /**
+     * @return the absolute import directory of the database, relative ones being resolved against the Neo4j home
+     */
+    public Path getImportDirectory() {
+        Map<String, String> config = getRawConfig();
+        Path importDirectory = Paths.get(config.getOrDefault(IMPORT_DIR_CONF_KEY, "import"));
+        if (config.get(NEO4j_HOME) != null) {
+            importDirectory = Paths.get(config.get(NEO4j_HOME)).resolve(importDirectory);
+        }
+
+        return importDirectory.toAbsolutePath().normalize();
+    }
+
     public boolean hasDefaultModelWorkdir() {
         String p = configuration.getSettingValueFor(SettingsConstants.DEFAULT_MODEL_WORKDIR).toString();
 
@@ -380,4 +670,20 @@ public final class NLPManager {
     public Map<String, String> getRawConfig() {
         return ((GraphDatabaseAPI) database).getDependencyResolver().resolveDependency(Config.class).getRaw();
     }
+
+    private static class PendingActions {
+
+        private final KernelTransaction transaction;
+        private final long startTime;
+        private final List<Runnable> actions = new ArrayList<>();
+
+        private PendingActions(KernelTransaction transaction) {
+            this.transaction = transaction;
+            this.startTime = transaction.startTime();
+        }
+
+        private boolean belongsTo(KernelTransaction current) {
+            return transaction == current && startTime == current.startTime();
+        }
+    }
 }
@@ -18,6 +18,7 @@ package com.graphaware.nlp.configuration;
 import com.graphaware.nlp.dsl.request.Word2VecModelSpecification;
 import org.codehaus.jackson.map.ObjectMapper;
 import com.graphaware.common.kv.GraphKeyValueStore;
+import com.graphaware.nlp.domain.Constants;
 import com.graphaware.nlp.dsl.request.PipelineSpecification;
 import com.graphaware.nlp.dsl.result.WorkflowInstanceItemInfo;
 import com.graphaware.nlp.workflow.WorkflowItem;
@@ -33,7 +34,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import org.codehaus.jackson.annotate.JsonTypeInfo;
 
@@ -47,11 +50,14 @@ public class DynamicConfiguration {
     public static final String PIPELINE_KEY_PREFIX = "PIPELINE_";
     public static final String MODEL_KEY_PREFIX = "MODEL_";
     public static final String WORD2VEC_KEY_PREFIX = "WORD2VEC_";
+    public static final String PAGERANK_KEY_PREFIX = "PAGERANK_";
 
     protected final GraphDatabaseService database;
     protected final GraphKeyValueStore keyValueStore;
     protected Map<String, Object> userProvidedConfiguration;
     protected final ObjectMapper mapper = new ObjectMapper();
+    private volatile Map<String, PipelineSpecification> pipelines;
+    private final AtomicLong pipelinesVersion = new AtomicLong();
 
     public DynamicConfiguration(GraphDatabaseService database) {
         this.database = database;
@@ -122,6 +128,9 @@ public class DynamicConfiguration {
             }
             tx.success();
         }
+        if (k.startsWith(PIPELINE_KEY_PREFIX)) {
+            removePipelineEntry(k.substring(PIPELINE_KEY_PREFIX.length()));
+        }
     }
 
     public void update(String key, Object value) {
@@ -130,6 +139,9 @@ public class DynamicConfiguration {
             tx.success();
         }
         loadUserConfiguration();
+        if (key.startsWith(PIPELINE_KEY_PREFIX)) {
+            updatePipelineEntry(value);
+        }
     }
 
     public void storeCustomPipeline(PipelineSpecification pipelineSpecification) {
@@ -143,20 +155,9 @@ public class DynamicConfiguration {
     }
 
     public List<PipelineSpecification> loadCustomPipelines() {
-        List<PipelineSpecification> list = new ArrayList<>();
-        Map<String, Object> config = getAllConfigValuesFromStore();
-        config.keySet().forEach(k -> {
-            if (k.startsWith(PIPELINE_KEY_PREFIX)) {
-                try {
-                    PipelineSpecification pipelineSpecification = mapper.readValue(config.get(k).toString(), PipelineSpecification.class);
-                    list.add(pipelineSpecification);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        });
-
-        return list;
+        return getPipelines().values().stream()
+                .map(PipelineSpecification::copy)
+                .collect(Collectors.toList());
     }
 
     public void storeWorkflowInstanceItem(WorkflowItem item) {
@@ -191,39 +192,101 @@ public class DynamicConfiguration {
     }
 
     public PipelineSpecification loadPipeline(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        // the loaded specifications are shared, callers get their own copy to change
+        PipelineSpecification pipelineSpecification = getPipelines().get(name);
+
+        return pipelineSpecification != null ? pipelineSpecification.copy() : null;
+    }
+
+    public long getPipelinesVersion() {
+        return pipelinesVersion.get();
+    }
+
+    public void removePipeline(String name, String textProcessor) {
         Map<String, Object> config = getAllConfigValuesFromStore();
-        AtomicReference<PipelineSpecification> result = new AtomicReference<>();
         config.keySet().forEach(k -> {
             if (k.startsWith(PIPELINE_KEY_PREFIX)) {
                 try {
-                    String s = config.get(k).toString();
                     PipelineSpecification pipelineSpecification = mapper.readValue(config.get(k).toString(), PipelineSpecification.class);
-                    if (pipelineSpecification.getName().equals(name)) {
-                        result.set(pipelineSpecification);
+                    if (pipelineSpecification.getName().equals(name) && pipelineSpecification.getTextProcessor().equals(textProcessor)) {
+                        removeKey(STORE_KEY + k);
+                        removePipelineEntry(name);
                     }
                 } catch (Exception e) {
                     throw new RuntimeException(e.getMessage());
                 }
             }
         });
+    }
+
+    /**
+     * Keeps the loaded pipelines in line with a stored specification, under the monitor they are loaded with.
+     */
+    private synchronized void updatePipelineEntry(Object serialized) {
+        pipelinesVersion.incrementAndGet();
+        if (pipelines == null) {
+            return;
+        }
+        try {
+            PipelineSpecification pipelineSpecification = readPipeline(serialized.toString());
+            pipelines.put(pipelineSpecification.getName(), pipelineSpecification);
+        } catch (Exception e) {
+            pipelines = null;
+        }
+    }
 
-        return result.get();
+    private synchronized void removePipelineEntry(String name) {
+        pipelinesVersion.incrementAndGet();
+        if (pipelines != null && pipelines.remove(name) == null) {
+            // the key did not match the name of a loaded pipeline, the store is the reference
+            pipelines = null;
+        }
     }
 
-    public void removePipeline(String name, String textProcessor) {
+    private Map<String, PipelineSpecification> getPipelines() {
+        Map<String, PipelineSpecification> current = pipelines;
+        if (current == null) {
+            synchronized (this) {
+                current = pipelines;
+                if (current == null) {
+                    current = loadPipelinesFromStore();
+                    pipelines = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    private Map<String, PipelineSpecification> loadPipelinesFromStore() {
+        Map<String, PipelineSpecification> result = new ConcurrentHashMap<>();
         Map<String, Object> config = getAllConfigValuesFromStore();
         config.keySet().forEach(k -> {
             if (k.startsWith(PIPELINE_KEY_PREFIX)) {
                 try {
-                    PipelineSpecification pipelineSpecification = mapper.readValue(config.get(k).toString(), PipelineSpecification.class);
-                    if (pipelineSpecification.getName().equals(name) && pipelineSpecification.getTextProcessor().equals(textProcessor)) {
-                        removeKey(STORE_KEY + k);
-                    }
+                    PipelineSpecification pipelineSpecification = readPipeline(config.get(k).toString());
+                    result.put(pipelineSpecification.getName(), pipelineSpecification);
                 } catch (Exception e) {
-                    throw new RuntimeException(e.getMessage());
+                    throw new RuntimeException(e);
                 }
             }
         });
+
+        return result;
+    }
+
+    private PipelineSpecification readPipeline(String serialized) throws IOException {
+        PipelineSpecification pipelineSpecification = mapper.readValue(serialized, PipelineSpecification.class);
+        // pipelines stored without a language are registered with the default one
+        if (pipelineSpecification.getLanguage() == null) {
+            pipelineSpecification.setLanguage(Constants.DEFAULT_LANGUAGE);
+        }
+
+        return pipelineSpecification;
     }
 
     public void updateInternalSetting(String key, Object value) {
@@ -271,6 +334,23 @@ public class DynamicConfiguration {
         return value;
     }
 
+    /**
+     * Keeps the number of iterations of the last cold PageRank run whose scores are in the property, the warm
+     * starts seeded from it are measured against it.
+     */
+    public void storeColdStartIterations(String property, long iterations) {
+        update(PAGERANK_KEY_PREFIX + property, iterations);
+    }
+
+    public Long getColdStartIterations(String property) {
+        Long value = null;
+        if (hasStoreValue(PAGERANK_KEY_PREFIX + property)) {
+            value = ((Number) getAllConfigValuesFromStore().get(PAGERANK_KEY_PREFIX + property)).longValue();
+        }
+
+        return value;
+    }
+
     public Map<String, String> getAllModelPaths() {
         Map<String, String> result = new HashMap<>();
         try (Transaction tx = database.beginTx()) {
@@ -6,4 +6,14 @@ public final class SettingsConstants {
     public static final String DEFAULT_TEXT_PROCESSOR = "defaultProcessor";
     public static final String DEFAULT_PIPELINE = "defaultPipeline";
     public static final String DEFAULT_MODEL_WORKDIR = "defaultModelWorkdir";
+    public static final String EVENT_DISPATCHER_THREADS = "eventDispatcherThreads";
+    public static final String EVENT_DISPATCHER_QUEUE_SIZE = "eventDispatcherQueueSize";
+    public static final String EVENT_DISPATCHER_BACK_PRESSURE = "eventDispatcherBackPressure";
+    public static final String ANNOTATION_CACHE_MAX_ENTRIES = "annotationCacheMaxEntries";
+    public static final String ANNOTATION_CACHE_MAX_BYTES = "annotationCacheMaxBytes";
+    public static final String ANNOTATION_CACHE_TTL_SECONDS = "annotationCacheTtlSeconds";
+    public static final String WRITE_SHARED_NODES_ON_CHANGE_ONLY = "writeSharedNodesOnChangeOnly";
+    public static final String TEXT_RANK_ON_ANNOTATION = "textRankOnAnnotation";
+    public static final String CO_OCCURRENCE_GRAPH = "coOccurrenceGraph";
+    public static final String DOCUMENT_FREQUENCIES = "documentFrequencies";
 }
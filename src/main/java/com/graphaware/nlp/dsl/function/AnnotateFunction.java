@@ -19,7 +19,6 @@ import org.codehaus.jackson.map.ObjectMapper;
 import com.graphaware.nlp.domain.AnnotatedText;
 import com.graphaware.nlp.dsl.AbstractDSL;
 import com.graphaware.nlp.dsl.request.PipelineSpecification;
-import com.graphaware.nlp.processor.TextProcessor;
 import org.codehaus.jackson.map.SerializationConfig;
 import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Name;
@@ -36,8 +35,7 @@ public class AnnotateFunction extends AbstractDSL {
             throw new RuntimeException("You mast specify the name of the pipeline");
         }
         PipelineSpecification spec = getNLPManager().getTextProcessorsManager().getPipelineSpecification((String)specificationInput.get("name"));
-        TextProcessor processor = getNLPManager().getTextProcessorsManager().getTextProcessor(spec.getTextProcessor());
-        AnnotatedText annotatedText = processor.annotateText(text, spec);
+        AnnotatedText annotatedText = getNLPManager().getTextProcessorsManager().annotateCached(text, spec);
         ObjectMapper mapper = new ObjectMapper();
         mapper.configure(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS, false);
         Map map = mapper.convertValue(annotatedText, Map.class);
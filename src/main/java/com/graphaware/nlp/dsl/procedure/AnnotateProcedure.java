@@ -17,7 +17,11 @@ package com.graphaware.nlp.dsl.procedure;
 
 import com.graphaware.nlp.dsl.AbstractDSL;
 import com.graphaware.nlp.dsl.request.AnnotationRequest;
+import com.graphaware.nlp.dsl.request.BatchAnnotationRequest;
+import com.graphaware.nlp.dsl.request.BulkImportExportRequest;
 import com.graphaware.nlp.dsl.request.FilterRequest;
+import com.graphaware.nlp.dsl.result.BatchAnnotationResult;
+import com.graphaware.nlp.dsl.result.BulkImportExportResult;
 import com.graphaware.nlp.dsl.result.NodeResult;
 import com.graphaware.nlp.dsl.result.SingleResult;
 import org.neo4j.graphdb.Node;
@@ -43,6 +47,20 @@ public class AnnotateProcedure extends AbstractDSL {
         }
     }
     
+    @Procedure(name = "ga.nlp.annotate.batch", mode = Mode.WRITE)
+    @Description("Performs the text annotation of a list of {id, text} documents in parallel and store them into the graph in batches")
+    public Stream<BatchAnnotationResult> annotateBatch(@Name("batchAnnotationRequest") Map<String, Object> batchAnnotationRequest) {
+        BatchAnnotationRequest request = BatchAnnotationRequest.fromMap(batchAnnotationRequest);
+        return getNLPManager().annotateTextAndPersistBatch(request).stream();
+    }
+
+    @Procedure(name = "ga.nlp.annotate.export")
+    @Description("Annotates a corpus of files or JSON lines and writes the annotated graph as CSV files for neo4j-admin import")
+    public Stream<BulkImportExportResult> annotateAndExport(@Name("exportRequest") Map<String, Object> exportRequest) {
+        BulkImportExportRequest request = BulkImportExportRequest.fromMap(exportRequest);
+        return Stream.of(getNLPManager().annotateAndExportForBulkImport(request));
+    }
+
     @Procedure(name = "ga.nlp.filter", mode = Mode.WRITE)
     @Description("Boolean filter for text accordingly to complex filter definition")
     public Stream<SingleResult> filter(@Name("filterRequest") Map<String, Object> filterRequest) {
@@ -50,4 +68,17 @@ public class AnnotateProcedure extends AbstractDSL {
         Object result = getNLPManager().filter(request);
         return Stream.of(new SingleResult(result));
     }
+
+    @Procedure(name = "ga.nlp.annotate.cache.stats")
+    @Description("Returns the hit/miss statistics of the annotation cache used by ga.nlp.filter and ga.nlp.processor.annotate")
+    public Stream<SingleResult> annotationCacheStats() {
+        return Stream.of(new SingleResult(getNLPManager().getTextProcessorsManager().getAnnotationCache().getStats()));
+    }
+
+    @Procedure(name = "ga.nlp.annotate.cache.clear")
+    @Description("Removes all the entries of the annotation cache")
+    public Stream<SingleResult> clearAnnotationCache() {
+        getNLPManager().getTextProcessorsManager().getAnnotationCache().invalidateAll();
+        return Stream.of(SingleResult.success());
+    }
 }
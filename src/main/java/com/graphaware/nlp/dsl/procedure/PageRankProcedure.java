@@ -17,7 +17,7 @@ package com.graphaware.nlp.dsl.procedure;
 
 import com.graphaware.nlp.dsl.AbstractDSL;
 import com.graphaware.nlp.dsl.request.PageRankRequest;
-import com.graphaware.nlp.dsl.result.SingleResult;
+import com.graphaware.nlp.dsl.result.PageRankResult;
 import com.graphaware.nlp.ml.pagerank.PageRankProcessor;
 import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Mode;
@@ -31,7 +31,7 @@ public class PageRankProcedure extends AbstractDSL {
 
     @Procedure(name = "ga.nlp.ml.pageRank", mode = Mode.WRITE)
     @Description("PageRank procedure")
-    public Stream<SingleResult> computePageRank(@Name("pageRankRequest") Map<String, Object> pageRankRequest) {
+    public Stream<PageRankResult> computePageRank(@Name("pageRankRequest") Map<String, Object> pageRankRequest) {
         PageRankRequest request = mapper.convertValue(pageRankRequest, PageRankRequest.class);
         PageRankProcessor processor = (PageRankProcessor) getNLPManager().getExtension(PageRankProcessor.class);
         return Stream.of(processor.process(request));
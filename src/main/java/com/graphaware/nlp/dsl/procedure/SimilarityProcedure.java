@@ -18,6 +18,7 @@ package com.graphaware.nlp.dsl.procedure;
 import com.graphaware.nlp.dsl.AbstractDSL;
 import com.graphaware.nlp.dsl.request.SimilarityRequest;
 import com.graphaware.nlp.dsl.result.SingleResult;
+import com.graphaware.nlp.ml.similarity.DocumentFrequencyProcessor;
 import com.graphaware.nlp.ml.similarity.SimilarityProcessor;
 import com.graphaware.nlp.ml.similarity.VectorProcessLogic;
 import org.neo4j.procedure.Description;
@@ -49,4 +50,16 @@ public class SimilarityProcedure extends AbstractDSL {
 
     }
 
+    @Procedure(name = "ga.nlp.ml.similarity.documentFrequency.rebuild", mode = Mode.WRITE)
+    @Description("Recount the document frequencies of all the Tags")
+    public Stream<SingleResult> rebuildDocumentFrequencies() {
+        try {
+            DocumentFrequencyProcessor processor = (DocumentFrequencyProcessor) getNLPManager().getExtension(DocumentFrequencyProcessor.class);
+            return Stream.of(new SingleResult(processor.rebuild()));
+        } catch (Exception ex) {
+            LOG.error("Error while rebuilding document frequencies", ex);
+            throw new RuntimeException(ex);
+        }
+    }
+
 }
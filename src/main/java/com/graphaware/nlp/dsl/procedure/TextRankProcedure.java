@@ -16,9 +16,11 @@
 package com.graphaware.nlp.dsl.procedure;
 
 import com.graphaware.nlp.dsl.AbstractDSL;
+import com.graphaware.nlp.dsl.request.TextRankBatchRequest;
 import com.graphaware.nlp.dsl.request.TextRankPostprocessRequest;
 import com.graphaware.nlp.dsl.request.TextRankRequest;
 import com.graphaware.nlp.dsl.result.SingleResult;
+import com.graphaware.nlp.dsl.result.TextRankBatchResult;
 import com.graphaware.nlp.ml.textrank.TextRankProcessor;
 import com.graphaware.nlp.ml.textrank.TextRankResult;
 import org.neo4j.procedure.Description;
@@ -48,6 +50,14 @@ public class TextRankProcedure extends AbstractDSL {
         }
     }
 
+    @Procedure(name = "ga.nlp.ml.textRank.batch", mode = Mode.WRITE)
+    @Description("Keywords Extraction using TextRank algorithm on all the documents matching a label or a query, processed in parallel and stored in batches")
+    public Stream<TextRankBatchResult> computeAndStoreTextRankBatch(@Name("textRankBatchRequest") Map<String, Object> textRankBatchRequest) {
+        TextRankBatchRequest request = TextRankBatchRequest.fromMap(textRankBatchRequest);
+        TextRankProcessor processor = (TextRankProcessor) getNLPManager().getExtension(TextRankProcessor.class);
+        return Stream.of(processor.computeAndStoreBatch(request));
+    }
+
     @Procedure(name = "ga.nlp.ml.textRank.compute", mode = Mode.WRITE)
     @Description("Keywords Extraction using TextRank algorithm ( without storage )")
     public Stream<KeywordResult> computeTextRank(@Name("textRankRequest") Map<String, Object> textRankRequest) {
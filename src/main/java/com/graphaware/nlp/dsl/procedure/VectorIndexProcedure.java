@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.dsl.procedure;
+
+import com.graphaware.nlp.dsl.AbstractDSL;
+import com.graphaware.nlp.dsl.request.VectorIndexRequest;
+import com.graphaware.nlp.dsl.result.VectorIndexResult;
+import com.graphaware.nlp.ml.hnsw.HnswIndex;
+import com.graphaware.nlp.ml.hnsw.HnswIndexProcessor;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+public class VectorIndexProcedure extends AbstractDSL {
+
+    @Procedure(name = "ga.nlp.vector.index.build")
+    @Description("Build an HNSW index over the dense vectors stored in a property of the nodes with a label")
+    public Stream<VectorIndexResult> build(@Name("vectorIndexRequest") Map<String, Object> vectorIndexRequest) {
+        VectorIndexRequest request = VectorIndexRequest.fromMap(vectorIndexRequest);
+        return Stream.of(getProcessor().build(request));
+    }
+
+    @Procedure(name = "ga.nlp.vector.index.recall")
+    @Description("Measure the recall of the k nearest neighbours returned by a vector index against brute force")
+    public Stream<VectorIndexResult> recall(@Name("label") String label,
+                                            @Name("property") String property,
+                                            @Name(value = "k", defaultValue = "10") Long k,
+                                            @Name(value = "sample", defaultValue = "100") Long sample,
+                                            @Name(value = "efSearch", defaultValue = "0") Long efSearch) {
+        return Stream.of(getProcessor().recall(label, property, k.intValue(), sample.intValue(), efSearch > 0 ? efSearch.intValue() : null));
+    }
+
+    @Procedure(name = "ga.nlp.vector.nearest")
+    @Description("Retrieve the nodes with the most similar vector from the vector index of the property")
+    public Stream<NearestNode> nearest(@Name("node") Node node,
+                                       @Name(value = "property", defaultValue = VectorIndexRequest.DEFAULT_PROPERTY) String property,
+                                       @Name(value = "k", defaultValue = "10") Long k,
+                                       @Name(value = "efSearch", defaultValue = "0") Long efSearch) {
+        return getProcessor().nearest(node, property, k.intValue(), efSearch > 0 ? efSearch.intValue() : null)
+                .stream()
+                .map(this::toNearestNode)
+                .filter(Objects::nonNull);
+    }
+
+    private NearestNode toNearestNode(HnswIndex.Neighbour neighbour) {
+        try {
+            return new NearestNode(database.getNodeById(neighbour.nodeId), neighbour.similarity);
+        } catch (NotFoundException e) {
+            // deleted by a transaction not applied to the index yet
+            return null;
+        }
+    }
+
+    private HnswIndexProcessor getProcessor() {
+        return (HnswIndexProcessor) getNLPManager().getExtension(HnswIndexProcessor.class);
+    }
+
+    public class NearestNode {
+        public Node node;
+
+        public double score;
+
+        public NearestNode(Node node, double score) {
+            this.node = node;
+            this.score = score;
+        }
+    }
+}
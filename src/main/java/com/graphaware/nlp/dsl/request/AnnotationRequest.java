@@ -36,6 +36,8 @@ public class AnnotationRequest extends AbstractProcedureRequest {
 
     private boolean checkLanguage = true;
 
+    private boolean incremental;
+
     private List<String> annotators = new ArrayList<>();
 
     private List<String> excludedNER = new ArrayList<>();
@@ -64,6 +66,7 @@ public class AnnotationRequest extends AbstractProcedureRequest {
                 PIPELINE_KEY,
                 FORCE_KEY,
                 CHECK_LANGUAGE_KEY,
+                INCREMENTAL_KEY,
                 ANNOTATORS,
                 EXCLUDED_NER,
                 EXCLUDED_POS
@@ -113,6 +116,10 @@ public class AnnotationRequest extends AbstractProcedureRequest {
         return checkLanguage;
     }
 
+    public boolean isIncremental() {
+        return incremental;
+    }
+
     public List<String> getAnnotators() {
         return annotators;
     }
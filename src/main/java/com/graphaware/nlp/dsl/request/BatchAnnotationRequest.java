@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.dsl.request;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.graphaware.nlp.dsl.request.RequestConstants.*;
+
+public class BatchAnnotationRequest extends AbstractProcedureRequest {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    public static final int DEFAULT_CONCURRENCY = Runtime.getRuntime().availableProcessors();
+
+    private List<Map<String, Object>> input = new ArrayList<>();
+
+    private String pipeline;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public BatchAnnotationRequest() {
+
+    }
+
+    public BatchAnnotationRequest(List<Map<String, Object>> input, String pipeline, int concurrency, int batchSize) {
+        this.input = input;
+        this.pipeline = pipeline;
+        this.concurrency = concurrency;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public List<String> validMapKeys() {
+        return Arrays.asList(
+                INPUT_KEY,
+                PIPELINE_KEY,
+                CONCURRENCY_KEY,
+                BATCH_SIZE_KEY
+        );
+    }
+
+    @Override
+    public List<String> mandatoryKeys() {
+        return Arrays.asList(
+                INPUT_KEY
+        );
+    }
+
+    public static BatchAnnotationRequest fromMap(Map<String, Object> map) {
+        BatchAnnotationRequest request = mapper.convertValue(map, BatchAnnotationRequest.class);
+        request.validateMap(map);
+        request.validateInput();
+
+        return request;
+    }
+
+    private void validateInput() {
+        if (concurrency < 1) {
+            throw new RuntimeException(String.format("Invalid value for '%s', it should be greater than 0", CONCURRENCY_KEY));
+        }
+        if (batchSize < 1) {
+            throw new RuntimeException(String.format("Invalid value for '%s', it should be greater than 0", BATCH_SIZE_KEY));
+        }
+        input.forEach(item -> validateRequestHasMandatoryKeys(Arrays.asList(ID_KEY, TEXT_KEY), item));
+    }
+
+    public List<Map<String, Object>> getInput() {
+        return input;
+    }
+
+    public String getPipeline() {
+        return pipeline;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+}
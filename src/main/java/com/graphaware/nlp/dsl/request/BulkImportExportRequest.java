@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.dsl.request;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.graphaware.nlp.dsl.request.RequestConstants.*;
+
+public class BulkImportExportRequest extends AbstractProcedureRequest {
+
+    private String input;
+
+    private String output;
+
+    private String pipeline;
+
+    private int concurrency = BatchAnnotationRequest.DEFAULT_CONCURRENCY;
+
+    public BulkImportExportRequest() {
+
+    }
+
+    public BulkImportExportRequest(String input, String output, String pipeline, int concurrency) {
+        this.input = input;
+        this.output = output;
+        this.pipeline = pipeline;
+        this.concurrency = concurrency;
+    }
+
+    @Override
+    public List<String> validMapKeys() {
+        return Arrays.asList(
+                INPUT_KEY,
+                OUTPUT_KEY,
+                PIPELINE_KEY,
+                CONCURRENCY_KEY
+        );
+    }
+
+    @Override
+    public List<String> mandatoryKeys() {
+        return Arrays.asList(
+                INPUT_KEY,
+                OUTPUT_KEY
+        );
+    }
+
+    public static BulkImportExportRequest fromMap(Map<String, Object> map) {
+        BulkImportExportRequest request = mapper.convertValue(map, BulkImportExportRequest.class);
+        request.validateMap(map);
+        if (request.getConcurrency() < 1) {
+            throw new RuntimeException(String.format("Invalid value for '%s', it should be greater than 0", CONCURRENCY_KEY));
+        }
+
+        return request;
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public String getPipeline() {
+        return pipeline;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+}
@@ -21,6 +21,9 @@ public class PageRankRequest {
     private static final double DEFAULT_DUMPING_FACTOR = 0.85;
     private static final double DEFAULT_THRESHOLD = 0.0001;
     private static final boolean DEFAULT_RESPECT_DIRECTIONS = true;
+    private static final int DEFAULT_CONCURRENCY = 1;
+    private static final String DEFAULT_WRITE_PROPERTY = "pagerank";
+    private static final int DEFAULT_BATCH_SIZE = 10000;
     /*private static final String DEFAULT_NODE_TYPE = "Tag";
     private static final String DEFAULT_CO_OCCURRENCE_RELATIONTHIP = "CO_OCCURRENCE";
     private static final String DEFAULT_WEIGHT_PROPERTY = "weight";*/
@@ -33,6 +36,10 @@ public class PageRankRequest {
     private Double damp = DEFAULT_DUMPING_FACTOR;
     private Double threshold = DEFAULT_THRESHOLD;
     private Boolean respectDirections = DEFAULT_RESPECT_DIRECTIONS;
+    private Integer concurrency = DEFAULT_CONCURRENCY;
+    private String writeProperty = DEFAULT_WRITE_PROPERTY;
+    private Integer batchSize = DEFAULT_BATCH_SIZE;
+    private String seedProperty;
     
     public PageRankRequest() {
     }
@@ -69,6 +76,38 @@ public class PageRankRequest {
         this.respectDirections = dirs;
     }
 
+    public Integer getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(Integer concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public String getWriteProperty() {
+        return writeProperty;
+    }
+
+    public void setWriteProperty(String writeProperty) {
+        this.writeProperty = writeProperty;
+    }
+
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public String getSeedProperty() {
+        return seedProperty;
+    }
+
+    public void setSeedProperty(String seedProperty) {
+        this.seedProperty = seedProperty;
+    }
+
     public String getQuery() {
         return query;
     }
@@ -188,6 +188,22 @@ public class PipelineSpecification {
         return createdAt;
     }
 
+    /**
+     * @return a copy that can be changed without affecting this specification
+     */
+    public PipelineSpecification copy() {
+        PipelineSpecification copy = new PipelineSpecification(name, language, textProcessor);
+        copy.processingSteps = processingSteps != null ? new HashMap<>(processingSteps) : null;
+        copy.stopWords = stopWords;
+        copy.whitelist = whitelist;
+        copy.threadNumber = threadNumber;
+        copy.excludedNER = excludedNER != null ? new ArrayList<>(excludedNER) : null;
+        copy.excludedPOS = excludedPOS != null ? new ArrayList<>(excludedPOS) : null;
+        copy.createdAt = createdAt;
+
+        return copy;
+    }
+
     private boolean objectToBoolean(Object obj) {
         boolean result = false;
         if (obj instanceof Boolean)
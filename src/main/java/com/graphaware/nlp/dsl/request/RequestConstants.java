@@ -28,8 +28,18 @@ public final class RequestConstants {
     public static final String RELATIONSHIP_TYPE_KEY = "relationshipType";
     public static final String DIRECTION_KEY = "relDirection";
     public static final String K_SIZE_KEY = "kSize";
+    public static final String INVERTED_INDEX_KEY = "invertedIndex";
+    public static final String MAX_DF_KEY = "maxDf";
     public static final String ANNOTATORS = "annotators";
     public static final String EXCLUDED_NER = "excludedNER";
     public static final String EXCLUDED_POS = "excludedPOS";
     public static final String MIN_WEIGHT = "minWeight";
+    public static final String CONCURRENCY_KEY = "concurrency";
+    public static final String BATCH_SIZE_KEY = "batchSize";
+    public static final String OUTPUT_KEY = "output";
+    public static final String INCREMENTAL_KEY = "incremental";
+    public static final String M_KEY = "m";
+    public static final String EF_CONSTRUCTION_KEY = "efConstruction";
+    public static final String EF_SEARCH_KEY = "efSearch";
+    public static final String RECALL_SAMPLE_KEY = "recallSample";
 }
@@ -27,6 +27,7 @@ public class SimilarityRequest extends AbstractProcedureRequest {
     private final static int DEFAULT_K_SIZE = 500;
     private final static String DEFAULT_LABEL = "AnnotatedText";
     private final static String SIMILARITY_TYPE = "SIMILARITY_COSINE";
+    private final static double DEFAULT_MAX_DF = 1.0d;
 
     private List<Node> input;
     private Long depth;
@@ -35,6 +36,8 @@ public class SimilarityRequest extends AbstractProcedureRequest {
     private String relationshipType;
     private String propertyName;
     private int kSize;
+    private boolean invertedIndex;
+    private double maxDf;
 
     public SimilarityRequest() {
     }
@@ -96,7 +99,9 @@ public class SimilarityRequest extends AbstractProcedureRequest {
                 DEPTH_KEY,
                 LABEL_KEY,
                 RELATIONSHIP_TYPE_KEY,
-                K_SIZE_KEY
+                K_SIZE_KEY,
+                INVERTED_INDEX_KEY,
+                MAX_DF_KEY
         );
     }
 
@@ -125,6 +130,8 @@ public class SimilarityRequest extends AbstractProcedureRequest {
             request.setkSize(DEFAULT_K_SIZE);
         }
         request.setLabel((String)map.getOrDefault(LABEL_KEY, DEFAULT_LABEL));
+        request.setInvertedIndex((Boolean) map.getOrDefault(INVERTED_INDEX_KEY, false));
+        request.setMaxDf(((Number) map.getOrDefault(MAX_DF_KEY, DEFAULT_MAX_DF)).doubleValue());
         request.validateMap(map);
         return request;
     }
@@ -137,4 +144,20 @@ public class SimilarityRequest extends AbstractProcedureRequest {
         this.kSize = kSize;
     }
 
+    public boolean isInvertedIndex() {
+        return invertedIndex;
+    }
+
+    public void setInvertedIndex(boolean invertedIndex) {
+        this.invertedIndex = invertedIndex;
+    }
+
+    public double getMaxDf() {
+        return maxDf;
+    }
+
+    public void setMaxDf(double maxDf) {
+        this.maxDf = maxDf;
+    }
+
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.dsl.request;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TextRankBatchRequest {
+
+    private final static String PARAMETER_QUERY = "query";
+    private final static String PARAMETER_LABEL = "label";
+    private final static String PARAMETER_CONCURRENCY = "concurrency";
+    private final static String PARAMETER_BATCH_SIZE = "batchSize";
+    private final static String PARAMETER_AFTER_ID = "afterId";
+
+    private static final int DEFAULT_CONCURRENCY = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_AFTER_ID = -1L;
+
+    private String query;
+    private String label;
+    private int concurrency;
+    private int batchSize;
+    private long afterId;
+    private Map<String, Object> textRankParameters;
+
+    public static TextRankBatchRequest fromMap(Map<String, Object> textRankBatchRequest) {
+        if (textRankBatchRequest.containsKey(PARAMETER_QUERY) && textRankBatchRequest.containsKey(PARAMETER_LABEL)) {
+            throw new RuntimeException("Parameters " + PARAMETER_QUERY + " and " + PARAMETER_LABEL + " can not be used together");
+        }
+        TextRankBatchRequest result = new TextRankBatchRequest();
+        result.setQuery((String) textRankBatchRequest.get(PARAMETER_QUERY));
+        result.setLabel((String) textRankBatchRequest.get(PARAMETER_LABEL));
+        result.setConcurrency(((Number) textRankBatchRequest.getOrDefault(PARAMETER_CONCURRENCY, DEFAULT_CONCURRENCY)).intValue());
+        result.setBatchSize(((Number) textRankBatchRequest.getOrDefault(PARAMETER_BATCH_SIZE, DEFAULT_BATCH_SIZE)).intValue());
+        result.setAfterId(((Number) textRankBatchRequest.getOrDefault(PARAMETER_AFTER_ID, DEFAULT_AFTER_ID)).longValue());
+        if (result.getConcurrency() < 1) {
+            throw new RuntimeException("Invalid value for " + PARAMETER_CONCURRENCY + ", it should be greater than 0");
+        }
+        if (result.getBatchSize() < 1) {
+            throw new RuntimeException("Invalid value for " + PARAMETER_BATCH_SIZE + ", it should be greater than 0");
+        }
+
+        // everything else is handed over to the TextRank request of each document
+        Map<String, Object> textRankParameters = new HashMap<>(textRankBatchRequest);
+        textRankParameters.remove(PARAMETER_QUERY);
+        textRankParameters.remove(PARAMETER_LABEL);
+        textRankParameters.remove(PARAMETER_CONCURRENCY);
+        textRankParameters.remove(PARAMETER_BATCH_SIZE);
+        textRankParameters.remove(PARAMETER_AFTER_ID);
+        result.setTextRankParameters(textRankParameters);
+
+        return result;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getAfterId() {
+        return afterId;
+    }
+
+    public void setAfterId(long afterId) {
+        this.afterId = afterId;
+    }
+
+    public Map<String, Object> getTextRankParameters() {
+        return textRankParameters;
+    }
+
+    public void setTextRankParameters(Map<String, Object> textRankParameters) {
+        this.textRankParameters = textRankParameters;
+    }
+}
@@ -48,6 +48,7 @@ public class TextRankRequest {
     private final static String PARAMETER_ADMITTED_POSs = "admittedPOSs";
     private final static String PARAMETER_FORBIDDEN_POSs = "forbiddenPOSs";
     private final static String PARAMETER_FORBIDDEN_NEs = "forbiddenNEs";
+    private final static String PARAMETER_SEED_PROPERTY = "seedProperty";
 
     private Node node;
     private List<Node> nodes;
@@ -69,6 +70,7 @@ public class TextRankRequest {
     private List<String> forbiddenPOSs;
     private List<String> forbiddenNEs;
     private String language;
+    private String seedProperty;
 
     private static final int DEFAULT_ITERATIONS = 30;
     private static final double DEFAULT_DUMPING_FACTOR = 0.85;
@@ -112,6 +114,7 @@ public class TextRankRequest {
         result.setTopXTags(((Number) textRankRequest.getOrDefault(PARAMETER_TAGS_TOPX, DEFAULT_TAGS_TOPX)).doubleValue());
         result.setKeywordLabel((String) textRankRequest.getOrDefault(PARAMETER_KEYWORD_LABEL, DEFAULT_KEYWORD_LABEL));
         result.setLanguage((String) textRankRequest.getOrDefault(PARAMETER_LANGUAGE, DEFAULT_LANGUAGE));
+        result.setSeedProperty((String) textRankRequest.get(PARAMETER_SEED_PROPERTY));
 
         if (textRankRequest.containsKey(PARAMETER_STOPWORDS)) {
             result.setStopWords((String) textRankRequest.get(PARAMETER_STOPWORDS));
@@ -291,4 +294,12 @@ public class TextRankRequest {
     public void setLanguage(String language) {
         this.language = language;
     }
+
+    public String getSeedProperty() {
+        return seedProperty;
+    }
+
+    public void setSeedProperty(String seedProperty) {
+        this.seedProperty = seedProperty;
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.dsl.request;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.graphaware.nlp.dsl.request.RequestConstants.*;
+
+public class VectorIndexRequest extends AbstractProcedureRequest {
+
+    public static final String DEFAULT_PROPERTY = "vector";
+
+    public static final int DEFAULT_M = 16;
+
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+
+    public static final int DEFAULT_EF_SEARCH = 50;
+
+    public static final int DEFAULT_CONCURRENCY = Runtime.getRuntime().availableProcessors();
+
+    private String label;
+
+    private String property = DEFAULT_PROPERTY;
+
+    private int m = DEFAULT_M;
+
+    private int efConstruction = DEFAULT_EF_CONSTRUCTION;
+
+    private int efSearch = DEFAULT_EF_SEARCH;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    private int recallSample = 0;
+
+    public VectorIndexRequest() {
+
+    }
+
+    @Override
+    public List<String> validMapKeys() {
+        return Arrays.asList(
+                LABEL_KEY,
+                PROPERTY_KEY,
+                M_KEY,
+                EF_CONSTRUCTION_KEY,
+                EF_SEARCH_KEY,
+                CONCURRENCY_KEY,
+                RECALL_SAMPLE_KEY
+        );
+    }
+
+    @Override
+    public List<String> mandatoryKeys() {
+        return Arrays.asList(
+                LABEL_KEY
+        );
+    }
+
+    public static VectorIndexRequest fromMap(Map<String, Object> map) {
+        VectorIndexRequest request = mapper.convertValue(map, VectorIndexRequest.class);
+        request.validateMap(map);
+        request.validateInput();
+
+        return request;
+    }
+
+    private void validateInput() {
+        if (m < 2) {
+            throw new RuntimeException(String.format("Invalid value for '%s', it should be greater than 1", M_KEY));
+        }
+        if (efConstruction < 1) {
+            throw new RuntimeException(String.format("Invalid value for '%s', it should be greater than 0", EF_CONSTRUCTION_KEY));
+        }
+        if (efSearch < 1) {
+            throw new RuntimeException(String.format("Invalid value for '%s', it should be greater than 0", EF_SEARCH_KEY));
+        }
+        if (concurrency < 1) {
+            throw new RuntimeException(String.format("Invalid value for '%s', it should be greater than 0", CONCURRENCY_KEY));
+        }
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getRecallSample() {
+        return recallSample;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.dsl.result;
+
+import org.neo4j.graphdb.Node;
+
+public class BatchAnnotationResult {
+
+    public String id;
+
+    public Node result;
+
+    public boolean success;
+
+    public String error;
+
+    public BatchAnnotationResult(String id, Node result) {
+        this.id = id;
+        this.result = result;
+        this.success = true;
+    }
+
+    public BatchAnnotationResult(String id, String error) {
+        this.id = id;
+        this.success = false;
+        this.error = error;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.dsl.result;
+
+public class PageRankResult {
+
+    public Object result;
+
+    public long iterations;
+
+    /**
+     * Iterations left of the {@code iteration} limit when the scores converged.
+     */
+    public long iterationsUnderBudget;
+
+    /**
+     * Iterations saved by a warm start compared with the cold run that produced the seed scores, null for a cold run
+     * or when that run is unknown.
+     */
+    public Long iterationsSaved;
+
+    /**
+     * Nodes on which the score has been written.
+     */
+    public long written;
+
+    public PageRankResult(SingleResult result, long iterations, long iterationsUnderBudget, Long iterationsSaved, long written) {
+        this.result = result.result;
+        this.iterations = iterations;
+        this.iterationsUnderBudget = iterationsUnderBudget;
+        this.iterationsSaved = iterationsSaved;
+        this.written = written;
+    }
+}
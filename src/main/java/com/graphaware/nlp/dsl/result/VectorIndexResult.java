@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.dsl.result;
+
+public class VectorIndexResult {
+
+    public String label;
+
+    public String property;
+
+    public long size;
+
+    public long dimension;
+
+    public long m;
+
+    public long efConstruction;
+
+    public long efSearch;
+
+    public Double recall;
+
+    public long time;
+
+    public VectorIndexResult(String label, String property, long size, long dimension, long m, long efConstruction, long efSearch, Double recall, long time) {
+        this.label = label;
+        this.property = property;
+        this.size = size;
+        this.dimension = dimension;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.recall = recall;
+        this.time = time;
+    }
+}
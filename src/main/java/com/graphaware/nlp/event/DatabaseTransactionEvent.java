@@ -17,10 +17,15 @@ package com.graphaware.nlp.event;
 
 import com.graphaware.tx.event.improved.api.ImprovedTransactionData;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class DatabaseTransactionEvent implements Event {
 
     private final ImprovedTransactionData transactionData;
 
+    private final List<Runnable> afterCommitActions = new ArrayList<>();
+
     public DatabaseTransactionEvent(ImprovedTransactionData transactionData) {
         this.transactionData = transactionData;
     }
@@ -28,4 +33,17 @@ public class DatabaseTransactionEvent implements Event {
     public ImprovedTransactionData getTransactionData() {
         return transactionData;
     }
+
+    /**
+     * Defers an action until the transaction has been committed, it is not run when the transaction rolls back.
+     * The transaction data cannot be read anymore at that point, so the action must only use what has been
+     * collected from it by the synchronous listener registering it.
+     */
+    public void runAfterCommit(Runnable action) {
+        afterCommitActions.add(action);
+    }
+
+    public List<Runnable> getAfterCommitActions() {
+        return afterCommitActions;
+    }
 }
@@ -16,9 +16,13 @@
 package com.graphaware.nlp.event;
 
 import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.NLPEvents;
 import org.neo4j.logging.Log;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 public class EventDispatcher {
@@ -26,34 +30,216 @@ public class EventDispatcher {
     private static final Log LOG = LoggerFactory.getLogger(EventDispatcher.class);
 
     private static final int DEFAULT_PRIORITY = 100;
-    private final Map<Events, SortedMap<Integer, List<Consumer>>> listeners = new HashMap<>();
+    public static final int DEFAULT_THREADS = 2;
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    public enum BackPressurePolicy {
+        BLOCK, DROP, CALLER_RUNS
+    }
+
+    private final Map<Events, SortedMap<Integer, List<Consumer>>> listeners = new ConcurrentHashMap<>();
+    private final Map<Events, SortedMap<Integer, List<Consumer>>> asyncListeners = new ConcurrentHashMap<>();
+
+    private final int threads;
+    private final int queueSize;
+    private final BackPressurePolicy backPressurePolicy;
+    private volatile ThreadPoolExecutor executor;
+
+    private final Object completionLock = new Object();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public EventDispatcher() {
+        this(DEFAULT_THREADS, DEFAULT_QUEUE_SIZE, BackPressurePolicy.BLOCK);
+    }
+
+    public EventDispatcher(int threads, int queueSize, BackPressurePolicy backPressurePolicy) {
+        if (threads < 1 || queueSize < 1) {
+            throw new RuntimeException("Event dispatcher threads and queue size must be greater than 0");
+        }
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.backPressurePolicy = backPressurePolicy;
+    }
 
     public void registerListener(Events eventName, Consumer consumer) {
         registerListener(eventName, consumer, DEFAULT_PRIORITY);
     }
 
     public void registerListener(Events eventName, Consumer consumer, int priority) {
-        if (!listeners.containsKey(eventName)) {
-            listeners.put(eventName, new TreeMap<>());
+        register(listeners, eventName, consumer, priority);
+    }
+
+    /**
+     * Registers a listener executed on the dispatcher executor instead of the notifying thread. The annotation
+     * events reach it once the transaction of the caller has been committed, so it should open its own transaction
+     * and look up nodes by id rather than using the ones carried by the event. The transaction data of
+     * {@link NLPEvents#TRANSACTION_BEFORE_COMMIT} cannot be read from another thread, that event only accepts
+     * synchronous listeners.
+     */
+    public void registerAsyncListener(Events eventName, Consumer consumer) {
+        registerAsyncListener(eventName, consumer, DEFAULT_PRIORITY);
+    }
+
+    public void registerAsyncListener(Events eventName, Consumer consumer, int priority) {
+        if (eventName == NLPEvents.TRANSACTION_BEFORE_COMMIT) {
+            throw new RuntimeException("Asynchronous listeners cannot be registered for " + eventName);
         }
+        register(asyncListeners, eventName, consumer, priority);
+    }
+
+    /**
+     * Runs the synchronous listeners and submits the event to the asynchronous ones right away. Within a
+     * transaction, use {@link #notifySync(Events, Event)} and defer {@link #notifyAsync(Events, Event)} until it
+     * commits instead.
+     */
+    public void notify(Events eventName, Event event) {
+        LOG.debug("Notifying listeners for event %s", eventName.toString());
+        notifySync(eventName, event);
+        notifyAsync(eventName, event);
+    }
 
-        if (!listeners.get(eventName).containsKey(priority)) {
-            listeners.get(eventName).put(priority, new ArrayList<>());
+    /**
+     * Runs only the listeners executed on the notifying thread, in its transaction.
+     */
+    public void notifySync(Events eventName, Event event) {
+        if (listeners.containsKey(eventName)) {
+            listeners.get(eventName).values().forEach(consumers -> {
+                consumers.forEach(consumer -> consumer.accept(event));
+            });
         }
+    }
 
-        listeners.get(eventName).get(priority).add(consumer);
+    /**
+     * Submits the event to the asynchronous listeners only, for instance once the transaction which produced it
+     * has been committed.
+     */
+    public void notifyAsync(Events eventName, Event event) {
+        if (asyncListeners.containsKey(eventName)) {
+            List<Consumer> consumers = new ArrayList<>();
+            asyncListeners.get(eventName).values().forEach(consumers::addAll);
+            dispatchAsync(eventName, event, consumers);
+        }
     }
 
-    public void notify(Events eventName, Event event) {
-        LOG.info("Notifying listeners for event {}", eventName.toString());
-        if (!listeners.containsKey(eventName)) {
-            return;
+    /**
+     * Waits until all the events submitted to the asynchronous listeners have been processed.
+     *
+     * @return false if the timeout elapsed before completion
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (completionLock) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(completionLock, remaining);
+            }
         }
 
-        listeners.get(eventName).keySet().forEach(k -> {
-            listeners.get(eventName).get(k).forEach(consumer -> {
-                consumer.accept(event);
-            });
-        });
+        return true;
+    }
+
+    public long getDroppedEventsCount() {
+        return dropped.get();
+    }
+
+    public long getFailedListenersCount() {
+        return failed.get();
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized void register(Map<Events, SortedMap<Integer, List<Consumer>>> registry, Events eventName, Consumer consumer, int priority) {
+        registry.computeIfAbsent(eventName, k -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(priority, k -> new CopyOnWriteArrayList<>())
+                .add(consumer);
+    }
+
+    private void dispatchAsync(Events eventName, Event event, List<Consumer> consumers) {
+        pending.incrementAndGet();
+        Runnable task = () -> {
+            try {
+                // Listeners of the same event keep their priority order, a failing one does not stop the others
+                for (Consumer consumer : consumers) {
+                    try {
+                        consumer.accept(event);
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        LOG.error("Error in asynchronous listener for event " + eventName, e);
+                    }
+                }
+            } finally {
+                completed();
+            }
+        };
+        try {
+            getExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            completed();
+            dropped.incrementAndGet();
+            LOG.warn("Event " + eventName + " dropped: " + e.getMessage());
+        }
+    }
+
+    private void completed() {
+        if (pending.decrementAndGet() == 0) {
+            synchronized (completionLock) {
+                completionLock.notifyAll();
+            }
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    executor = createExecutor();
+                }
+            }
+        }
+
+        return executor;
+    }
+
+    private ThreadPoolExecutor createExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, "nlp-event-dispatcher-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory, rejectionHandler());
+    }
+
+    private RejectedExecutionHandler rejectionHandler() {
+        switch (backPressurePolicy) {
+            case CALLER_RUNS:
+                return (r, pool) -> r.run();
+            case DROP:
+                return new ThreadPoolExecutor.AbortPolicy();
+            case BLOCK:
+            default:
+                return (r, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("event dispatcher is shut down");
+                    }
+                    try {
+                        pool.getQueue().put(r);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("interrupted while waiting for the event queue", e);
+                    }
+                };
+        }
     }
 }
@@ -61,4 +61,9 @@ public abstract class AbstractExtension implements NLPExtension {
         this.registerEventListeners(getNLPManager().getEventDispatcher());
         //in the subclasses it would be possible overwrite something in the NLPManager
     }
+
+    @Override
+    public void shutdown() {
+
+    }
 }
@@ -22,4 +22,5 @@ public interface NLPExtension {
 
     void registerEventListeners(EventDispatcher eventDispatcher);
     void postLoaded();
+    void shutdown();
 }
@@ -0,0 +1,704 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.hnsw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical Navigable Small World graph (Malkov and Yashunin) over dense vectors, for approximate cosine nearest
+ * neighbours. Vectors are normalized on insertion, so the similarity is a dot product. Insertions and searches can run
+ * concurrently; replacing or removing the vector of a node only hides its previous entry from the results.
+ */
+public class HnswIndex {
+
+    private static final int MAGIC = 0x484e5357;
+    private static final int VERSION = 1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final Comparator<Candidate> MOST_SIMILAR_FIRST = (a, b) -> Float.compare(b.similarity, a.similarity);
+    private static final Comparator<Candidate> LEAST_SIMILAR_FIRST = (a, b) -> Float.compare(a.similarity, b.similarity);
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private volatile int efSearch;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object entryLock = new Object();
+    private final Object allocationLock = new Object();
+    private final Map<Long, Integer> slots = new ConcurrentHashMap<>();
+    private final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+
+    private long[] nodeIds;
+    private float[][] vectors;
+    // links[slot][level] are replaced, never modified, while holding the monitor of links[slot]
+    private int[][][] links;
+    private volatile boolean[] deleted;
+    private int size;
+
+    private volatile int entryPoint = -1;
+    private volatile int maxLevel = -1;
+
+    public HnswIndex(int dimension, int m, int efConstruction, int efSearch) {
+        if (dimension < 1 || m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new RuntimeException("Invalid HNSW parameters: dimension=" + dimension + ", m=" + m
+                    + ", efConstruction=" + efConstruction + ", efSearch=" + efSearch);
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.nodeIds = new long[INITIAL_CAPACITY];
+        this.vectors = new float[INITIAL_CAPACITY][];
+        this.links = new int[INITIAL_CAPACITY][][];
+        this.deleted = new boolean[INITIAL_CAPACITY];
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new RuntimeException("efSearch must be positive");
+        }
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * @return the number of nodes with a vector in the index
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    public boolean contains(long nodeId) {
+        return slots.containsKey(nodeId);
+    }
+
+    /**
+     * @return the number of entries hidden by the removal or the replacement of a vector, until the index is compacted
+     */
+    public int getDeletedCount() {
+        synchronized (allocationLock) {
+            return size - slots.size();
+        }
+    }
+
+    /**
+     * Adds the vector of a node, replacing its previous one.
+     */
+    public void add(long nodeId, float[] vector) {
+        insert(nodeId, normalize(vector));
+    }
+
+    private void insert(long nodeId, float[] normalized) {
+        int level = (int) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * levelMultiplier);
+        int slot = allocate(nodeId, normalized, level);
+
+        lock.readLock().lock();
+        try {
+            int entry;
+            int top;
+            synchronized (entryLock) {
+                if (entryPoint < 0) {
+                    entryPoint = slot;
+                    maxLevel = level;
+                    publish(nodeId, slot);
+                    return;
+                }
+                entry = entryPoint;
+                top = maxLevel;
+            }
+            Candidate current = new Candidate(entry, similarity(normalized, entry));
+            for (int l = top; l > level; --l) {
+                current = greedySearch(normalized, current, l);
+            }
+            for (int l = Math.min(level, top); l >= 0; --l) {
+                List<Candidate> candidates = searchLayer(normalized, current, efConstruction, l);
+                int[] neighbours = selectNeighbours(normalized, candidates, m);
+                synchronized (links[slot]) {
+                    links[slot][l] = neighbours;
+                }
+                for (int neighbour : neighbours) {
+                    connect(neighbour, slot, l);
+                }
+                current = candidates.get(0);
+            }
+            if (level > top) {
+                synchronized (entryLock) {
+                    if (level > maxLevel) {
+                        maxLevel = level;
+                        entryPoint = slot;
+                    }
+                }
+            }
+            publish(nodeId, slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a new index with the same parameters and the vectors of the nodes currently in this one, without the
+     * entries deleted
+     */
+    public HnswIndex compact() {
+        HnswIndex compacted = new HnswIndex(dimension, m, efConstruction, efSearch);
+        new ArrayList<>(slots.keySet()).parallelStream().forEach(nodeId -> {
+            float[] vector = getVector(nodeId);
+            if (vector != null) {
+                compacted.insert(nodeId, vector);
+            }
+        });
+        return compacted;
+    }
+
+    /**
+     * Applies the additions and removals made to the source index since this one has been compacted from it. The
+     * vectors are shared by the two indexes, so an unchanged node is recognized by reference.
+     */
+    public void catchUp(HnswIndex source) {
+        for (Map.Entry<Long, Integer> entry : source.slots.entrySet()) {
+            float[] vector = source.getVector(entry.getKey());
+            if (vector != null && vector != getVector(entry.getKey())) {
+                insert(entry.getKey(), vector);
+            }
+        }
+        for (Long nodeId : new ArrayList<>(slots.keySet())) {
+            if (!source.contains(nodeId)) {
+                remove(nodeId);
+            }
+        }
+    }
+
+    public void remove(long nodeId) {
+        Integer slot = slots.remove(nodeId);
+        if (slot != null) {
+            deleted[slot] = true;
+        }
+    }
+
+    /**
+     * @return the vector stored for the node, normalized, or null
+     */
+    public float[] getVector(long nodeId) {
+        Integer slot = slots.get(nodeId);
+        return slot != null ? vectors[slot] : null;
+    }
+
+    /**
+     * @return whether the vector stored for the node is the given one, once normalized
+     */
+    public boolean hasVector(long nodeId, float[] vector) {
+        float[] stored = getVector(nodeId);
+        return stored != null && Arrays.equals(stored, normalize(vector));
+    }
+
+    /**
+     * @return the nodes with a vector in the index
+     */
+    public Set<Long> getNodeIds() {
+        return new HashSet<>(slots.keySet());
+    }
+
+    /**
+     * @return the k nodes most similar to the stored vector of the node, the node itself excluded
+     */
+    public List<Neighbour> nearest(long nodeId, int k) {
+        float[] vector = getVector(nodeId);
+        if (vector == null) {
+            throw new RuntimeException("The node " + nodeId + " is not in the index");
+        }
+        return search(vector, k, efSearch, nodeId);
+    }
+
+    public List<Neighbour> search(float[] query, int k) {
+        return search(query, k, efSearch, null);
+    }
+
+    /**
+     * @param excludedNodeId a node not to return, usually the one the query vector belongs to
+     * @return at most k nodes, most similar first
+     */
+    public List<Neighbour> search(float[] query, int k, int ef, Long excludedNodeId) {
+        float[] normalized = normalize(query);
+        lock.readLock().lock();
+        try {
+            int entry = entryPoint;
+            if (entry < 0 || k < 1) {
+                return new ArrayList<>();
+            }
+            Candidate current = new Candidate(entry, similarity(normalized, entry));
+            for (int l = maxLevel; l > 0; --l) {
+                current = greedySearch(normalized, current, l);
+            }
+            List<Candidate> candidates = searchLayer(normalized, current, Math.max(ef, k + 1), 0);
+            List<Neighbour> result = new ArrayList<>(k);
+            for (Candidate candidate : candidates) {
+                long nodeId = nodeIds[candidate.slot];
+                if (deleted[candidate.slot] || (excludedNodeId != null && excludedNodeId == nodeId)) {
+                    continue;
+                }
+                result.add(new Neighbour(nodeId, candidate.similarity));
+                if (result.size() == k) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the k nodes most similar to the query computed exhaustively, most similar first
+     */
+    public List<Neighbour> bruteForceSearch(float[] query, int k, Long excludedNodeId) {
+        float[] normalized = normalize(query);
+        PriorityQueue<Candidate> heap = new PriorityQueue<>(k + 1, LEAST_SIMILAR_FIRST);
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<Long, Integer> entry : slots.entrySet()) {
+                if (excludedNodeId != null && excludedNodeId.equals(entry.getKey())) {
+                    continue;
+                }
+                heap.add(new Candidate(entry.getValue(), similarity(normalized, entry.getValue())));
+                if (heap.size() > k) {
+                    heap.poll();
+                }
+            }
+            List<Candidate> sorted = new ArrayList<>(heap);
+            sorted.sort(MOST_SIMILAR_FIRST);
+            List<Neighbour> result = new ArrayList<>(sorted.size());
+            for (Candidate candidate : sorted) {
+                result.add(new Neighbour(nodeIds[candidate.slot], candidate.similarity));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Compares the k nearest neighbours found by the index with the exact ones, for a random sample of the indexed
+     * nodes.
+     *
+     * @return the fraction of the exact neighbours returned by the index
+     */
+    public double recall(int sampleSize, int k, long seed) {
+        return recall(sampleSize, k, efSearch, seed);
+    }
+
+    /**
+     * @param ef size of the dynamic candidate list used for the searches, the one of the index is left unchanged
+     */
+    public double recall(int sampleSize, int k, int ef, long seed) {
+        List<Long> ids = new ArrayList<>(slots.keySet());
+        Collections.shuffle(ids, new Random(seed));
+        int found = 0;
+        int expected = 0;
+        for (Long nodeId : ids.subList(0, Math.min(sampleSize, ids.size()))) {
+            float[] vector = getVector(nodeId);
+            if (vector == null) {
+                continue;
+            }
+            Set<Long> exact = new HashSet<>();
+            bruteForceSearch(vector, k, nodeId).forEach(neighbour -> exact.add(neighbour.nodeId));
+            for (Neighbour neighbour : search(vector, k, ef, nodeId)) {
+                if (exact.contains(neighbour.nodeId)) {
+                    found++;
+                }
+            }
+            expected += exact.size();
+        }
+        return expected > 0 ? (double) found / expected : 1.0;
+    }
+
+    /**
+     * Writes the entries allocated so far, insertions and searches keep running meanwhile.
+     */
+    public void save(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create the directory " + parent);
+        }
+        int entry;
+        int top;
+        synchronized (entryLock) {
+            entry = entryPoint;
+            top = maxLevel;
+        }
+        // the arrays are only replaced while holding the allocation lock, and the entry point is allocated already
+        int count;
+        long[] savedNodeIds;
+        float[][] savedVectors;
+        int[][][] savedLinks;
+        synchronized (allocationLock) {
+            count = size;
+            savedNodeIds = Arrays.copyOf(nodeIds, count);
+            savedVectors = Arrays.copyOf(vectors, count);
+            savedLinks = Arrays.copyOf(links, count);
+        }
+        File tmp = new File(parent, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimension);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(efSearch);
+            out.writeInt(count);
+            out.writeInt(entry);
+            out.writeInt(top);
+            for (int slot = 0; slot < count; ++slot) {
+                out.writeLong(savedNodeIds[slot]);
+                out.writeBoolean(!Integer.valueOf(slot).equals(slots.get(savedNodeIds[slot])));
+                for (float value : savedVectors[slot]) {
+                    out.writeFloat(value);
+                }
+                int[][] levels = savedLinks[slot];
+                out.writeInt(levels.length);
+                for (int l = 0; l < levels.length; ++l) {
+                    // links to the entries allocated after the snapshot are dropped
+                    int[] neighbours = Arrays.stream(getLinks(levels, l)).filter(neighbour -> neighbour < count).toArray();
+                    out.writeInt(neighbours.length);
+                    for (int neighbour : neighbours) {
+                        out.writeInt(neighbour);
+                    }
+                }
+            }
+        }
+        if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    public static HnswIndex load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not an HNSW index");
+            }
+            HnswIndex index = new HnswIndex(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            int size = in.readInt();
+            index.ensureCapacity(size);
+            index.size = size;
+            index.entryPoint = in.readInt();
+            index.maxLevel = in.readInt();
+            for (int slot = 0; slot < size; ++slot) {
+                index.nodeIds[slot] = in.readLong();
+                index.deleted[slot] = in.readBoolean();
+                float[] vector = new float[index.dimension];
+                for (int i = 0; i < vector.length; ++i) {
+                    vector[i] = in.readFloat();
+                }
+                index.vectors[slot] = vector;
+                int[][] levels = new int[in.readInt()][];
+                for (int l = 0; l < levels.length; ++l) {
+                    levels[l] = new int[in.readInt()];
+                    for (int i = 0; i < levels[l].length; ++i) {
+                        levels[l][i] = in.readInt();
+                    }
+                }
+                index.links[slot] = levels;
+                if (!index.deleted[slot]) {
+                    index.slots.put(index.nodeIds[slot], slot);
+                }
+            }
+            return index;
+        }
+    }
+
+    private int allocate(long nodeId, float[] vector, int level) {
+        synchronized (allocationLock) {
+            if (size == nodeIds.length) {
+                // the arrays are only replaced when no insertion or search is running
+                lock.writeLock().lock();
+                try {
+                    ensureCapacity(size + 1);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            int slot = size++;
+            nodeIds[slot] = nodeId;
+            vectors[slot] = vector;
+            int[][] levels = new int[level + 1][];
+            Arrays.fill(levels, new int[0]);
+            links[slot] = levels;
+            return slot;
+        }
+    }
+
+    private void publish(long nodeId, int slot) {
+        Integer previous = slots.put(nodeId, slot);
+        if (previous != null) {
+            deleted[previous] = true;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= nodeIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, nodeIds.length * 2);
+        nodeIds = Arrays.copyOf(nodeIds, newCapacity);
+        vectors = Arrays.copyOf(vectors, newCapacity);
+        links = Arrays.copyOf(links, newCapacity);
+        deleted = Arrays.copyOf(deleted, newCapacity);
+    }
+
+    private Candidate greedySearch(float[] query, Candidate start, int level) {
+        Candidate current = start;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int neighbour : getLinks(current.slot, level)) {
+                float similarity = similarity(query, neighbour);
+                if (similarity > current.similarity) {
+                    current = new Candidate(neighbour, similarity);
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return the ef nodes closest to the query found from the entry point on the level, most similar first
+     */
+    private List<Candidate> searchLayer(float[] query, Candidate entry, int ef, int level) {
+        Visited seen = visited.get();
+        seen.reset(size);
+        seen.visit(entry.slot);
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(MOST_SIMILAR_FIRST);
+        PriorityQueue<Candidate> nearest = new PriorityQueue<>(ef + 1, LEAST_SIMILAR_FIRST);
+        toVisit.add(entry);
+        nearest.add(entry);
+        while (!toVisit.isEmpty()) {
+            Candidate candidate = toVisit.poll();
+            if (nearest.size() >= ef && candidate.similarity < nearest.peek().similarity) {
+                break;
+            }
+            for (int neighbour : getLinks(candidate.slot, level)) {
+                if (!seen.visit(neighbour)) {
+                    continue;
+                }
+                float similarity = similarity(query, neighbour);
+                if (nearest.size() < ef || similarity > nearest.peek().similarity) {
+                    Candidate next = new Candidate(neighbour, similarity);
+                    toVisit.add(next);
+                    nearest.add(next);
+                    if (nearest.size() > ef) {
+                        nearest.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> result = new ArrayList<>(nearest);
+        result.sort(MOST_SIMILAR_FIRST);
+        return result;
+    }
+
+    /**
+     * Keeps the candidates closer to the base than to any neighbour already selected, so that the links spread in
+     * different directions, then fills the remaining room with the closest candidates discarded.
+     */
+    private int[] selectNeighbours(float[] base, List<Candidate> candidates, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        List<Candidate> discarded = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() == max) {
+                break;
+            }
+            boolean diverse = true;
+            for (Candidate other : selected) {
+                if (dot(vectors[candidate.slot], vectors[other.slot]) > candidate.similarity) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                discarded.add(candidate);
+            }
+        }
+        for (int i = 0; i < discarded.size() && selected.size() < max; ++i) {
+            selected.add(discarded.get(i));
+        }
+        int[] result = new int[selected.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = selected.get(i).slot;
+        }
+        return result;
+    }
+
+    private void connect(int from, int to, int level) {
+        int max = level == 0 ? maxM0 : m;
+        synchronized (links[from]) {
+            int[] current = links[from][level];
+            if (current.length < max) {
+                int[] extended = Arrays.copyOf(current, current.length + 1);
+                extended[current.length] = to;
+                links[from][level] = extended;
+                return;
+            }
+            List<Candidate> candidates = new ArrayList<>(current.length + 1);
+            for (int neighbour : current) {
+                candidates.add(new Candidate(neighbour, similarity(vectors[from], neighbour)));
+            }
+            candidates.add(new Candidate(to, similarity(vectors[from], to)));
+            candidates.sort(MOST_SIMILAR_FIRST);
+            links[from][level] = selectNeighbours(vectors[from], candidates, max);
+        }
+    }
+
+    private int[] getLinks(int slot, int level) {
+        return getLinks(links[slot], level);
+    }
+
+    private static int[] getLinks(int[][] levels, int level) {
+        // reading under the monitor also makes the vectors of the nodes just linked visible
+        synchronized (levels) {
+            return level < levels.length ? levels[level] : new int[0];
+        }
+    }
+
+    private float similarity(float[] query, int slot) {
+        return dot(query, vectors[slot]);
+    }
+
+    private float[] normalize(float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new RuntimeException("Expected a vector of dimension " + dimension + ", got "
+                    + (vector == null ? "null" : vector.length));
+        }
+        float norm = (float) Math.sqrt(dot(vector, vector));
+        float[] normalized = new float[dimension];
+        if (norm > 0) {
+            for (int i = 0; i < dimension; ++i) {
+                normalized[i] = vector[i] / norm;
+            }
+        }
+        return normalized;
+    }
+
+    private static float dot(float[] x, float[] y) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < x.length; i += 4) {
+            s0 += x[i] * y[i];
+            s1 += x[i + 1] * y[i + 1];
+            s2 += x[i + 2] * y[i + 2];
+            s3 += x[i + 3] * y[i + 3];
+        }
+        for (; i < x.length; ++i) {
+            s0 += x[i] * y[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public static class Neighbour {
+
+        public final long nodeId;
+        public final float similarity;
+
+        public Neighbour(long nodeId, float similarity) {
+            this.nodeId = nodeId;
+            this.similarity = similarity;
+        }
+    }
+
+    private static class Candidate {
+
+        private final int slot;
+        private final float similarity;
+
+        private Candidate(int slot, float similarity) {
+            this.slot = slot;
+            this.similarity = similarity;
+        }
+    }
+
+    /**
+     * Visited marks of a thread, cleared in O(1) by moving to a new generation.
+     */
+    private static class Visited {
+
+        private int[] marks = new int[0];
+        private int generation;
+
+        private void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                generation = 0;
+            }
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        private boolean visit(int slot) {
+            if (slot >= marks.length) {
+                marks = Arrays.copyOf(marks, Math.max(slot + 1, marks.length * 2));
+            }
+            if (marks[slot] == generation) {
+                return false;
+            }
+            marks[slot] = generation;
+            return true;
+        }
+    }
+}
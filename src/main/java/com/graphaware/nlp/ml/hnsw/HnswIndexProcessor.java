@@ -0,0 +1,490 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.hnsw;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.NLPEvents;
+import com.graphaware.nlp.annotation.NLPModuleExtension;
+import com.graphaware.nlp.domain.VectorContainer;
+import com.graphaware.nlp.dsl.request.VectorIndexRequest;
+import com.graphaware.nlp.dsl.result.VectorIndexResult;
+import com.graphaware.nlp.event.DatabaseTransactionEvent;
+import com.graphaware.nlp.event.EventDispatcher;
+import com.graphaware.nlp.extension.AbstractExtension;
+import com.graphaware.nlp.extension.NLPExtension;
+import com.graphaware.nlp.persistence.persisters.VectorPersister;
+import com.graphaware.nlp.vector.DenseVector;
+import com.graphaware.nlp.vector.GenericVector;
+import com.graphaware.tx.event.improved.api.ImprovedTransactionData;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.transaction.log.TransactionIdStore;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * HNSW indexes of the dense vectors stored by the {@link VectorPersister} in a property of the nodes with a label.
+ * The indexes are saved in the nlp-vector-index directory of the database and kept up to date with the vectors
+ * written, changed or deleted, and the label assigned or removed, in later transactions once they are committed;
+ * those changes are saved in the background, and an index holding too many deleted entries is compacted first.
+ * The indexes are saved again on shutdown, and reconciled with the graph on load unless no transaction has been
+ * committed since.
+ */
+@NLPModuleExtension(name = "HnswIndexProcessor")
+public class HnswIndexProcessor extends AbstractExtension implements NLPExtension {
+
+    private static final Log LOG = LoggerFactory.getLogger(HnswIndexProcessor.class);
+
+    private static final String INDEX_DIRECTORY = "nlp-vector-index";
+    private static final String INDEX_EXTENSION = ".hnsw";
+    private static final String KEY_SEPARATOR = "#";
+    // id of the last transaction committed when the indexes were saved on shutdown
+    private static final String COMMITTED_MARKER = "last-committed-tx";
+    private static final long SAVE_DELAY_SECONDS = 30;
+    // deleted entries per live entry above which the index is compacted before being saved
+    private static final double COMPACTION_RATIO = 0.5;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    private final Map<String, HnswIndex> indexes = new ConcurrentHashMap<>();
+    private final Set<String> modified = ConcurrentHashMap.newKeySet();
+    // changes are applied one transaction at a time, so that a compaction does not miss any of them
+    private final Object updateLock = new Object();
+    private volatile boolean loaded = false;
+    private ScheduledExecutorService saver;
+    private boolean closed = false;
+
+    @Override
+    public void registerEventListeners(EventDispatcher eventDispatcher) {
+        eventDispatcher.registerListener(NLPEvents.TRANSACTION_BEFORE_COMMIT, event -> {
+            if (!getIndexes().isEmpty()) {
+                DatabaseTransactionEvent transactionEvent = (DatabaseTransactionEvent) event;
+                // the vectors are read before commit, the indexes only see them once the transaction is committed
+                List<VectorChange> changes = getChanges(transactionEvent.getTransactionData());
+                if (!changes.isEmpty()) {
+                    transactionEvent.runAfterCommit(() -> apply(changes));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void postLoaded() {
+        super.postLoaded();
+        getIndexes();
+    }
+
+    /**
+     * Stops the background saver and saves the indexes changed since, with the id of the last committed transaction
+     * so that the next start knows whether they are up to date.
+     */
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            if (!loaded || closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (saver != null) {
+            saver.shutdown();
+            try {
+                saver.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (saveModified()) {
+            writeCommittedMarker();
+        }
+    }
+
+    public VectorIndexResult build(VectorIndexRequest request) {
+        long start = System.currentTimeMillis();
+        List<Long> nodeIds = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        try (Transaction tx = getDatabase().beginTx()) {
+            ResourceIterator<Node> nodes = getDatabase().findNodes(Label.label(request.getLabel()));
+            while (nodes.hasNext()) {
+                Node node = nodes.next();
+                float[] vector = getDenseVector(node, request.getProperty());
+                if (vector != null) {
+                    nodeIds.add(node.getId());
+                    vectors.add(vector);
+                }
+            }
+            tx.success();
+        }
+        if (vectors.isEmpty()) {
+            throw new RuntimeException("No dense vector found in property '" + request.getProperty() + "' of the nodes with label " + request.getLabel());
+        }
+
+        HnswIndex index = new HnswIndex(vectors.get(0).length, request.getM(), request.getEfConstruction(), request.getEfSearch());
+        ForkJoinPool pool = new ForkJoinPool(request.getConcurrency());
+        try {
+            pool.submit(() -> IntStream.range(0, vectors.size()).parallel()
+                    .forEach(i -> index.add(nodeIds.get(i), vectors.get(i))))
+                    .get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Error while building the vector index of " + request.getLabel() + "." + request.getProperty(), e);
+        } finally {
+            pool.shutdown();
+        }
+        String key = key(request.getLabel(), request.getProperty());
+        getIndexes().put(key, index);
+        save(key, index);
+        long time = System.currentTimeMillis() - start;
+        LOG.info("Vector index of " + index.size() + " nodes built for " + request.getLabel() + "." + request.getProperty() + " in " + time);
+
+        Double recall = request.getRecallSample() > 0 ? index.recall(request.getRecallSample(), 10, start) : null;
+        return toResult(request.getLabel(), request.getProperty(), index, index.getEfSearch(), recall, time);
+    }
+
+    /**
+     * @return the recall of the k nearest neighbours returned by the index against brute force, for a sample of nodes
+     */
+    public VectorIndexResult recall(String label, String property, int k, int sampleSize, Integer efSearch) {
+        HnswIndex index = getIndexes().get(key(label, property));
+        if (index == null) {
+            throw new RuntimeException("No vector index for " + label + "." + property);
+        }
+        int ef = efSearch != null ? efSearch : index.getEfSearch();
+        long start = System.currentTimeMillis();
+        double recall = index.recall(sampleSize, k, ef, start);
+        return toResult(label, property, index, ef, recall, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @param efSearch size of the dynamic candidate list, the one of the index when null
+     * @return the k most similar nodes, most similar first
+     */
+    public List<HnswIndex.Neighbour> nearest(Node node, String property, int k, Integer efSearch) {
+        for (Label label : node.getLabels()) {
+            HnswIndex index = getIndexes().get(key(label.name(), property));
+            if (index == null) {
+                continue;
+            }
+            int ef = efSearch != null ? efSearch : index.getEfSearch();
+            float[] vector = index.getVector(node.getId());
+            if (vector == null) {
+                vector = getDenseVector(node, property);
+            }
+            if (vector == null) {
+                throw new RuntimeException("The node " + node.getId() + " has no dense vector in property '" + property + "'");
+            }
+            return index.search(vector, k, ef, node.getId());
+        }
+        throw new RuntimeException("No vector index for property '" + property + "' of the labels of node " + node.getId());
+    }
+
+    private List<VectorChange> getChanges(ImprovedTransactionData transactionData) {
+        List<VectorChange> changes = new ArrayList<>();
+        for (Node node : transactionData.getAllDeletedNodes()) {
+            indexes.forEach((key, index) -> {
+                if (index.contains(node.getId())) {
+                    changes.add(new VectorChange(key, node.getId(), null));
+                }
+            });
+        }
+        List<Node> written = new ArrayList<>(transactionData.getAllCreatedNodes());
+        List<Node> changed = new ArrayList<>();
+        transactionData.getAllChangedNodes().forEach(change -> changed.add(change.getCurrent()));
+        indexes.forEach((key, index) -> {
+            Label label = Label.label(labelOf(key));
+            String property = propertyOf(key);
+            String arrayProperty = VectorPersister.getArrayPropertyName(property);
+            for (Node node : written) {
+                if (node.hasLabel(label)) {
+                    addChange(changes, key, index, node, property);
+                }
+            }
+            for (Node node : changed) {
+                if (transactionData.hasLabelBeenRemoved(node, label)) {
+                    if (index.contains(node.getId())) {
+                        changes.add(new VectorChange(key, node.getId(), null));
+                    }
+                } else if (node.hasLabel(label) && (transactionData.hasLabelBeenAssigned(node, label)
+                        || transactionData.hasPropertyBeenCreated(node, arrayProperty)
+                        || transactionData.hasPropertyBeenChanged(node, arrayProperty)
+                        || transactionData.hasPropertyBeenDeleted(node, arrayProperty))) {
+                    addChange(changes, key, index, node, property);
+                }
+            }
+        });
+        return changes;
+    }
+
+    private void addChange(List<VectorChange> changes, String key, HnswIndex index, Node node, String property) {
+        float[] vector = getDenseVector(node, property);
+        if (vector != null && vector.length == index.getDimension()) {
+            changes.add(new VectorChange(key, node.getId(), vector));
+        } else if (index.contains(node.getId())) {
+            changes.add(new VectorChange(key, node.getId(), null));
+        }
+    }
+
+    private void apply(List<VectorChange> changes) {
+        synchronized (updateLock) {
+            for (VectorChange change : changes) {
+                HnswIndex index = indexes.get(change.key);
+                if (index == null) {
+                    continue;
+                }
+                if (change.vector != null) {
+                    index.add(change.nodeId, change.vector);
+                } else {
+                    index.remove(change.nodeId);
+                }
+                modified.add(change.key);
+            }
+        }
+        scheduleSave();
+    }
+
+    private float[] getDenseVector(Node node, String property) {
+        VectorPersister persister = (VectorPersister) getPersister(VectorContainer.class);
+        if (!persister.hasVector(node, property)) {
+            return null;
+        }
+        GenericVector vector = ((VectorContainer) persister.fromNode(node, property)).getVectorHandler().getVector();
+        return vector instanceof DenseVector ? vector.getArray() : null;
+    }
+
+    private Map<String, HnswIndex> getIndexes() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    load();
+                    loaded = true;
+                }
+            }
+        }
+        return indexes;
+    }
+
+    private void load() {
+        File[] files = getIndexDirectory().listFiles((dir, name) -> name.endsWith(INDEX_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        // the files are only known to be up to date when saved on shutdown and no transaction committed since
+        boolean upToDate = readCommittedMarker() == getLastCommittedTransactionId();
+        for (File file : files) {
+            String key = file.getName().substring(0, file.getName().length() - INDEX_EXTENSION.length());
+            try {
+                HnswIndex index = HnswIndex.load(file);
+                indexes.put(key, index);
+                LOG.info("Loaded vector index " + file);
+                if (!upToDate) {
+                    reconcile(key, index);
+                }
+            } catch (IOException e) {
+                LOG.error("Cannot load the vector index " + file, e);
+            }
+        }
+        new File(getIndexDirectory(), COMMITTED_MARKER).delete();
+    }
+
+    /**
+     * Applies to a loaded index the vectors written, changed or deleted while it was not kept up to date.
+     */
+    private void reconcile(String key, HnswIndex index) {
+        long start = System.currentTimeMillis();
+        String property = propertyOf(key);
+        Set<Long> nodeIds = new HashSet<>();
+        int updated = 0;
+        try (Transaction tx = getDatabase().beginTx()) {
+            ResourceIterator<Node> nodes = getDatabase().findNodes(Label.label(labelOf(key)));
+            while (nodes.hasNext()) {
+                Node node = nodes.next();
+                float[] vector = getDenseVector(node, property);
+                if (vector == null || vector.length != index.getDimension()) {
+                    continue;
+                }
+                nodeIds.add(node.getId());
+                if (!index.hasVector(node.getId(), vector)) {
+                    index.add(node.getId(), vector);
+                    updated++;
+                }
+            }
+            tx.success();
+        }
+        for (Long nodeId : index.getNodeIds()) {
+            if (!nodeIds.contains(nodeId)) {
+                index.remove(nodeId);
+                updated++;
+            }
+        }
+        if (updated > 0) {
+            modified.add(key);
+            scheduleSave();
+        }
+        LOG.info("Vector index " + key + " reconciled with the graph, " + updated + " nodes updated in " + (System.currentTimeMillis() - start));
+    }
+
+    private long readCommittedMarker() {
+        File marker = new File(getIndexDirectory(), COMMITTED_MARKER);
+        if (!marker.exists()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            LOG.warn("Cannot read " + marker + ", the vector indexes are reconciled with the graph");
+            return -1;
+        }
+    }
+
+    private void writeCommittedMarker() {
+        File marker = new File(getIndexDirectory(), COMMITTED_MARKER);
+        try {
+            Files.write(marker.toPath(), String.valueOf(getLastCommittedTransactionId()).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOG.error("Cannot write " + marker, e);
+        }
+    }
+
+    private long getLastCommittedTransactionId() {
+        return ((GraphDatabaseAPI) getDatabase()).getDependencyResolver()
+                .resolveDependency(TransactionIdStore.class)
+                .getLastCommittedTransactionId();
+    }
+
+    private synchronized void scheduleSave() {
+        if (saver == null && !closed) {
+            saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "nlp-vector-index-saver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            saver.scheduleWithFixedDelay(this::saveModified, SAVE_DELAY_SECONDS, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private boolean saveModified() {
+        boolean saved = true;
+        for (String key : new ArrayList<>(modified)) {
+            modified.remove(key);
+            HnswIndex index = indexes.get(key);
+            if (index != null) {
+                saved &= save(key, index.getDeletedCount() > index.size() * COMPACTION_RATIO ? compact(key, index) : index);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Rebuilds the index without its removed and replaced entries, the changes committed meanwhile are applied to
+     * the new index before it replaces the current one.
+     */
+    private HnswIndex compact(String key, HnswIndex index) {
+        long start = System.currentTimeMillis();
+        int deleted = index.getDeletedCount();
+        HnswIndex compacted = index.compact();
+        synchronized (updateLock) {
+            compacted.catchUp(index);
+            if (!indexes.replace(key, index, compacted)) {
+                return indexes.get(key);
+            }
+        }
+        LOG.info("Vector index " + key + " compacted, " + deleted + " deleted entries dropped in " + (System.currentTimeMillis() - start));
+
+        return compacted;
+    }
+
+    private boolean save(String key, HnswIndex index) {
+        File file = new File(getIndexDirectory(), key + INDEX_EXTENSION);
+        try {
+            index.save(file);
+            return true;
+        } catch (IOException e) {
+            LOG.error("Cannot save the vector index " + file, e);
+            return false;
+        }
+    }
+
+    private File getIndexDirectory() {
+        return new File(((GraphDatabaseAPI) getDatabase()).databaseLayout().databaseDirectory(), INDEX_DIRECTORY);
+    }
+
+    private static VectorIndexResult toResult(String label, String property, HnswIndex index, int efSearch, Double recall, long time) {
+        return new VectorIndexResult(label, property, index.size(), index.getDimension(), index.getM(),
+                index.getEfConstruction(), efSearch, recall, time);
+    }
+
+    private static String key(String label, String property) {
+        return encode(label) + KEY_SEPARATOR + encode(property);
+    }
+
+    private static String labelOf(String key) {
+        return decode(key.substring(0, key.indexOf(KEY_SEPARATOR)));
+    }
+
+    private static String propertyOf(String key) {
+        return decode(key.substring(key.indexOf(KEY_SEPARATOR) + 1));
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class VectorChange {
+
+        private final String key;
+        private final long nodeId;
+        // null when the vector has been removed
+        private final float[] vector;
+
+        private VectorChange(String key, long nodeId, float[] vector) {
+            this.key = key;
+            this.nodeId = nodeId;
+            this.vector = vector;
+        }
+    }
+}
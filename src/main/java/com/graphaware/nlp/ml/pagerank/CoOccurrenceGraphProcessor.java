@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.pagerank;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.NLPEvents;
+import com.graphaware.nlp.annotation.NLPModuleExtension;
+import com.graphaware.nlp.configuration.SettingsConstants;
+import com.graphaware.nlp.event.DatabaseTransactionEvent;
+import com.graphaware.nlp.event.EventDispatcher;
+import com.graphaware.nlp.event.TextAnnotationEvent;
+import com.graphaware.nlp.extension.AbstractExtension;
+import com.graphaware.nlp.extension.NLPExtension;
+import com.graphaware.nlp.persistence.constants.Labels;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the corpus-level graph of weighted CO_OCCURRENCE relationships between tags, the one read by default
+ * by ga.nlp.ml.pageRank. When the coOccurrenceGraph setting is enabled, the adjacent tags of every newly stored
+ * sentence are counted once and the pairs are kept on the sentence, so that deleting the sentence (directly or by
+ * an incremental annotation) decrements the same weights. An update only touches the changed documents.
+ */
+@NLPModuleExtension(name = "CoOccurrenceGraphProcessor")
+public class CoOccurrenceGraphProcessor extends AbstractExtension implements NLPExtension {
+
+    private static final Log LOG = LoggerFactory.getLogger(CoOccurrenceGraphProcessor.class);
+
+    public static final String CO_OCCURRENCE_RELATIONSHIP = "CO_OCCURRENCE";
+    public static final String WEIGHT_PROPERTY = "weight";
+    public static final String SENTENCE_PAIRS_PROPERTY = "coOccurrences";
+
+    private static final String SENTENCE_TAGS_QUERY = "MATCH (a:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)\n"
+            + "WHERE id(a) = {id} AND NOT exists(s." + SENTENCE_PAIRS_PROPERTY + ")\n"
+            + "OPTIONAL MATCH (s)-[:SENTENCE_TAG_OCCURRENCE]->(o:TagOccurrence)-[:TAG_OCCURRENCE_TAG]->(t:Tag)\n"
+            + "WITH s, o, t\n"
+            + "ORDER BY o.startPosition\n"
+            + "RETURN s AS sentence, collect(id(t)) AS tags";
+
+    private static final String INCREMENT_QUERY = "UNWIND {pairs} AS pair\n"
+            + "MATCH (t1:Tag) WHERE id(t1) = pair.source\n"
+            + "MATCH (t2:Tag) WHERE id(t2) = pair.destination\n"
+            + "MERGE (t1)-[r:" + CO_OCCURRENCE_RELATIONSHIP + "]->(t2)\n"
+            + "ON CREATE SET r." + WEIGHT_PROPERTY + " = pair.count\n"
+            + "ON MATCH SET r." + WEIGHT_PROPERTY + " = r." + WEIGHT_PROPERTY + " + pair.count";
+
+    private static final String DECREMENT_QUERY = "UNWIND {pairs} AS pair\n"
+            + "MATCH (t1:Tag)-[r:" + CO_OCCURRENCE_RELATIONSHIP + "]->(t2:Tag)\n"
+            + "WHERE id(t1) = pair.source AND id(t2) = pair.destination\n"
+            + "SET r." + WEIGHT_PROPERTY + " = r." + WEIGHT_PROPERTY + " - pair.count\n"
+            + "WITH r WHERE r." + WEIGHT_PROPERTY + " <= 0\n"
+            + "DELETE r";
+
+    @Override
+    public void registerEventListeners(EventDispatcher eventDispatcher) {
+        eventDispatcher.registerListener(NLPEvents.POST_TEXT_ANNOTATION, event -> {
+            if (isEnabled()) {
+                addDocument(((TextAnnotationEvent) event).getAnnotatedNode());
+            }
+        });
+        eventDispatcher.registerListener(NLPEvents.TRANSACTION_BEFORE_COMMIT, event -> {
+            if (isEnabled()) {
+                removeSentences(((DatabaseTransactionEvent) event).getTransactionData().getAllDeletedNodes());
+            }
+        });
+    }
+
+    /**
+     * Counts the sentences of the document that are not part of the graph yet, in the transaction of the caller.
+     */
+    public void addDocument(Node annotatedText) {
+        if (annotatedText == null) {
+            return;
+        }
+        Map<Long, Map<Long, Integer>> counts = new HashMap<>();
+        Result result = getDatabase().execute(SENTENCE_TAGS_QUERY, Collections.singletonMap("id", annotatedText.getId()));
+        while (result.hasNext()) {
+            Map<String, Object> row = result.next();
+            long[] pairs = adjacentPairs((List<Number>) row.get("tags"));
+            ((Node) row.get("sentence")).setProperty(SENTENCE_PAIRS_PROPERTY, pairs);
+            addPairs(counts, pairs);
+        }
+        if (!counts.isEmpty()) {
+            getDatabase().execute(INCREMENT_QUERY, Collections.singletonMap("pairs", toParameters(counts)));
+        }
+    }
+
+    private void removeSentences(Iterable<Node> deletedNodes) {
+        Label sentenceLabel = configuration().getLabelFor(Labels.Sentence);
+        Map<Long, Map<Long, Integer>> counts = new HashMap<>();
+        for (Node node : deletedNodes) {
+            if (node.hasLabel(sentenceLabel) && node.hasProperty(SENTENCE_PAIRS_PROPERTY)) {
+                addPairs(counts, (long[]) node.getProperty(SENTENCE_PAIRS_PROPERTY));
+            }
+        }
+        if (!counts.isEmpty()) {
+            LOG.debug("Removing co-occurrences of " + counts.size() + " tags of deleted sentences");
+            getDatabase().execute(DECREMENT_QUERY, Collections.singletonMap("pairs", toParameters(counts)));
+        }
+    }
+
+    /**
+     * @return the (source, destination) tag ids of consecutive occurrences, flattened
+     */
+    static long[] adjacentPairs(List<? extends Number> tags) {
+        long[] pairs = new long[Math.max(0, 2 * (tags.size() - 1))];
+        int n = 0;
+        for (int i = 1; i < tags.size(); ++i) {
+            long source = tags.get(i - 1).longValue();
+            long destination = tags.get(i).longValue();
+            if (source != destination) {
+                pairs[n++] = source;
+                pairs[n++] = destination;
+            }
+        }
+
+        return n == pairs.length ? pairs : Arrays.copyOf(pairs, n);
+    }
+
+    private static void addPairs(Map<Long, Map<Long, Integer>> counts, long[] pairs) {
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            counts.computeIfAbsent(pairs[i], k -> new HashMap<>()).merge(pairs[i + 1], 1, Integer::sum);
+        }
+    }
+
+    private static List<Map<String, Object>> toParameters(Map<Long, Map<Long, Integer>> counts) {
+        List<Map<String, Object>> parameters = new ArrayList<>();
+        counts.forEach((source, destinations) -> destinations.forEach((destination, count) -> {
+            Map<String, Object> pair = new HashMap<>();
+            pair.put("source", source);
+            pair.put("destination", destination);
+            pair.put("count", count);
+            parameters.add(pair);
+        }));
+
+        return parameters;
+    }
+
+    private boolean isEnabled() {
+        Object value = getConfiguration().getSettingValueFor(SettingsConstants.CO_OCCURRENCE_GRAPH);
+
+        return value != null && Boolean.valueOf(value.toString());
+    }
+}
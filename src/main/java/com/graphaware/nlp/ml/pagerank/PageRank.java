@@ -15,8 +15,8 @@
  */
 package com.graphaware.nlp.ml.pagerank;
 
-import com.google.common.util.concurrent.AtomicDouble;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
@@ -24,16 +24,27 @@ import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
 import static com.graphaware.nlp.util.TypeConverter.getDoubleValue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class PageRank {
 
     private static final Log LOG = LoggerFactory.getLogger(PageRank.class);
 
+    public static final String DEFAULT_WRITE_PROPERTY = "pagerank";
+    public static final int DEFAULT_WRITE_BATCH_SIZE = 10000;
+
     protected final GraphDatabaseService database;
     private Map<Long, Double> nodeWeights;
+    private int iterations;
 
     public PageRank(GraphDatabaseService database) {
         this.database = database;
@@ -44,54 +55,185 @@ public class PageRank {
     }
 
     public Map<Long, Double> run(Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences, int iter, double dampFactor, double threshold) {
+        return run(coOccurrences, iter, dampFactor, threshold, 1);
+    }
+
+    public Map<Long, Double> run(Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences, int iter, double dampFactor, double threshold, int concurrency) {
+        return run(coOccurrences, iter, dampFactor, threshold, concurrency, null);
+    }
+
+    /**
+     * @param seedProperty node property holding the scores of a previous run to start the iterations from, or null
+     *                     to start from uniform values
+     */
+    public Map<Long, Double> run(Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences, int iter, double dampFactor, double threshold, int concurrency, String seedProperty) {
         nodeWeights = initializeNodeWeights(coOccurrences);
-        Map<Long, Double> pagerank = getInitializedPageRank(nodeWeights, dampFactor);
-        int nNodes = pagerank.size();
-        boolean thresholdHit = false;
-        Map<Long, Double> prTemp = new HashMap<>();
-        for (int iteration = 0; iteration < iter && !thresholdHit; iteration++) {
-            //Map<Long, Double> prTemp = new HashMap<>();
-            // calculate main part of the PR calculation, include weights of nodes and relationships
-            nodeWeights.entrySet().stream().forEach(enExt -> {
-                Long nodeIdExt = enExt.getKey();
-                Double nodeWExt = enExt.getValue();
-                AtomicDouble internalSum = new AtomicDouble(0.0);
-                //AtomicDouble internalNodeWSum = new AtomicDouble(0.0);
-                nodeWeights.entrySet().stream()
-                        .filter(enInt -> coOccurrences.containsKey(enInt.getKey()) && coOccurrences.get(enInt.getKey()).containsKey(nodeIdExt))
-                        .forEach(enInt -> {
-                            Long nodeIdInt = enInt.getKey();
-                            Double nodeWInt = enInt.getValue();
-                            //internalNodeWSum.addAndGet(nodeWInt);
-                            Map<Long, CoOccurrenceItem> coOccurrentTags = coOccurrences.get(nodeIdInt);
-                            //Can be optimized
-                            double totalWeightSum = coOccurrentTags.values().stream().map(item -> item.getCount()).mapToDouble(Number::doubleValue).sum();
-                            //internalSum.addAndGet(1.0d/coOccurrentTags.size() * pagerank.get(nodeIdInt)); // no relationship weights
-                            internalSum.addAndGet(((1.0d * coOccurrentTags.get(nodeIdExt).getCount()) / totalWeightSum) * pagerank.get(nodeIdInt)); // with relationship weights
-                            //internalSum.addAndGet(((1.0d * coOccurrentTags.get(nodeIdExt).getCount()) / totalWeightSum) * pagerank.get(nodeIdInt) * nodeWInt); // with relationship & node weights
-                        });
-                double newPrValue = (1 - dampFactor) / nNodes + dampFactor * internalSum.get(); // PR is a probability (PR values add up to 1)
-
-                // PageRank with node weights
-                //long nInt = nodeWeights.entrySet().stream()
-                //        .filter(enInt -> coOccurrences.containsKey(enInt.getKey()) && coOccurrences.get(enInt.getKey()).containsKey(nodeIdExt))
-                //        .count();
-                //double newPrValue = (1 - dampFactor) / nNodes + dampFactor * internalSum.get() * (nInt / internalNodeWSum.get()); // PR is a probability (PR values add up to 1); WITH node weights
-                prTemp.put(nodeIdExt, newPrValue);
-            });
-            thresholdHit = checkThreshold(pagerank, prTemp, threshold);
+        PageRankGraph graph = PageRankGraph.build(coOccurrences, nodeWeights.keySet());
+        double[] initial = seedProperty != null ? loadInitialRanks(graph, seedProperty) : null;
+
+        return graph.toMap(run(graph, iter, dampFactor, threshold, concurrency, initial));
+    }
+
+    public double[] run(PageRankGraph graph, int iter, double dampFactor, double threshold) {
+        return run(graph, iter, dampFactor, threshold, 1);
+    }
+
+    /**
+     * Runs the power iterations, partitioning the nodes across {@code concurrency} threads. Every node pulls the
+     * rank of its in-edges in a fixed order, so the results do not depend on the number of threads.
+     */
+    public double[] run(PageRankGraph graph, int iter, double dampFactor, double threshold, int concurrency) {
+        return run(graph, iter, dampFactor, threshold, concurrency, null);
+    }
+
+    public double[] run(PageRankGraph graph, int iter, double dampFactor, double threshold, int concurrency, double[] initialRanks) {
+        int nNodes = graph.nodeCount();
+        double teleport = (1 - dampFactor) / nNodes;
+        double[] initial = new double[nNodes];
+        if (initialRanks != null) {
+            System.arraycopy(initialRanks, 0, initial, 0, nNodes);
+            rescale(graph, initial, dampFactor, teleport);
+        } else {
+            Arrays.fill(initial, teleport);
+        }
+        iterations = 0;
+        if (concurrency <= 1 || nNodes < 2) {
+            return iterate(graph, initial, iter, dampFactor, threshold, teleport);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(concurrency);
+        try {
+            return iterateInParallel(pool, graph, initial, iter, dampFactor, threshold, teleport, concurrency);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private double[] iterate(PageRankGraph graph, double[] initial, int iter, double dampFactor, double threshold, double teleport) {
+        double[] pagerank = initial;
+        double[] prTemp = new double[pagerank.length];
+        for (int iteration = 0; iteration < iter; iteration++) {
+            boolean thresholdHit = update(graph, pagerank, prTemp, 0, pagerank.length, dampFactor, threshold, teleport);
+            double[] swap = pagerank;
+            pagerank = prTemp;
+            prTemp = swap;
+            iterations++;
             if (thresholdHit) {
                 LOG.info("Threshold hit after " + (iteration + 1) + " iterations");
+                break;
             }
-            // finish page rank computation and store it to the final list
-            nodeWeights.keySet().stream().forEach((nodeIdExt) -> {
-                pagerank.put(nodeIdExt, prTemp.get(nodeIdExt));
-            });
+        }
 
-        } // iterations
         return pagerank;
     }
 
+    private double[] iterateInParallel(ForkJoinPool pool, PageRankGraph graph, double[] initial, int iter, double dampFactor, double threshold, double teleport, int concurrency) {
+        // A few partitions per thread balance the work stealing when degrees are skewed
+        int[] bounds = graph.partition(concurrency * 4);
+        double[] pagerank = initial;
+        double[] prTemp = new double[pagerank.length];
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<>(bounds.length - 1);
+        for (int iteration = 0; iteration < iter; iteration++) {
+            final double[] current = pagerank;
+            final double[] next = prTemp;
+            tasks.clear();
+            for (int p = 0; p < bounds.length - 1; ++p) {
+                final int from = bounds[p];
+                final int to = bounds[p + 1];
+                tasks.add(pool.submit(() -> update(graph, current, next, from, to, dampFactor, threshold, teleport)));
+            }
+            boolean thresholdHit = true;
+            for (ForkJoinTask<Boolean> task : tasks) {
+                thresholdHit &= task.join();
+            }
+            pagerank = next;
+            prTemp = current;
+            iterations++;
+            if (thresholdHit) {
+                LOG.info("Threshold hit after " + (iteration + 1) + " iterations");
+                break;
+            }
+        }
+
+        return pagerank;
+    }
+
+    /**
+     * Reads the scores stored by a previous run. Nodes without a score start from the average stored score (or
+     * uniformly when nothing is stored) and the vector is renormalized to sum up to 1.
+     */
+    public double[] loadInitialRanks(PageRankGraph graph, String property) {
+        int nNodes = graph.nodeCount();
+        double[] ranks = new double[nNodes];
+        double storedSum = 0.0d;
+        int seeded = 0;
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < nNodes; ++i) {
+                Object value = null;
+                try {
+                    value = database.getNodeById(graph.nodeId(i)).getProperty(property, null);
+                } catch (NotFoundException e) {
+                    LOG.warn("loadInitialRanks(): node " + graph.nodeId(i) + " not found");
+                }
+                if (value instanceof Number && ((Number) value).doubleValue() > 0) {
+                    ranks[i] = ((Number) value).doubleValue();
+                    storedSum += ranks[i];
+                    seeded++;
+                } else {
+                    ranks[i] = Double.NaN;
+                }
+            }
+            tx.success();
+        }
+        double missing = seeded > 0 ? storedSum / seeded : 1.0d;
+        double sum = storedSum + missing * (nNodes - seeded);
+        for (int i = 0; i < nNodes; ++i) {
+            ranks[i] = (Double.isNaN(ranks[i]) ? missing : ranks[i]) / sum;
+        }
+        LOG.info("Initialized " + seeded + "/" + nNodes + " nodes from property " + property);
+
+        return ranks;
+    }
+
+    /**
+     * Multiplies the initial ranks by the factor that minimises the residual of the first iteration. Scores stored
+     * by a run over a different graph (or renormalized ones) keep their proportions but not the scale of the
+     * solution, and a scale error would only shrink by the damping factor at each iteration.
+     */
+    private void rescale(PageRankGraph graph, double[] initial, double dampFactor, double teleport) {
+        double tv = 0.0d;
+        double vv = 0.0d;
+        for (int node = 0; node < initial.length; ++node) {
+            double v = dampFactor * graph.incomingRank(node, initial) - initial[node];
+            tv += teleport * v;
+            vv += v * v;
+        }
+        if (vv > 0 && tv < 0) {
+            double scale = -tv / vv;
+            for (int node = 0; node < initial.length; ++node) {
+                initial[node] *= scale;
+            }
+        }
+    }
+
+    /**
+     * @return the number of iterations performed by the last run
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    private boolean update(PageRankGraph graph, double[] pagerank, double[] prTemp, int from, int to, double dampFactor, double threshold, double teleport) {
+        boolean thresholdHit = true;
+        for (int node = from; node < to; ++node) {
+            // PR is a probability (PR values add up to 1), relationship weights are included in the graph
+            prTemp[node] = teleport + dampFactor * graph.incomingRank(node, pagerank);
+            thresholdHit &= Math.abs(prTemp[node] - pagerank[node]) <= threshold;
+        }
+
+        return thresholdHit;
+    }
+
     public Map<Long, Map<Long, CoOccurrenceItem>> createGraph(String query, boolean respectDirections) {
         LOG.info("Running query: " + query);
         Map<Long, Map<Long, CoOccurrenceItem>> results = new HashMap<>();
@@ -114,14 +256,56 @@ public class PageRank {
     }
 
     public void storeOnGraph(Map<Long, Double> pageranks) {
-        pageranks.keySet().forEach((tag) -> {
-            try (Transaction tx = database.beginTx();) {
-                database.execute("MATCH (t) WHERE id(t)=" + tag + "\n SET t.pagerank = " + pageranks.get(tag));
-                tx.success();
-            } catch (Exception e) {
-                LOG.error("storeOnGraph() failed: " + e.getMessage());
+        storeOnGraph(pageranks, DEFAULT_WRITE_PROPERTY, DEFAULT_WRITE_BATCH_SIZE);
+    }
+
+    /**
+     * Writes the scores on their nodes, committing one transaction every {@code batchSize} nodes. The batches are
+     * committed independently of the calling transaction: they do not see its uncommitted changes, are not rolled
+     * back with it, and nodes it has locked must not be written.
+     *
+     * @return the number of nodes written, the nodes deleted meanwhile are skipped
+     */
+    public long storeOnGraph(Map<Long, Double> pageranks, String property, int batchSize) {
+        if (batchSize < 1) {
+            throw new RuntimeException("The batch size must be greater than 0");
+        }
+        List<Map.Entry<Long, Double>> entries = new ArrayList<>(pageranks.entrySet());
+        // Transactions opened on the calling thread join the procedure transaction, batches are committed from a dedicated writer
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        long written = 0;
+        int start = 0;
+        try {
+            for (; start < entries.size(); start += batchSize) {
+                List<Map.Entry<Long, Double>> batch = entries.subList(start, Math.min(start + batchSize, entries.size()));
+                written += writer.submit(() -> storeBatch(batch, property)).get();
+                LOG.info("Stored " + property + " of " + (start + batch.size()) + "/" + entries.size() + " nodes");
             }
-        });
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Error while storing " + property + ", " + written + " nodes committed before the batch starting at "
+                    + start + " failed", e.getCause() != null ? e.getCause() : e);
+        } finally {
+            writer.shutdownNow();
+        }
+
+        return written;
+    }
+
+    private long storeBatch(List<Map.Entry<Long, Double>> batch, String property) {
+        long written = 0;
+        try (Transaction tx = database.beginTx()) {
+            for (Map.Entry<Long, Double> entry : batch) {
+                try {
+                    database.getNodeById(entry.getKey()).setProperty(property, entry.getValue());
+                    written++;
+                } catch (NotFoundException e) {
+                    LOG.warn("storeOnGraph(): node " + entry.getKey() + " not found");
+                }
+            }
+            tx.success();
+        }
+
+        return written;
     }
 
     private void addTagToCoOccurrence(Map<Long, Map<Long, CoOccurrenceItem>> results, Long tag1, Long tag2, double w) {
@@ -154,26 +338,4 @@ public class PageRank {
         return nodeInitialWeights;
     }
 
-    private Map<Long, Double> getInitializedPageRank(Map<Long, Double> nodeWeights, double damp) {
-        Map<Long, Double> pageRank = new HashMap<>();
-        int n = nodeWeights.size();
-        nodeWeights.entrySet().stream().forEach((item) -> {
-            pageRank.put(item.getKey(), (1. - damp) / n);
-        });
-
-        return pageRank;
-    }
-
-    private boolean checkThreshold(Map<Long, Double> pagerank, Map<Long, Double> prTemp, double threshold) {
-        Iterator<Long> iterator = pagerank.keySet().iterator();
-        while (iterator.hasNext()) {
-            long nodeIdExt = iterator.next();
-            double diff = Math.abs(prTemp.get(nodeIdExt) - pagerank.get(nodeIdExt));
-            if (diff > threshold) {
-                return false;
-            }
-        }
-        return true;
-    }
-
 }
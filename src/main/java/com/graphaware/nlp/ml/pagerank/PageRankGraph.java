@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.pagerank;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compressed sparse row view of a co-occurrence graph, indexed by target node. For every node it holds the
+ * incoming edges with their transition weight (edge weight divided by the out-weight sum of the source), so a
+ * PageRank iteration is a single pass over primitive arrays.
+ */
+public class PageRankGraph {
+
+    private final long[] nodeIds;
+    private final int[] offsets;
+    private final int[] sources;
+    private final double[] weights;
+
+    private PageRankGraph(long[] nodeIds, int[] offsets, int[] sources, double[] weights) {
+        this.nodeIds = nodeIds;
+        this.offsets = offsets;
+        this.sources = sources;
+        this.weights = weights;
+    }
+
+    /**
+     * Compiles the graph restricted to the given nodes. Out-weight sums include the edges towards nodes that are not
+     * part of the graph, as the edges themselves are dropped.
+     */
+    public static PageRankGraph build(Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences, Collection<Long> nodes) {
+        long[] nodeIds = nodes.stream().mapToLong(Long::longValue).sorted().toArray();
+        Map<Long, Integer> index = new HashMap<>(nodeIds.length * 2);
+        for (int i = 0; i < nodeIds.length; ++i) {
+            index.put(nodeIds[i], i);
+        }
+
+        int[] offsets = new int[nodeIds.length + 1];
+        for (long source : nodeIds) {
+            Map<Long, CoOccurrenceItem> edges = coOccurrences.get(source);
+            if (edges == null) {
+                continue;
+            }
+            for (Long destination : edges.keySet()) {
+                Integer target = index.get(destination);
+                if (target != null) {
+                    offsets[target + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < nodeIds.length; ++i) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int[] sources = new int[offsets[nodeIds.length]];
+        double[] weights = new double[sources.length];
+        int[] position = Arrays.copyOf(offsets, nodeIds.length);
+        for (int s = 0; s < nodeIds.length; ++s) {
+            Map<Long, CoOccurrenceItem> edges = coOccurrences.get(nodeIds[s]);
+            if (edges == null) {
+                continue;
+            }
+            double outWeightSum = 0.0d;
+            for (CoOccurrenceItem item : edges.values()) {
+                outWeightSum += item.getCount();
+            }
+            for (Map.Entry<Long, CoOccurrenceItem> edge : edges.entrySet()) {
+                Integer target = index.get(edge.getKey());
+                if (target != null) {
+                    int p = position[target]++;
+                    sources[p] = s;
+                    weights[p] = edge.getValue().getCount() / outWeightSum;
+                }
+            }
+        }
+
+        return new PageRankGraph(nodeIds, offsets, sources, weights);
+    }
+
+    public int nodeCount() {
+        return nodeIds.length;
+    }
+
+    public int edgeCount() {
+        return sources.length;
+    }
+
+    public long nodeId(int index) {
+        return nodeIds[index];
+    }
+
+    /**
+     * Sum of the incoming transition weights of the target multiplied by the rank of their source.
+     */
+    public double incomingRank(int target, double[] ranks) {
+        double sum = 0.0d;
+        for (int e = offsets[target]; e < offsets[target + 1]; ++e) {
+            sum += weights[e] * ranks[sources[e]];
+        }
+
+        return sum;
+    }
+
+    /**
+     * Splits the node range into contiguous partitions of similar work (nodes plus incoming edges).
+     *
+     * @return the partition boundaries, partition i covers [bounds[i], bounds[i + 1])
+     */
+    public int[] partition(int parts) {
+        int nNodes = nodeIds.length;
+        parts = Math.max(1, Math.min(parts, nNodes));
+        int[] bounds = new int[parts + 1];
+        long totalWork = (long) nNodes + sources.length;
+        int node = 0;
+        for (int p = 1; p < parts; ++p) {
+            long targetWork = totalWork * p / parts;
+            while (node < nNodes && (long) node + offsets[node] < targetWork) {
+                node++;
+            }
+            bounds[p] = node;
+        }
+        bounds[parts] = nNodes;
+
+        return bounds;
+    }
+
+    public Map<Long, Double> toMap(double[] values) {
+        Map<Long, Double> result = new HashMap<>(nodeIds.length * 2);
+        for (int i = 0; i < nodeIds.length; ++i) {
+            result.put(nodeIds[i], values[i]);
+        }
+
+        return result;
+    }
+}
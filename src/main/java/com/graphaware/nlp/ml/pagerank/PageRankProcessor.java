@@ -17,6 +17,7 @@ package com.graphaware.nlp.ml.pagerank;
 
 import com.graphaware.nlp.annotation.NLPModuleExtension;
 import com.graphaware.nlp.dsl.request.PageRankRequest;
+import com.graphaware.nlp.dsl.result.PageRankResult;
 import com.graphaware.nlp.dsl.result.SingleResult;
 import com.graphaware.nlp.extension.AbstractExtension;
 import com.graphaware.nlp.extension.NLPExtension;
@@ -31,26 +32,43 @@ public class PageRankProcessor extends AbstractExtension implements NLPExtension
 
     private static final Log LOG = LoggerFactory.getLogger(TextProcessorsManager.class);
 
-    public SingleResult process(PageRankRequest request) {
+    public PageRankResult process(PageRankRequest request) {
         String query = request.getQuery();
         int iter = request.getIteration().intValue();
         double damp = request.getDamp();
         double threshold = request.getThreshold();
         boolean respectDirections = request.getRespectDirections();
+        int concurrency = request.getConcurrency();
 
         PageRank pagerank = new PageRank(getDatabase());
         Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences = pagerank.createGraph(query, respectDirections);
         if (coOccurrences.isEmpty()) {
-            return SingleResult.fail();
+            return new PageRankResult(SingleResult.fail(), 0, 0, null, 0);
         }
-        Map<Long, Double> pageranks = pagerank.run(coOccurrences, iter, damp, threshold);
+        Map<Long, Double> pageranks = pagerank.run(coOccurrences, iter, damp, threshold, concurrency, request.getSeedProperty());
         if (pageranks.isEmpty()) {
-            return SingleResult.fail();
+            return new PageRankResult(SingleResult.fail(), pagerank.getIterations(), 0, null, 0);
+        }
+        if (LOG.isDebugEnabled()) {
+            pageranks.entrySet().stream().forEach(en -> LOG.debug("PR(" + en.getKey() + ") = " + en.getValue()));
         }
-        pageranks.entrySet().stream().forEach(en -> LOG.info("PR(" + en.getKey() + ") = " + en.getValue()));
         LOG.info("Sum of PageRanks: " + pageranks.values().stream().mapToDouble(Number::doubleValue).sum());
-        pagerank.storeOnGraph(pageranks);
+        long written = pagerank.storeOnGraph(pageranks, request.getWriteProperty(), request.getBatchSize());
 
-        return SingleResult.success();
+        int underBudget = iter - pagerank.getIterations();
+        Long saved = null;
+        if (request.getSeedProperty() == null) {
+            configuration().storeColdStartIterations(request.getWriteProperty(), pagerank.getIterations());
+        } else {
+            Long coldIterations = configuration().getColdStartIterations(request.getSeedProperty());
+            if (coldIterations != null) {
+                saved = coldIterations - pagerank.getIterations();
+                // the scores written can seed the next warm start, which is still compared with the same cold run
+                configuration().storeColdStartIterations(request.getWriteProperty(), coldIterations);
+            }
+        }
+        LOG.info("PageRank ran " + pagerank.getIterations() + " of " + iter + " iterations"
+                + (request.getSeedProperty() != null ? " from a warm start" + (saved != null ? ", " + saved + " saved" : "") : ""));
+        return new PageRankResult(SingleResult.success(), pagerank.getIterations(), underBudget, saved, written);
     }
 }
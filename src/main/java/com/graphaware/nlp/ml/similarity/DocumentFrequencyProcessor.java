@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.NLPEvents;
+import com.graphaware.nlp.NLPManager;
+import com.graphaware.nlp.annotation.NLPModuleExtension;
+import com.graphaware.nlp.configuration.DynamicConfiguration;
+import com.graphaware.nlp.configuration.SettingsConstants;
+import com.graphaware.nlp.event.DatabaseTransactionEvent;
+import com.graphaware.nlp.event.EventDispatcher;
+import com.graphaware.nlp.event.TextAnnotationEvent;
+import com.graphaware.nlp.extension.AbstractExtension;
+import com.graphaware.nlp.extension.NLPExtension;
+import com.graphaware.nlp.persistence.constants.Labels;
+import com.graphaware.nlp.persistence.constants.Relationships;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the number of AnnotatedTexts containing each Tag in the documentFrequency property of the tag, when the
+ * documentFrequencies setting is enabled. The tags counted for a document are kept on the AnnotatedText, so a new
+ * annotation only applies the difference and deleting the document decrements them. The number of documents is not
+ * stored, counting the AnnotatedText label already comes from the counts store.
+ */
+@NLPModuleExtension(name = "DocumentFrequencyProcessor")
+public class DocumentFrequencyProcessor extends AbstractExtension implements NLPExtension {
+
+    private static final Log LOG = LoggerFactory.getLogger(DocumentFrequencyProcessor.class);
+
+    public static final String DOCUMENT_FREQUENCY_PROPERTY = "documentFrequency";
+    public static final String COUNTED_TAGS_PROPERTY = "documentFrequencyTags";
+
+    public final static String DOCUMENT_FREQUENCY_VECTOR_QUERY = "MATCH (doc:AnnotatedText)\n"
+            + "WITH count(doc) as documentsCount\n"
+            + "MATCH (input:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)-[ht:HAS_TAG]->(tag:Tag)\n"
+            + "WHERE id(input) = {id}\n"
+            + "WITH tag, sum(ht.tf) as tf, documentsCount, coalesce(tag." + DOCUMENT_FREQUENCY_PROPERTY + ", 0) as documentsCountForTag\n"
+            + "RETURN id(tag) as tagId, tf, (1.0f + 1.0f*documentsCount)/(CASE WHEN documentsCountForTag > 0 THEN documentsCountForTag ELSE 1 END) as idf";
+
+    // the increment is computed in SET, where the tag is locked, so concurrent documents cannot lose an update
+    private static final String UPDATE_QUERY = "UNWIND {tags} AS tagId\n"
+            + "MATCH (tag:Tag) WHERE id(tag) = tagId\n"
+            + "SET tag." + DOCUMENT_FREQUENCY_PROPERTY + " = coalesce(tag." + DOCUMENT_FREQUENCY_PROPERTY + ", 0) + {delta}\n"
+            + "WITH tag WHERE tag." + DOCUMENT_FREQUENCY_PROPERTY + " < 0\n"
+            + "SET tag." + DOCUMENT_FREQUENCY_PROPERTY + " = 0";
+
+    private static final String COUNTED_TAGS_QUERY = "MATCH (tag:Tag) WHERE exists(tag." + DOCUMENT_FREQUENCY_PROPERTY + ") RETURN id(tag) AS tagId";
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    public static boolean isEnabled(DynamicConfiguration configuration) {
+        Object value = configuration.getSettingValueFor(SettingsConstants.DOCUMENT_FREQUENCIES);
+
+        return value != null && Boolean.valueOf(value.toString());
+    }
+
+    /**
+     * @return the query reading the maintained counters when they are enabled, the given query otherwise
+     */
+    public static String getVectorQuery(String defaultQuery) {
+        return isEnabled(NLPManager.getInstance().getConfiguration()) ? DOCUMENT_FREQUENCY_VECTOR_QUERY : defaultQuery;
+    }
+
+    @Override
+    public void registerEventListeners(EventDispatcher eventDispatcher) {
+        eventDispatcher.registerListener(NLPEvents.POST_TEXT_ANNOTATION, event -> {
+            Node annotatedText = ((TextAnnotationEvent) event).getAnnotatedNode();
+            if (annotatedText != null && isEnabled(getConfiguration())) {
+                updateDocument(annotatedText);
+            }
+        });
+        eventDispatcher.registerListener(NLPEvents.TRANSACTION_BEFORE_COMMIT, event -> {
+            if (isEnabled(getConfiguration())) {
+                removeDocuments(((DatabaseTransactionEvent) event).getTransactionData().getAllDeletedNodes());
+            }
+        });
+    }
+
+    /**
+     * Brings the counters in line with the current tags of the document, in the transaction of the caller.
+     */
+    public void updateDocument(Node annotatedText) {
+        long[] counted = (long[]) annotatedText.getProperty(COUNTED_TAGS_PROPERTY, new long[0]);
+        long[] current = getDocumentTags(annotatedText);
+        List<Long> added = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < counted.length || j < current.length) {
+            if (j == current.length || (i < counted.length && counted[i] < current[j])) {
+                removed.add(counted[i++]);
+            } else if (i == counted.length || current[j] < counted[i]) {
+                added.add(current[j++]);
+            } else {
+                i++;
+                j++;
+            }
+        }
+        update(added, 1);
+        update(removed, -1);
+        annotatedText.setProperty(COUNTED_TAGS_PROPERTY, current);
+    }
+
+    /**
+     * Recounts the document frequencies of the whole corpus, for the documents stored before the setting was enabled.
+     * The documents and tags are written in batches of {@value #REBUILD_BATCH_SIZE}.
+     *
+     * @return the number of documents counted
+     */
+    public long rebuild() {
+        List<Long> documents = new ArrayList<>();
+        try (ResourceIterator<Node> annotatedTexts = getDatabase().findNodes(configuration().getLabelFor(Labels.AnnotatedText))) {
+            annotatedTexts.forEachRemaining(annotatedText -> documents.add(annotatedText.getId()));
+        }
+        List<Long> stale = new ArrayList<>();
+        getDatabase().execute(COUNTED_TAGS_QUERY).forEachRemaining(row -> stale.add((Long) row.get("tagId")));
+
+        Map<Long, Long> frequencies = new HashMap<>();
+        // Transactions opened on the calling thread join the procedure transaction, batches are committed from a dedicated writer
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            for (List<Long> batch : batches(documents)) {
+                writer.submit(() -> storeCountedTags(batch)).get().forEach((tag, count) -> frequencies.merge(tag, count, Long::sum));
+            }
+            List<Map.Entry<Long, Long>> counted = new ArrayList<>(frequencies.entrySet());
+            for (List<Map.Entry<Long, Long>> batch : batches(counted)) {
+                writer.submit(() -> writeInTransaction(() -> batch.forEach(en -> getDatabase().getNodeById(en.getKey()).setProperty(DOCUMENT_FREQUENCY_PROPERTY, en.getValue())))).get();
+            }
+            stale.removeIf(frequencies::containsKey);
+            for (List<Long> batch : batches(stale)) {
+                writer.submit(() -> writeInTransaction(() -> batch.forEach(tag -> getDatabase().getNodeById(tag).removeProperty(DOCUMENT_FREQUENCY_PROPERTY)))).get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Error while rebuilding the document frequencies", e);
+        } finally {
+            writer.shutdownNow();
+        }
+        LOG.info("Document frequencies of " + frequencies.size() + " tags rebuilt from " + documents.size() + " documents");
+
+        return documents.size();
+    }
+
+    private Map<Long, Long> storeCountedTags(List<Long> documents) {
+        Map<Long, Long> frequencies = new HashMap<>();
+        writeInTransaction(() -> {
+            for (Long id : documents) {
+                Node annotatedText = getDatabase().getNodeById(id);
+                long[] tags = getDocumentTags(annotatedText);
+                for (long tag : tags) {
+                    frequencies.merge(tag, 1L, Long::sum);
+                }
+                annotatedText.setProperty(COUNTED_TAGS_PROPERTY, tags);
+            }
+        });
+
+        return frequencies;
+    }
+
+    private void writeInTransaction(Runnable write) {
+        try (Transaction tx = getDatabase().beginTx()) {
+            write.run();
+            tx.success();
+        }
+    }
+
+    private static <T> List<List<T>> batches(List<T> items) {
+        List<List<T>> batches = new ArrayList<>();
+        for (int start = 0; start < items.size(); start += REBUILD_BATCH_SIZE) {
+            batches.add(items.subList(start, Math.min(start + REBUILD_BATCH_SIZE, items.size())));
+        }
+
+        return batches;
+    }
+
+    private void removeDocuments(Iterable<Node> deletedNodes) {
+        Label annotatedTextLabel = configuration().getLabelFor(Labels.AnnotatedText);
+        Map<Long, Long> decrements = new HashMap<>();
+        for (Node node : deletedNodes) {
+            if (node.hasLabel(annotatedTextLabel) && node.hasProperty(COUNTED_TAGS_PROPERTY)) {
+                for (long tag : (long[]) node.getProperty(COUNTED_TAGS_PROPERTY)) {
+                    decrements.merge(tag, 1L, Long::sum);
+                }
+            }
+        }
+        // tags shared by several deleted documents are grouped by the size of their decrement
+        Map<Long, List<Long>> byDelta = new HashMap<>();
+        decrements.forEach((tag, count) -> byDelta.computeIfAbsent(count, k -> new ArrayList<>()).add(tag));
+        byDelta.forEach((count, tags) -> update(tags, -count));
+    }
+
+    private void update(List<Long> tags, long delta) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("tags", tags);
+        params.put("delta", delta);
+        getDatabase().execute(UPDATE_QUERY, params);
+    }
+
+    private long[] getDocumentTags(Node annotatedText) {
+        TreeSet<Long> tags = new TreeSet<>();
+        for (Relationship containsSentence : annotatedText.getRelationships(configuration().getRelationshipFor(Relationships.CONTAINS_SENTENCE), Direction.OUTGOING)) {
+            for (Relationship hasTag : containsSentence.getEndNode().getRelationships(configuration().getRelationshipFor(Relationships.HAS_TAG), Direction.OUTGOING)) {
+                tags.add(hasTag.getEndNode().getId());
+            }
+        }
+
+        return tags.stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -21,6 +21,7 @@ import com.graphaware.nlp.ml.queue.SimilarityItem;
 import com.graphaware.nlp.ml.queue.SimilarityItemProcessEntry;
 import com.graphaware.nlp.ml.queue.SimilarityQueueProcessor;
 import com.graphaware.nlp.persistence.constants.Labels;
+import com.graphaware.nlp.persistence.constants.Properties;
 import com.graphaware.nlp.persistence.constants.Relationships;
 import com.graphaware.nlp.util.FixedSizeOrderedList;
 import org.neo4j.graphdb.*;
@@ -168,7 +169,7 @@ public class FeatureBasedProcessLogic {
     }
 
     public int computeFeatureSimilarityForNodes(List<Long> firstNodeIds) {
-        return computeFeatureSimilarityForNodes(firstNodeIds, DEFAULT_VECTOR_QUERY, Relationships.SIMILARITY_COSINE.name(), 0);
+        return computeFeatureSimilarityForNodes(firstNodeIds, DocumentFrequencyProcessor.getVectorQuery(DEFAULT_VECTOR_QUERY), Relationships.SIMILARITY_COSINE.name(), 0);
     }
 
     public int computeFeatureSimilarityForNodes(List<Long> firstNodeIds, Integer depth) {
@@ -202,6 +203,62 @@ public class FeatureBasedProcessLogic {
         return countProcessed.get();
     }
 
+    /**
+     * Indexes the tf-idf vectors of all the AnnotatedTexts by tag and scores every input document only against the
+     * documents sharing at least one tag with it, instead of against the whole corpus.
+     *
+     * @param maxDf tags found in a larger fraction of the documents are ignored
+     * @return the number of document pairs scored
+     */
+    public int computeFeatureSimilarityWithInvertedIndex(List<Long> firstNodeIds, String similarityType, int kSize, double maxDf) {
+        long startTime = System.currentTimeMillis();
+        TfIdfInvertedIndex index = buildInvertedIndex(maxDf);
+        LOG.info("Indexed " + index.tagCount() + " tags of " + index.documentCount() + " documents in " + (System.currentTimeMillis() - startTime));
+        List<Long> nodeIds = firstNodeIds != null ? firstNodeIds : new ArrayList<>();
+        final AtomicInteger countProcessed = new AtomicInteger(0);
+        final AtomicInteger nodeAnalyzed = new AtomicInteger(0);
+        nodeIds.parallelStream().forEach(firstNode -> {
+            ArrayList<SimilarityItem> kNN = index.getMostSimilar(firstNode, kSize, similarityType);
+            countProcessed.addAndGet(index.getLastComparisons());
+            if (!kNN.isEmpty()) {
+                queueProcessor.offer(new SimilarityItemProcessEntry(firstNode, kNN));
+            }
+            if (nodeAnalyzed.incrementAndGet() % 10000 == 0) {
+                LOG.info("Node Processed: " + nodeAnalyzed.get() + " over " + nodeIds.size());
+            }
+        });
+        LOG.info("Total node processed: " + nodeAnalyzed.get() + " in " + (System.currentTimeMillis() - startTime)
+                + ", relationships computed: " + countProcessed.get());
+        return countProcessed.get();
+    }
+
+    private TfIdfInvertedIndex buildInvertedIndex(double maxDf) {
+        TfIdfInvertedIndex.Builder builder = new TfIdfInvertedIndex.Builder().setMaxDocumentFrequency(maxDf);
+        try (Transaction tx = database.beginTx()) {
+            ResourceIterator<Node> documents = database.findNodes(Labels.AnnotatedText);
+            while (documents.hasNext()) {
+                Node document = documents.next();
+                Map<Long, Float> tf = new HashMap<>();
+                for (Relationship containsSentence : document.getRelationships(Relationships.CONTAINS_SENTENCE, Direction.OUTGOING)) {
+                    for (Relationship hasTag : containsSentence.getEndNode().getRelationships(Relationships.HAS_TAG, Direction.OUTGOING)) {
+                        tf.merge(hasTag.getEndNode().getId(), getFloatValue(hasTag.getProperty(Properties.TF, 1)), Float::sum);
+                    }
+                }
+                long[] tagIds = new long[tf.size()];
+                float[] frequencies = new float[tf.size()];
+                int i = 0;
+                for (Map.Entry<Long, Float> entry : tf.entrySet()) {
+                    tagIds[i] = entry.getKey();
+                    frequencies[i++] = entry.getValue();
+                }
+                builder.add(document.getId(), tagIds, frequencies);
+            }
+            tx.success();
+        }
+
+        return builder.build();
+    }
+
     private void computeFeatureSimilarityForNode(long firstNodeId, String query, String similarityType, AtomicInteger countProcessed, AtomicInteger countStored, Integer depth) {
         FixedSizeOrderedList<SimilarityItem> kNN = new FixedSizeOrderedList<>(KNN_SIZE);
         try (Transaction tx0 = database.beginTx()) {
@@ -50,6 +50,8 @@ public class SimilarityProcessor extends AbstractExtension implements NLPExtensi
         int processed;
         if (request.getPropertyName() != null) {
             processed = computeUsingProperty(request.getInput(), request.getLabel(), request.getPropertyName(), request.getRelationshipType(), request.getkSize());
+        } else if (request.isInvertedIndex()) {
+            processed = featureBusinessLogic.computeFeatureSimilarityWithInvertedIndex(getNodesFromInput(request.getInput()), request.getRelationshipType(), request.getkSize(), request.getMaxDf());
         } else {
             Long depth = request.getDepth();
             if (depth != null && depth > 0) {
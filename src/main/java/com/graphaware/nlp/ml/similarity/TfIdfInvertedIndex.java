@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.nlp.ml.queue.SimilarityItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * In-memory tag to documents index of tf-idf weights (idf = log10((1 + N) / df)). The cosine similarity of a document
+ * is accumulated only for the documents sharing at least one of its tags, by walking the postings of its tags.
+ */
+public class TfIdfInvertedIndex {
+
+    private final long[] documentIds;
+    private final Map<Long, Integer> documentIndex;
+    private final float[] norms;
+
+    // tags of every document, as indexes of postings lists
+    private final int[] documentOffsets;
+    private final int[] documentTags;
+    private final float[] documentWeights;
+
+    private final int[] postingOffsets;
+    private final int[] postingDocuments;
+    private final float[] postingWeights;
+
+    private final ThreadLocal<Accumulator> accumulators;
+
+    private TfIdfInvertedIndex(long[] documentIds, float[] norms, int[] documentOffsets, int[] documentTags, float[] documentWeights,
+                               int[] postingOffsets, int[] postingDocuments, float[] postingWeights) {
+        this.documentIds = documentIds;
+        this.norms = norms;
+        this.documentOffsets = documentOffsets;
+        this.documentTags = documentTags;
+        this.documentWeights = documentWeights;
+        this.postingOffsets = postingOffsets;
+        this.postingDocuments = postingDocuments;
+        this.postingWeights = postingWeights;
+        this.documentIndex = new HashMap<>(documentIds.length * 2);
+        for (int i = 0; i < documentIds.length; ++i) {
+            documentIndex.put(documentIds[i], i);
+        }
+        this.accumulators = ThreadLocal.withInitial(() -> new Accumulator(documentIds.length));
+    }
+
+    public int documentCount() {
+        return documentIds.length;
+    }
+
+    public int tagCount() {
+        return postingOffsets.length - 1;
+    }
+
+    /**
+     * @return the k most similar documents, most similar first; empty when the document is not indexed or shares no
+     * tag with any other document
+     */
+    public ArrayList<SimilarityItem> getMostSimilar(long documentId, int k, String similarityType) {
+        Integer document = documentIndex.get(documentId);
+        if (document == null || k < 1 || norms[document] == 0) {
+            return new ArrayList<>();
+        }
+        Accumulator accumulator = accumulators.get();
+        for (int e = documentOffsets[document]; e < documentOffsets[document + 1]; ++e) {
+            int tag = documentTags[e];
+            float weight = documentWeights[e];
+            for (int p = postingOffsets[tag]; p < postingOffsets[tag + 1]; ++p) {
+                int other = postingDocuments[p];
+                if (other != document) {
+                    accumulator.add(other, weight * postingWeights[p]);
+                }
+            }
+        }
+
+        PriorityQueue<SimilarityItem> heap = new PriorityQueue<>(Math.min(k, accumulator.size) + 1);
+        for (int i = 0; i < accumulator.size; ++i) {
+            int other = accumulator.touched[i];
+            float similarity = accumulator.scores[other] / (norms[document] * norms[other]);
+            accumulator.scores[other] = 0;
+            if (heap.size() < k) {
+                heap.add(new SimilarityItem(documentId, documentIds[other], similarity, similarityType));
+            } else if (similarity > heap.peek().getSimilarity()) {
+                heap.poll();
+                heap.add(new SimilarityItem(documentId, documentIds[other], similarity, similarityType));
+            }
+        }
+        accumulator.lastComparisons = accumulator.size;
+        accumulator.size = 0;
+
+        ArrayList<SimilarityItem> result = new ArrayList<>(heap);
+        result.sort(Collections.reverseOrder());
+        return result;
+    }
+
+    /**
+     * @return the number of documents scored by the last {@link #getMostSimilar} call of the current thread
+     */
+    public int getLastComparisons() {
+        return accumulators.get().lastComparisons;
+    }
+
+    private static class Accumulator {
+
+        private final float[] scores;
+        private final int[] touched;
+        private int size;
+        private int lastComparisons;
+
+        Accumulator(int documents) {
+            this.scores = new float[documents];
+            this.touched = new int[documents];
+        }
+
+        void add(int document, float score) {
+            if (score <= 0) {
+                return;
+            }
+            if (scores[document] == 0) {
+                touched[size++] = document;
+            }
+            scores[document] += score;
+        }
+    }
+
+    public static class Builder {
+
+        private final List<Long> documentIds = new ArrayList<>();
+        private final List<long[]> tags = new ArrayList<>();
+        private final List<float[]> frequencies = new ArrayList<>();
+        private double maxDocumentFrequency = 1.0d;
+
+        /**
+         * @param tagIds distinct tags of the document
+         * @param tf     term frequency of each tag
+         */
+        public Builder add(long documentId, long[] tagIds, float[] tf) {
+            if (tagIds.length != tf.length) {
+                throw new RuntimeException("Expected a term frequency for each tag of document " + documentId);
+            }
+            documentIds.add(documentId);
+            tags.add(tagIds);
+            frequencies.add(tf);
+            return this;
+        }
+
+        /**
+         * Tags found in more than the given fraction of the documents are left out of the index (and of the norms),
+         * as their low idf barely changes the scores while their postings are the longest ones.
+         */
+        public Builder setMaxDocumentFrequency(double maxDocumentFrequency) {
+            if (maxDocumentFrequency <= 0 || maxDocumentFrequency > 1) {
+                throw new RuntimeException("The max document frequency must be in (0, 1]");
+            }
+            this.maxDocumentFrequency = maxDocumentFrequency;
+            return this;
+        }
+
+        public TfIdfInvertedIndex build() {
+            int nDocuments = documentIds.size();
+            Map<Long, Integer> tagIndex = new HashMap<>();
+            int[] df = new int[16];
+            for (long[] documentTags : tags) {
+                for (long tag : documentTags) {
+                    Integer index = tagIndex.get(tag);
+                    if (index == null) {
+                        index = tagIndex.size();
+                        tagIndex.put(tag, index);
+                        if (index == df.length) {
+                            df = Arrays.copyOf(df, df.length * 2);
+                        }
+                    }
+                    df[index]++;
+                }
+            }
+
+            // kept tags are renumbered so that the postings offsets only cover them
+            int maxDf = (int) Math.floor(maxDocumentFrequency * nDocuments);
+            int[] postingTag = new int[tagIndex.size()];
+            int nTags = 0;
+            for (int t = 0; t < tagIndex.size(); ++t) {
+                postingTag[t] = df[t] <= maxDf ? nTags++ : -1;
+            }
+            float[] idf = new float[nTags];
+            int[] postingOffsets = new int[nTags + 1];
+            for (int t = 0; t < tagIndex.size(); ++t) {
+                if (postingTag[t] >= 0) {
+                    idf[postingTag[t]] = (float) Math.log10((1.0d + nDocuments) / df[t]);
+                    postingOffsets[postingTag[t] + 1] = df[t];
+                }
+            }
+            for (int t = 0; t < nTags; ++t) {
+                postingOffsets[t + 1] += postingOffsets[t];
+            }
+
+            int[] documentOffsets = new int[nDocuments + 1];
+            for (int d = 0; d < nDocuments; ++d) {
+                int kept = 0;
+                for (long tag : tags.get(d)) {
+                    if (postingTag[tagIndex.get(tag)] >= 0) {
+                        kept++;
+                    }
+                }
+                documentOffsets[d + 1] = documentOffsets[d] + kept;
+            }
+
+            long[] ids = new long[nDocuments];
+            float[] norms = new float[nDocuments];
+            int[] documentTags = new int[documentOffsets[nDocuments]];
+            float[] documentWeights = new float[documentTags.length];
+            int[] postingDocuments = new int[postingOffsets[nTags]];
+            float[] postingWeights = new float[postingDocuments.length];
+            int[] position = Arrays.copyOf(postingOffsets, nTags);
+            for (int d = 0; d < nDocuments; ++d) {
+                ids[d] = documentIds.get(d);
+                long[] tagIds = tags.get(d);
+                float[] tf = frequencies.get(d);
+                int e = documentOffsets[d];
+                double norm = 0.0d;
+                for (int i = 0; i < tagIds.length; ++i) {
+                    int tag = postingTag[tagIndex.get(tagIds[i])];
+                    if (tag < 0) {
+                        continue;
+                    }
+                    float weight = tf[i] * idf[tag];
+                    documentTags[e] = tag;
+                    documentWeights[e++] = weight;
+                    int p = position[tag]++;
+                    postingDocuments[p] = d;
+                    postingWeights[p] = weight;
+                    norm += weight * weight;
+                }
+                norms[d] = (float) Math.sqrt(norm);
+            }
+
+            return new TfIdfInvertedIndex(ids, norms, documentOffsets, documentTags, documentWeights,
+                    postingOffsets, postingDocuments, postingWeights);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.nlp.ml.queue.SimilarityItem;
+import com.graphaware.nlp.vector.DenseVector;
+import com.graphaware.nlp.vector.GenericVector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Vectors of a set of nodes loaded once for an all-pairs cosine similarity. Dense vectors of the same dimension are
+ * normalized into a single row-major float[], and the candidates are scanned in blocks shared by several query rows
+ * so that a block stays in cache while it is compared with each of them. Other vectors are kept as they are, with
+ * their norms.
+ */
+public class VectorMatrix {
+
+    private static final int ROW_BLOCK = 16;
+    private static final int COLUMN_BLOCK = 256;
+
+    private final long[] nodeIds;
+    private final int candidates;
+    private final Map<Long, Integer> rows;
+
+    private final int dimension;
+    private final float[] data;
+
+    private final GenericVector[] vectors;
+    private final float[] norms;
+
+    private VectorMatrix(long[] nodeIds, int candidates, int dimension, float[] data, GenericVector[] vectors, float[] norms) {
+        this.nodeIds = nodeIds;
+        this.candidates = candidates;
+        this.dimension = dimension;
+        this.data = data;
+        this.vectors = vectors;
+        this.norms = norms;
+        this.rows = new HashMap<>(nodeIds.length * 2);
+        for (int i = 0; i < nodeIds.length; ++i) {
+            rows.put(nodeIds[i], i);
+        }
+    }
+
+    public int candidateCount() {
+        return candidates;
+    }
+
+    public boolean isDense() {
+        return data != null;
+    }
+
+    /**
+     * Compares every given node with all the candidates and passes to the consumer its k most similar candidates with
+     * a positive similarity, most similar first. Nodes which were not added to the matrix are skipped.
+     *
+     * @return the number of pairs compared
+     */
+    public long getMostSimilar(List<Long> queryNodeIds, int k, String similarityType, BiConsumer<Long, ArrayList<SimilarityItem>> consumer) {
+        int[] queryRows = queryNodeIds.stream()
+                .filter(rows::containsKey)
+                .mapToInt(rows::get)
+                .toArray();
+        AtomicLong compared = new AtomicLong();
+        int blocks = (queryRows.length + ROW_BLOCK - 1) / ROW_BLOCK;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            int from = block * ROW_BLOCK;
+            int to = Math.min(from + ROW_BLOCK, queryRows.length);
+            compared.addAndGet(getMostSimilar(queryRows, from, to, k, similarityType, consumer));
+        });
+        return compared.get();
+    }
+
+    private long getMostSimilar(int[] queryRows, int from, int to, int k, String similarityType, BiConsumer<Long, ArrayList<SimilarityItem>> consumer) {
+        List<PriorityQueue<SimilarityItem>> heaps = new ArrayList<>(to - from);
+        for (int q = from; q < to; ++q) {
+            heaps.add(new PriorityQueue<>(Math.min(k, candidates) + 1));
+        }
+        long compared = 0;
+        for (int columnFrom = 0; columnFrom < candidates; columnFrom += COLUMN_BLOCK) {
+            int columnTo = Math.min(columnFrom + COLUMN_BLOCK, candidates);
+            for (int q = from; q < to; ++q) {
+                int row = queryRows[q];
+                PriorityQueue<SimilarityItem> heap = heaps.get(q - from);
+                for (int column = columnFrom; column < columnTo; ++column) {
+                    if (column == row) {
+                        continue;
+                    }
+                    compared++;
+                    float similarity = similarity(row, column);
+                    if (similarity <= 0) {
+                        continue;
+                    }
+                    if (heap.size() < k) {
+                        heap.add(new SimilarityItem(nodeIds[row], nodeIds[column], similarity, similarityType));
+                    } else if (k > 0 && similarity > heap.peek().getSimilarity()) {
+                        heap.poll();
+                        heap.add(new SimilarityItem(nodeIds[row], nodeIds[column], similarity, similarityType));
+                    }
+                }
+            }
+        }
+        for (int q = from; q < to; ++q) {
+            ArrayList<SimilarityItem> kNN = new ArrayList<>(heaps.get(q - from));
+            kNN.sort(Collections.reverseOrder());
+            consumer.accept(nodeIds[queryRows[q]], kNN);
+        }
+        return compared;
+    }
+
+    float similarity(int row, int column) {
+        if (data != null) {
+            int x = row * dimension;
+            int y = column * dimension;
+            // independent partial sums, so that the multiplications are not serialized on a single accumulator
+            float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+            int i = 0;
+            for (; i + 3 < dimension; i += 4) {
+                s0 += data[x + i] * data[y + i];
+                s1 += data[x + i + 1] * data[y + i + 1];
+                s2 += data[x + i + 2] * data[y + i + 2];
+                s3 += data[x + i + 3] * data[y + i + 3];
+            }
+            for (; i < dimension; ++i) {
+                s0 += data[x + i] * data[y + i];
+            }
+            return (s0 + s1) + (s2 + s3);
+        }
+        float norm = norms[row] * norms[column];
+        return norm > 0 ? vectors[row].dot(vectors[column]) / norm : 0f;
+    }
+
+    public static class Builder {
+
+        private final List<Long> candidateIds = new ArrayList<>();
+        private final List<GenericVector> candidateVectors = new ArrayList<>();
+        private final List<Long> queryIds = new ArrayList<>();
+        private final List<GenericVector> queryVectors = new ArrayList<>();
+
+        /**
+         * Adds a node the queries are compared with.
+         */
+        public Builder addCandidate(long nodeId, GenericVector vector) {
+            candidateIds.add(nodeId);
+            candidateVectors.add(vector);
+            return this;
+        }
+
+        /**
+         * Adds a node which is only compared with the candidates.
+         */
+        public Builder addQuery(long nodeId, GenericVector vector) {
+            queryIds.add(nodeId);
+            queryVectors.add(vector);
+            return this;
+        }
+
+        public VectorMatrix build() {
+            List<GenericVector> all = new ArrayList<>(candidateVectors);
+            all.addAll(queryVectors);
+            long[] nodeIds = new long[all.size()];
+            for (int i = 0; i < candidateIds.size(); ++i) {
+                nodeIds[i] = candidateIds.get(i);
+            }
+            for (int i = 0; i < queryIds.size(); ++i) {
+                nodeIds[candidateIds.size() + i] = queryIds.get(i);
+            }
+
+            int dimension = getDenseDimension(all);
+            if (dimension >= 0) {
+                if ((long) dimension * all.size() > Integer.MAX_VALUE) {
+                    throw new RuntimeException("Too many vectors to be loaded in memory: " + all.size() + " of dimension " + dimension);
+                }
+                float[] data = new float[dimension * all.size()];
+                for (int i = 0; i < all.size(); ++i) {
+                    float[] vector = all.get(i).getArray();
+                    float norm = all.get(i).norm();
+                    if (norm > 0) {
+                        for (int j = 0; j < dimension; ++j) {
+                            data[i * dimension + j] = vector[j] / norm;
+                        }
+                    }
+                }
+                return new VectorMatrix(nodeIds, candidateIds.size(), dimension, data, null, null);
+            }
+
+            GenericVector[] vectors = all.toArray(new GenericVector[all.size()]);
+            float[] norms = new float[vectors.length];
+            for (int i = 0; i < vectors.length; ++i) {
+                norms[i] = vectors[i].norm();
+            }
+            return new VectorMatrix(nodeIds, candidateIds.size(), -1, null, vectors, norms);
+        }
+
+        private static int getDenseDimension(List<GenericVector> vectors) {
+            int dimension = -1;
+            for (GenericVector vector : vectors) {
+                if (!(vector instanceof DenseVector) || vector.getArray() == null
+                        || (dimension >= 0 && vector.getArray().length != dimension)) {
+                    return -1;
+                }
+                dimension = vector.getArray().length;
+            }
+            return dimension;
+        }
+    }
+}
@@ -15,10 +15,8 @@
  */
 package com.graphaware.nlp.ml.similarity;
 
-import com.graphaware.nlp.ml.queue.SimilarityItem;
 import com.graphaware.nlp.ml.queue.SimilarityItemProcessEntry;
 import com.graphaware.nlp.ml.queue.SimilarityQueueProcessor;
-import com.graphaware.nlp.util.FixedSizeOrderedList;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
@@ -27,7 +25,9 @@ import com.graphaware.nlp.domain.VectorContainer;
 import com.graphaware.nlp.vector.GenericVector;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import java.util.concurrent.Executors;
@@ -67,56 +67,55 @@ public class VectorProcessLogic {
 
     public int computeFeatureSimilarityForNodes(List<Node> nodes, String label, String propertyName, String similarityType, int kSize) {
         long startTime = System.currentTimeMillis();
-        final AtomicInteger countProcessed = new AtomicInteger(0);
-        final AtomicInteger countStored = new AtomicInteger(0);
-        final AtomicInteger nodeAnalyzed = new AtomicInteger(0);
         LOG.info("computeFeatureSimilarityForNodes -> " + (nodes != null ? nodes.size() : "nodes is null"));
+        VectorMatrix matrix = loadVectors(nodes, label, propertyName);
+        LOG.info("Loaded " + matrix.candidateCount() + " vectors" + (matrix.isDense() ? " in a dense matrix" : "") + " in " + (System.currentTimeMillis() - startTime));
+        List<Long> nodeIds = new ArrayList<>();
         if (nodes == null) {
-            nodes = new ArrayList<>();
-            ResourceIterator<Node> properties = database.findNodes(Label.label(label));
-            while (properties.hasNext()) {
-                nodes.add(properties.next());
+            try (Transaction tx = database.beginTx()) {
+                database.findNodes(Label.label(label)).forEachRemaining(node -> nodeIds.add(node.getId()));
+                tx.success();
             }
+        } else {
+            nodes.forEach(node -> nodeIds.add(node.getId()));
         }
-        int totalNodeSize = nodes.size();
-        nodes.parallelStream().forEach((node) -> {
+        final AtomicInteger countStored = new AtomicInteger(0);
+        final AtomicInteger nodeAnalyzed = new AtomicInteger(0);
+        long countProcessed = matrix.getMostSimilar(nodeIds, kSize, similarityType, (nodeId, kNN) -> {
+            countStored.addAndGet(kNN.size());
+            queueProcessor.offer(new SimilarityItemProcessEntry(nodeId, kNN));
             int nodeProcessed = nodeAnalyzed.incrementAndGet();
             if (nodeProcessed % 500 == 0) {
-                LOG.warn("Node Processed: " + nodeProcessed + " over " + totalNodeSize);
+                LOG.warn("Node Processed: " + nodeProcessed + " over " + nodeIds.size());
             }
-            computeFeatureSimilarityForNode(node, label, propertyName, similarityType, countProcessed, countStored, kSize);
         });
         long totalTime = System.currentTimeMillis() - startTime;
-        LOG.warn("Total node processed: " + nodeAnalyzed.get() + " over " + totalNodeSize + " in " + totalTime);
-        LOG.warn("Total relationships computed: " + countProcessed.get() + " stored: " + countStored.get());
-        return countProcessed.get();
+        LOG.warn("Total node processed: " + nodeAnalyzed.get() + " over " + nodeIds.size() + " in " + totalTime);
+        LOG.warn("Total relationships computed: " + countProcessed + " stored: " + countStored.get());
+        return (int) countProcessed;
     }
 
-    private void computeFeatureSimilarityForNode(Node node, String label, String propertyName, String similarityType, AtomicInteger countProcessed, AtomicInteger countStored, int kSize) {
-        FixedSizeOrderedList<SimilarityItem> kNN = new FixedSizeOrderedList<>(kSize);
-        try (Transaction tx0 = database.beginTx()) {
-            ResourceIterator<Node> otherProperties = database.findNodes(Label.label(label));
-            List<Node> secondNodes = new ArrayList<>();
-            otherProperties.stream().forEach((secondNode) -> {
-                secondNodes.add(secondNode);
-            });
-            secondNodes.stream()
-                    .forEach((secondNode) -> {
-                        if (secondNode.getId() != node.getId()) {
-                            float similarity = getSimilarity(getVector(node, propertyName), getVector(secondNode, propertyName));
-                            if (similarity > 0) {
-                                kNN.add(new SimilarityItem(node.getId(), secondNode.getId(), similarity, similarityType));
-                                countStored.incrementAndGet();
-                            }
-                            int processed = countProcessed.incrementAndGet();
-                            if (processed % 10000 == 0) {
-                                LOG.warn("Relationships computed: " + processed);
-                            }
-                        }
-                    });
-            tx0.success();
+    /**
+     * Reads the vector of every node with the label, and of the given nodes without it, once.
+     */
+    private VectorMatrix loadVectors(List<Node> nodes, String label, String propertyName) {
+        VectorMatrix.Builder builder = new VectorMatrix.Builder();
+        try (Transaction tx = database.beginTx()) {
+            Set<Long> candidates = new HashSet<>();
+            ResourceIterator<Node> labelled = database.findNodes(Label.label(label));
+            while (labelled.hasNext()) {
+                Node node = labelled.next();
+                builder.addCandidate(node.getId(), getVector(node, propertyName));
+                candidates.add(node.getId());
+            }
+            if (nodes != null) {
+                nodes.stream()
+                        .filter(node -> !candidates.contains(node.getId()))
+                        .forEach(node -> builder.addQuery(node.getId(), getVector(node, propertyName)));
+            }
+            tx.success();
         }
-        queueProcessor.offer(new SimilarityItemProcessEntry(node.getId(), kNN));
+        return builder.build();
     }
 
 //    public static float getSimilarity(List<Float> x, List<Float> y) {
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.textrank;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Suffix trie over the word lists of a set of phrases. Every suffix of every phrase is inserted, so the node
+ * reached by walking the words of a phrase lists all the phrases containing it as a contiguous word sequence.
+ * Building costs O(N * L^2) for N phrases of at most L words and a lookup costs O(L).
+ *
+ * @param <T> the phrase objects returned by the lookups
+ */
+public class KeywordTrie<T> {
+
+    private final Node<T> root = new Node<>();
+
+    public void add(String[] words, T phrase) {
+        for (int start = 0; start < words.length; ++start) {
+            Node<T> node = root;
+            for (int i = start; i < words.length; ++i) {
+                node = node.children.computeIfAbsent(words[i], k -> new Node<>());
+                // a phrase repeating a word sequence reaches the same node more than once
+                if (node.phrases.isEmpty() || node.phrases.get(node.phrases.size() - 1) != phrase) {
+                    node.phrases.add(phrase);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the phrases containing the given words, including the phrase made of exactly these words
+     */
+    public List<T> getContaining(String[] words) {
+        Node<T> node = root;
+        for (String word : words) {
+            node = node.children.get(word);
+            if (node == null) {
+                return Collections.emptyList();
+            }
+        }
+
+        return node.phrases;
+    }
+
+    private static class Node<T> {
+
+        private final Map<String, Node<T>> children = new HashMap<>();
+
+        private final List<T> phrases = new ArrayList<>();
+    }
+}
@@ -21,16 +21,30 @@ import com.graphaware.nlp.ml.pagerank.PageRank;
 import com.graphaware.common.util.Pair;
 import com.graphaware.nlp.NLPManager;
 import com.graphaware.nlp.configuration.DynamicConfiguration;
+import com.graphaware.nlp.domain.AnnotatedText;
 import com.graphaware.nlp.domain.Keyword;
+import com.graphaware.nlp.domain.Sentence;
+import com.graphaware.nlp.domain.Tag;
+import com.graphaware.nlp.domain.TagOccurrence;
 import com.graphaware.nlp.domain.TfIdfObject;
 import com.graphaware.nlp.persistence.constants.Labels;
+import com.graphaware.nlp.persistence.constants.Properties;
 import com.graphaware.nlp.persistence.constants.Relationships;
 import com.graphaware.nlp.dsl.request.PipelineSpecification;
+import com.graphaware.nlp.processor.TextProcessorsManager;
+import com.graphaware.nlp.util.TagUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -89,7 +103,25 @@ public class TextRank {
             + "collect(id(t2)) as rel_tags, collect(to2.startPosition) as rel_tos,  collect(to2.endPosition) as rel_toe, labels(node) as labels\n"
             + "ORDER BY sP asc";
 
+    private static final String POSTPROCESS_SUBGROUPS_BATCH_QUERY = "UNWIND {pairs} AS pair\n"
+            + "MATCH (k) WHERE id(k) = pair.from\n"
+            + "MATCH (k2) WHERE id(k2) = pair.to\n"
+            + "MERGE (k)-[r:HAS_SUBGROUP]->(k2)";
+
+    private static final String POSTPROCESS_DIRECT_BATCH_QUERY = "UNWIND {pairs} AS pair\n"
+            + "MATCH (k) WHERE id(k) = pair.from\n"
+            + "MATCH (k2)-[r2:DESCRIBES]->(a:AnnotatedText)\n"
+            + "WHERE id(k2) = pair.to AND NOT (k)-[:DESCRIBES]->(a)\n"
+            + "MERGE (k)-[rn:DESCRIBES]->(a) SET rn.count = k2.count, rn.count_exactMatch = k2.count_exactMatch";
+
+    private static final int POSTPROCESS_BATCH_SIZE = 10000;
+
     private static final String PIPELINE_WITHOUT_NER = "CORE.TEXTRANK_PIPELINE";
+    private static final long NE_TOKENS_CACHE_SIZE = 50000;
+    // tokens of multi-word named entities, shared by all the TextRank runs
+    private static final Cache<String, List<Pair<Long, String>>> NE_TOKENS_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(NE_TOKENS_CACHE_SIZE)
+            .build();
     public static final TfIdfObject TFIDF_1_1 = new TfIdfObject(1., 1.);
     public static final TfIdfObject TFIDF_0_0 = new TfIdfObject(0., 0.);
 
@@ -107,8 +139,10 @@ public class TextRank {
     private final List<String> admittedPOSs;
     private final List<String> forbiddenNEs;
     private final List<String> forbiddenPOSs;
+    private final String seedProperty;
     private Map<Long, List<Long>> neExpanded;
     private final Map<Long, String> idToValue = new HashMap<>();
+    private final Map<String, Long> inMemoryTagIds = new HashMap<>();
 
     public TextRank(GraphDatabaseService database,
                     boolean removeStopWords,
@@ -122,7 +156,8 @@ public class TextRank {
                     Set<String> stopWords,
                     List<String> admittedPOSs,
                     List<String> forbiddenNEs,
-                    List<String> forbiddenPOSs) {
+                    List<String> forbiddenPOSs,
+                    String seedProperty) {
         this.database = database;
         this.removeStopWords = removeStopWords;
         this.directionsMatter = directionsMatter;
@@ -137,7 +172,7 @@ public class TextRank {
         this.admittedPOSs = admittedPOSs;
         this.forbiddenNEs = forbiddenNEs;
         this.forbiddenPOSs = forbiddenPOSs;
-
+        this.seedProperty = seedProperty;
     }
 
     private String getPipelineWithoutNEs(String language) {
@@ -187,6 +222,29 @@ public class TextRank {
             params.put("id", node.getId());
             processOneAnnotatedText(query, params, prelim);
         }
+
+        return completeCooccurrences(prelim, language, fromDependencies);
+    }
+
+    /**
+     * Builds the same co-occurrences as {@link #createCooccurrences(List, String, boolean)} straight from the
+     * annotation objects, without reading the persisted document back. Tags are identified by ids local to this
+     * TextRank instance and named entity labels only reflect the entities found in the given text.
+     */
+    public Map<Long, Map<Long, CoOccurrenceItem>> createCooccurrences(AnnotatedText annotatedText, String language, boolean fromDependencies) {
+        List<CoOccurrenceItem> prelim = new ArrayList<>();
+        if (fromDependencies) {
+            collectDependencyCooccurrences(annotatedText, prelim);
+        } else if (respectSentences) {
+            annotatedText.getSentencesSorted().forEach(sentence -> collectAdjacentCooccurrences(getCooccurrenceCandidates(Collections.singletonList(sentence)), prelim));
+        } else {
+            collectAdjacentCooccurrences(getCooccurrenceCandidates(annotatedText.getSentencesSorted()), prelim);
+        }
+
+        return completeCooccurrences(prelim, language, fromDependencies);
+    }
+
+    private Map<Long, Map<Long, CoOccurrenceItem>> completeCooccurrences(List<CoOccurrenceItem> prelim, String language, boolean fromDependencies) {
         if (prelim.isEmpty()) {
             LOG.warn("Nothing to do: no co-occurrence passing cleansing criteria found.");
             return null;
@@ -289,6 +347,111 @@ public class TextRank {
         }
     }
 
+    private List<TagOccurrence> getCooccurrenceCandidates(List<Sentence> sentences) {
+        return sentences.stream()
+                .flatMap(sentence -> sentence.getTagOccurrences().values().stream())
+                .flatMap(List::stream)
+                .filter(occurrence -> isCooccurrenceCandidate(occurrence, false))
+                .sorted(Comparator.comparing(occurrence -> occurrence.getSpan().first()))
+                .collect(Collectors.toList());
+    }
+
+    private boolean isCooccurrenceCandidate(TagOccurrence occurrence, boolean fromDependencies) {
+        Tag tag = occurrence.getElement();
+        if (tag.getLemma().length() <= 2) {
+            return false;
+        }
+        if (fromDependencies) {
+            return true;
+        }
+
+        return !stopWords.contains(tag.getLemma().toLowerCase())
+                && tag.getPos().stream().noneMatch(pos -> forbiddenPOSs.contains(pos))
+                && getNamedEntityLabels(tag).stream().noneMatch(label -> forbiddenNEs.contains(label));
+    }
+
+    private void collectAdjacentCooccurrences(List<TagOccurrence> occurrences, List<CoOccurrenceItem> prelim) {
+        for (int i = 0; i < occurrences.size() - 1; i++) {
+            addCooccurrence(occurrences.get(i), occurrences.get(i + 1), prelim);
+        }
+    }
+
+    private void collectDependencyCooccurrences(AnnotatedText annotatedText, List<CoOccurrenceItem> prelim) {
+        // mirrors (to)-[r]-(to2:TagOccurrence) of the graph query: typed dependencies and coreferences, one item per pair
+        Map<TagOccurrence, Set<TagOccurrence>> related = new IdentityHashMap<>();
+        List<TagOccurrence> occurrences = new ArrayList<>();
+        for (Sentence sentence : annotatedText.getSentencesSorted()) {
+            Map<String, TagOccurrence> byToken = getOccurrencesByToken(sentence);
+            sentence.getTagOccurrences().values().forEach(occurrences::addAll);
+            sentence.getTypedDependencies().forEach(dependency -> {
+                TagOccurrence source = byToken.get(dependency.getSource());
+                TagOccurrence target = byToken.get(dependency.getTarget());
+                if (source != null && target != null) {
+                    relate(related, source, target);
+                }
+            });
+        }
+        occurrences.stream()
+                .filter(TagOccurrence::hasReference)
+                .forEach(occurrence -> relate(related, occurrence, occurrence.getCoreference().getTagOccurrence()));
+
+        occurrences.sort(Comparator.comparing(occurrence -> occurrence.getSpan().first()));
+        for (TagOccurrence occurrence : occurrences) {
+            if (!isCooccurrenceCandidate(occurrence, true) || !related.containsKey(occurrence)) {
+                continue;
+            }
+            related.get(occurrence).stream()
+                    .filter(other -> other != occurrence && occurrence.getSpan().first() < other.getSpan().first())
+                    .filter(other -> isCooccurrenceCandidate(other, true))
+                    .sorted(Comparator.comparing(other -> other.getSpan().first()))
+                    .forEach(other -> addCooccurrence(occurrence, other, prelim));
+        }
+    }
+
+    private void relate(Map<TagOccurrence, Set<TagOccurrence>> related, TagOccurrence first, TagOccurrence second) {
+        related.computeIfAbsent(first, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(second);
+        related.computeIfAbsent(second, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(first);
+    }
+
+    private Map<String, TagOccurrence> getOccurrencesByToken(Sentence sentence) {
+        Map<String, TagOccurrence> byToken = new HashMap<>();
+        sentence.getTagOccurrences().values().forEach(occurrences -> occurrences.forEach(occurrence -> {
+            occurrence.getPartIds().forEach(tokenId -> byToken.put(tokenId, occurrence));
+        }));
+
+        return byToken;
+    }
+
+    private void addCooccurrence(TagOccurrence source, TagOccurrence destination, List<CoOccurrenceItem> prelim) {
+        Long tag1 = getInMemoryTagId(source.getElement());
+        Long tag2 = getInMemoryTagId(destination.getElement());
+        List<String> pos1 = source.getElement().getPos();
+        List<String> pos2 = destination.getElement().getPos();
+
+        // same admission rule as processOneAnnotatedText()
+        boolean bPOS1 = pos1.stream().anyMatch(pos -> admittedPOSs.contains(pos)) || pos1.isEmpty();
+        boolean bPOS2 = pos2.stream().anyMatch(pos -> admittedPOSs.contains(pos)) || pos2.isEmpty();
+        if (bPOS1 && bPOS2) {
+            CoOccurrenceItem co = new CoOccurrenceItem(tag1, source.getSpan().first(), tag2, destination.getSpan().first());
+            co.addEndPositions(source.getSpan().second(), destination.getSpan().second());
+            prelim.add(co);
+        }
+    }
+
+    private Long getInMemoryTagId(Tag tag) {
+        return inMemoryTagIds.computeIfAbsent(tag.getId(), k -> {
+            long id = inMemoryTagIds.size() + 1L;
+            idToValue.put(id, k);
+            return id;
+        });
+    }
+
+    private List<String> getNamedEntityLabels(Tag tag) {
+        return tag.getNe().stream()
+                .map(ne -> Properties.NAMED_ENTITY_PREFIX + TagUtils.getNamedEntityValue(ne))
+                .collect(Collectors.toList());
+    }
+
     private void addTagToCoOccurrence(Map<Long, Map<Long, CoOccurrenceItem>> results, Long source, int sourceStartPosition, Long destination, int destinationStartPosition) {
         Map<Long, CoOccurrenceItem> mapTag1;
         if (!results.containsKey(source)) {
@@ -320,49 +483,28 @@ public class TextRank {
     }
 
     private Map<Long, List<Pair<Long, Long>>> expandNamedEntities(String language) {
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("name", getPipelineWithoutNEs(language));
-
-        Map<String, Object> p = new HashMap<>();
-        p.put("params", parameters);
-
         Map<Long, List<Pair<Long, Long>>> result = new HashMap<>();
         Map<Long, String> newIdsToVal = new HashMap<>();
+        ValueIndex index = new ValueIndex(idToValue);
 
         long nextNewId = -2L;
-        for (Long valueL : idToValue.keySet()) {
+        for (Long valueL : new ArrayList<>(idToValue.keySet())) {
             if (idToValue.get(valueL).trim().split(" ").length < 2)
                 continue;
             String str = idToValue.get(valueL).toLowerCase().split("_")[0].trim();
-            p.put("text", str);
             List<Pair<Long, Long>> res = new ArrayList<>();
-            try (Transaction tx = database.beginTx()) {
-                Result r = database.execute(
-                        "WITH ga.nlp.processor.annotate({text}, {params}) AS annotated\n"
-                                + "with keys(annotated.sentences[0].tagOccurrences) as keys, annotated\n"
-                                + "unwind keys as k\n"
-                                + "with toInteger(k) as kInt, annotated\n"
-                                + "order by kInt asc\n"
-                                + "return kInt as start, annotated.sentences[0].tagOccurrences[toString(kInt)][0].element.id as tagVal"
-                        , p);
-                while (r.hasNext()) {
-                    Map<String, Object> next = r.next();
-                    Long start = (Long) next.get("start");
-                    String val = (String) next.get("tagVal");
-                    List<Long> lId = idToValue.entrySet().stream().filter(en -> en.getValue().equals(val) || en.getValue().equalsIgnoreCase(val)).map(Map.Entry::getKey).collect(Collectors.toList());
-                    List<Long> lIdNew = newIdsToVal.entrySet().stream().filter(en -> en.getValue().equals(val) || en.getValue().equalsIgnoreCase(val)).map(Map.Entry::getKey).collect(Collectors.toList());
-                    if (lId != null && lId.size() > 0) {
-                        res.add(new Pair<>(start, lId.get(0)));
-                    } else if (lIdNew != null && lIdNew.size() > 0) {
-                        res.add(new Pair<>(start, lIdNew.get(0)));
-                    } else {
-                        res.add(new Pair<>(start, nextNewId));
-                        newIdsToVal.put(nextNewId, val);
-                        nextNewId -= 1L;
-                    }
+            for (Pair<Long, String> token : getNamedEntityTokens(str, language)) {
+                Long start = token.first();
+                String val = token.second();
+                Long id = index.find(val);
+                if (id != null) {
+                    res.add(new Pair<>(start, id));
+                } else {
+                    res.add(new Pair<>(start, nextNewId));
+                    newIdsToVal.put(nextNewId, val);
+                    index.add(nextNewId, val);
+                    nextNewId -= 1L;
                 }
-                r.close();
-                tx.success();
             }
             if (res.size() > 0)
                 result.put(valueL, res); // map: id(NE) -> ListOfIndividualTags(Pair(startPostion, tagId))
@@ -375,17 +517,75 @@ public class TextRank {
         return result;
     }
 
+    private List<Pair<Long, String>> getNamedEntityTokens(String value, String language) {
+        try {
+            String pipeline = getPipelineWithoutNEs(language);
+            // the pipelines version keeps entries tokenized by a pipeline that has since changed from being reused
+            String key = NLPManager.getInstance().getConfiguration().getPipelinesVersion() + "|" + language + "|" + value;
+            return NE_TOKENS_CACHE.get(key, () -> annotateNamedEntity(value, pipeline));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new RuntimeException("Error while splitting named entity '" + value + "' into tokens", e.getCause());
+        }
+    }
+
+    private List<Pair<Long, String>> annotateNamedEntity(String value, String pipeline) {
+        // (start position, tag id) of the tokens of the first sentence, same as annotating it with ga.nlp.processor.annotate()
+        TextProcessorsManager textProcessorsManager = NLPManager.getInstance().getTextProcessorsManager();
+        AnnotatedText annotated = textProcessorsManager.annotate(value, textProcessorsManager.getPipelineSpecification(pipeline));
+        if (annotated.getSentences().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return annotated.getSentences().get(0).getTagOccurrences().entrySet().stream()
+                .filter(en -> !en.getValue().isEmpty())
+                .sorted(Map.Entry.comparingByKey())
+                .map(en -> new Pair<>(en.getKey().longValue(), en.getValue().get(0).getElement().getId()))
+                .collect(Collectors.toList());
+    }
+
+    static void clearNamedEntityTokensCache() {
+        NE_TOKENS_CACHE.invalidateAll();
+    }
+
     public TextRankResult evaluate(List<Node> annotatedTexts, String language, int iter, double damp, double threshold) {
-        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrence = createCooccurrences(annotatedTexts, language, cooccurrencesFromDependencies);
+        return evaluate(fromDependencies -> createCooccurrences(annotatedTexts, language, fromDependencies),
+                (pageRanks, keywordsOccurrences, keywordMap, wrongNEs) -> {
+                    Map<String, Object> params = new HashMap<>();
+                    params.put("posList", admittedPOSs);
+                    params.put("stopwords", removeStopWords ? stopWords : new ArrayList<>());
+                    for (Node node : annotatedTexts) {
+                        params.put("id", node.getId());
+                        detailedTagAnalysis(GET_TAG_QUERY, params, pageRanks, keywordsOccurrences, keywordMap, wrongNEs);
+                    }
+                }, seedProperty, iter, damp, threshold);
+    }
+
+    /**
+     * Runs TextRank on a document that has just been annotated, using the in-memory annotation instead of
+     * querying the persisted graph. Meant to be called within the transaction that stores the document.
+     */
+    public TextRankResult evaluate(AnnotatedText annotatedText, String language, int iter, double damp, double threshold) {
+        return evaluate(fromDependencies -> createCooccurrences(annotatedText, language, fromDependencies),
+                (pageRanks, keywordsOccurrences, keywordMap, wrongNEs) -> detailedTagAnalysis(annotatedText, pageRanks, keywordsOccurrences, keywordMap, wrongNEs),
+                null, iter, damp, threshold);
+    }
+
+    /**
+     * @param seedProperty Tag property to warm start PageRank from, only usable when the co-occurrences are keyed by
+     *                     Tag node ids
+     */
+    private TextRankResult evaluate(Function<Boolean, Map<Long, Map<Long, CoOccurrenceItem>>> cooccurrences, TagAnalysis tagAnalysis, String seedProperty, int iter, double damp, double threshold) {
+        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrence = cooccurrences.apply(cooccurrencesFromDependencies);
         if (coOccurrence == null) {
             return TextRankResult.SUCCESS(new HashMap<>());
         }
         PageRank pageRank = new PageRank(database);
-        Map<Long, Double> pageRanks = pageRank.run(coOccurrence, iter, damp, threshold);
+        Map<Long, Double> pageRanks = pageRank.run(coOccurrence, iter, damp, threshold, 1, seedProperty);
+        LOG.debug("PageRank converged after " + pageRank.getIterations() + " iterations");
 
         if (cooccurrencesFromDependencies) {
             coOccurrence.clear();
-            coOccurrence = createCooccurrences(annotatedTexts, language, false); // co-occurrences from natural word flow; needed for merging keywords into key phrases
+            coOccurrence = cooccurrences.apply(false); // co-occurrences from natural word flow; needed for merging keywords into key phrases
         }
 
         if (pageRanks == null) {
@@ -401,18 +601,11 @@ public class TextRank {
                 .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
                 .forEach(en -> LOG.debug("   " + idToValue.get(en.getKey()) + ": " + en.getValue()));
 
-        Map<String, Object> params = new HashMap<>();
-        params.put("posList", admittedPOSs);
-        params.put("stopwords", removeStopWords ? stopWords : new ArrayList<>());
-
         // Detail tag analysis - get start & end positions and related tags (dependencies)
         List<KeywordExtractedItem> keywordsOccurrences = new ArrayList<>();
         Map<Long, KeywordExtractedItem> keywordMap = new HashMap<>();
         List<Long> wrongNEs = new ArrayList<>();
-        for (Node node : annotatedTexts) {
-            params.put("id", node.getId());
-            detailedTagAnalysis(GET_TAG_QUERY, params, pageRanks, keywordsOccurrences, keywordMap, wrongNEs);
-        }
+        tagAnalysis.analyse(pageRanks, keywordsOccurrences, keywordMap, wrongNEs);
 
         Map<String, Keyword> results = new HashMap<>();
 
@@ -529,6 +722,68 @@ public class TextRank {
         }
     }
 
+    private void detailedTagAnalysis(AnnotatedText annotatedText, Map<Long, Double> pageRanks, List<KeywordExtractedItem> keywordsOccurrences, Map<Long, KeywordExtractedItem> keywordMap, List<Long> wrongNEs) {
+        Collection<String> excluded = removeStopWords ? stopWords : Collections.emptyList();
+        // (to)<-[:COMPOUND|AMOD]-(to2) of GET_TAG_QUERY
+        Map<TagOccurrence, List<TagOccurrence>> modifiers = new IdentityHashMap<>();
+        List<TagOccurrence> occurrences = new ArrayList<>();
+        for (Sentence sentence : annotatedText.getSentencesSorted()) {
+            Map<String, TagOccurrence> byToken = getOccurrencesByToken(sentence);
+            sentence.getTagOccurrences().values().forEach(occurrences::addAll);
+            sentence.getTypedDependencies().stream()
+                    .filter(dependency -> "compound".equalsIgnoreCase(dependency.getName()) || "amod".equalsIgnoreCase(dependency.getName()))
+                    .forEach(dependency -> {
+                        TagOccurrence source = byToken.get(dependency.getSource());
+                        TagOccurrence target = byToken.get(dependency.getTarget());
+                        if (source != null && target != null) {
+                            modifiers.computeIfAbsent(target, k -> new ArrayList<>()).add(source);
+                        }
+                    });
+        }
+        occurrences.sort(Comparator.comparing(occurrence -> occurrence.getSpan().first()));
+
+        for (TagOccurrence occurrence : occurrences) {
+            Tag tag = occurrence.getElement();
+            if (excluded.contains(tag.getLemma().toLowerCase())) {
+                continue;
+            }
+            long tagId = getInMemoryTagId(tag);
+
+            // remove stop-NEs
+            if (getNamedEntityLabels(tag).stream().anyMatch(label -> forbiddenNEs.contains(label))) {
+                wrongNEs.add(tagId);
+                continue;
+            }
+
+            List<Long> relTags = new ArrayList<>();
+            List<Number> relStarts = new ArrayList<>();
+            List<Number> relEnds = new ArrayList<>();
+            modifiers.getOrDefault(occurrence, Collections.emptyList()).stream()
+                    .filter(modifier -> modifier.getElement().getPos().isEmpty()
+                            || modifier.getElement().getPos().stream().anyMatch(pos -> admittedPOSs.contains(pos)) && !excluded.contains(modifier.getElement().getLemma().toLowerCase()))
+                    .forEach(modifier -> {
+                        relTags.add(getInMemoryTagId(modifier.getElement()));
+                        relStarts.add(modifier.getSpan().first().longValue());
+                        relEnds.add(modifier.getSpan().second().longValue());
+                    });
+
+            KeywordExtractedItem item = new KeywordExtractedItem(tagId);
+            item.setValue(tag.getId());
+            item.setStartPosition(occurrence.getSpan().first());
+            item.setEndPosition(occurrence.getSpan().second());
+            item.setRelatedTags(relTags);
+            item.setRelTagStartingPoints(relStarts);
+            item.setRelTagEndingPoints(relEnds);
+            item.setRelevance(pageRanks.containsKey(tagId) ? pageRanks.get(tagId) : 0);
+            keywordsOccurrences.add(item);
+            if (!keywordMap.containsKey(tagId)) {
+                keywordMap.put(tagId, item);
+            } else {
+                keywordMap.get(tagId).update(item);
+            }
+        }
+    }
+
     private Map<String, Keyword> checkNextKeyword(KeywordExtractedItem keywordOccurrence, Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences, Map<Long, KeywordExtractedItem> keywords) {
         long tagId = keywordOccurrence.getTagId();
         Map<String, Keyword> results = new HashMap<>();
@@ -603,72 +858,178 @@ public class TextRank {
         if (annotatedText != null && inputKeywordIds.size() < 1) {
             return true;
         }
+        if (annotatedText == null) {
+            return postProcessCorpus(method);
+        }
 
-        if (method.equals("direct")) {
-            String query = getQueryDirect(inputKeywordIds, keywordLabel.name());
+        String query = getPostProcessQuery(method);
+        LOG.info("Running " + method + " post-processing of the " + inputKeywordIds.size() + " keywords of annotated text " + annotatedText.getId());
+        try (Transaction tx = database.beginTx()) {
+            Map<Long, String[]> documentKeywords = new HashMap<>();
+            Result res = database.execute("MATCH (k:`" + keywordLabel.name() + "`) WHERE id(k) IN {ids} RETURN id(k) AS id, k.keywordsList AS words, k.value AS value",
+                    Collections.singletonMap("ids", inputKeywordIds));
+            while (res.hasNext()) {
+                Map<String, Object> next = res.next();
+                documentKeywords.put((Long) next.get("id"), getKeywordWords(next));
+            }
+            // same containment rule as the corpus post-processing, the other keywords are scanned instead of indexed
+            List<Map<String, Object>> pairs = new ArrayList<>();
+            res = database.execute("MATCH (k:`" + keywordLabel.name() + "`) RETURN id(k) AS id, k.keywordsList AS words, k.value AS value");
+            while (res.hasNext()) {
+                Map<String, Object> next = res.next();
+                String[] otherWords = getKeywordWords(next);
+                for (Map.Entry<Long, String[]> keyword : documentKeywords.entrySet()) {
+                    if (isPostProcessed(method, keyword.getValue(), otherWords)) {
+                        pairs.add(toPair(keyword.getKey(), (Long) next.get("id")));
+                    }
+                }
+            }
+            for (int i = 0; i < pairs.size(); i += POSTPROCESS_BATCH_SIZE) {
+                database.execute(query, Collections.singletonMap("pairs", pairs.subList(i, Math.min(i + POSTPROCESS_BATCH_SIZE, pairs.size())))).close();
+            }
+            tx.success();
+        } catch (Exception e) {
+            LOG.error("Error while running TextRank post-processing (" + method + "): ", e);
+            return false;
+        }
 
-            try (Transaction tx = database.beginTx();) {
-                LOG.info("Running identification of sub-keyphrases ...");
-                database.execute(query, Collections.singletonMap("ids", inputKeywordIds));
-                tx.success();
-            } catch (Exception e) {
-                LOG.error("Error while running TextRank post-processing (identification of sub-keyphrases): ", e);
-                return false;
+        return true;
+    }
+
+    /**
+     * Post-processing of all the keywords: containment is resolved in memory with a {@link KeywordTrie} instead of
+     * matching every keyword against every other one in Cypher, and relationships are created in batches.
+     */
+    private boolean postProcessCorpus(String method) {
+        String query = getPostProcessQuery(method);
+
+        Map<Long, String[]> keywords = new HashMap<>();
+        KeywordTrie<Long> trie = new KeywordTrie<>();
+        try (Transaction tx = database.beginTx()) {
+            Result res = database.execute("MATCH (k:`" + keywordLabel.name() + "`) RETURN id(k) AS id, k.keywordsList AS words, k.value AS value");
+            while (res.hasNext()) {
+                Map<String, Object> next = res.next();
+                Long id = (Long) next.get("id");
+                String[] words = getKeywordWords(next);
+                keywords.put(id, words);
+                trie.add(words, id);
             }
-        } else if (method.equals("subgroups")) {
-            // add HAS_SUBGROUP relationships between keywords, ex.: (station) -[HAS_SUBGROUP]-> (space station) -[HAS_SUBGROUP]-> (international space station)
-            String query = getQuerySubGroups(inputKeywordIds, keywordLabel.name());
+            tx.success();
+        }
 
-            try (Transaction tx = database.beginTx();) {
-                if (annotatedText != null) {
-                    LOG.info("input annotated text id : " + annotatedText.getId());
+        LOG.info("Running " + method + " post-processing on " + keywords.size() + " keywords ...");
+        // top level transactions are bound to the calling thread, batches are committed from a dedicated writer
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            List<Map<String, Object>> pairs = new ArrayList<>();
+            for (Map.Entry<Long, String[]> keyword : keywords.entrySet()) {
+                String[] words = keyword.getValue();
+                if (words.length < 2) {
+                    continue;
+                }
+                for (Long other : trie.getContaining(words)) {
+                    if (!isPostProcessed(method, words, keywords.get(other))) {
+                        continue;
+                    }
+                    pairs.add(toPair(keyword.getKey(), other));
+                    if (pairs.size() >= POSTPROCESS_BATCH_SIZE) {
+                        writePostProcessBatch(writer, query, pairs);
+                        pairs = new ArrayList<>();
+                    }
                 }
-                LOG.info("Discovering HAS_SUBGROUP relationships between keywords and keyphrases ...");
-                database.execute(query, Collections.singletonMap("ids", inputKeywordIds));
-                tx.success();
-            } catch (Exception e) {
-                LOG.error("Error while running TextRank post-processing (discovering HAS_SUBGROUP relationships): ", e);
-                return false;
             }
-        } else {
-            throw new RuntimeException("Unknown post-processing method. Available methods: 'direct', 'subgroups'");
+            if (!pairs.isEmpty()) {
+                writePostProcessBatch(writer, query, pairs);
+            }
+        } catch (Exception e) {
+            LOG.error("Error while running TextRank post-processing (" + method + "): ", e);
+            return false;
+        } finally {
+            writer.shutdownNow();
         }
 
         return true;
     }
 
-    private static String getQuerySubGroups(Set<Long> inputKeywordIds, String label) {
-        String query = "match (k:" + label + ")\n";
-        if (inputKeywordIds.size() > 0) {
-            query += " WHERE id(k) IN {ids}\n" +
-                    "AND ";
-        } else {
-            query += "WHERE ";
+    private void writePostProcessBatch(ExecutorService writer, String query, List<Map<String, Object>> pairs) throws InterruptedException, ExecutionException {
+        writer.submit(() -> {
+            try (Transaction tx = database.beginTx()) {
+                database.execute(query, Collections.singletonMap("pairs", pairs)).close();
+                tx.success();
+            }
+        }).get();
+        LOG.info("Post-processed a batch of " + pairs.size() + " keyword pairs");
+    }
+
+    private static String getPostProcessQuery(String method) {
+        if (method.equals("direct")) {
+            return POSTPROCESS_DIRECT_BATCH_QUERY;
+        } else if (method.equals("subgroups")) {
+            return POSTPROCESS_SUBGROUPS_BATCH_QUERY;
         }
-        query += "k.numTerms > 1\n"
-                + "with k WHERE true \n"
-                + "match (k2:" + label + ")\n"
-                + "where k2.value STARTS WITH (k.value + ' ') OR k2.value ENDS WITH (' ' + k.value)\n"
-                + "merge (k)-[r:HAS_SUBGROUP]->(k2)";
-        return query;
+        throw new RuntimeException("Unknown post-processing method. Available methods: 'direct', 'subgroups'");
     }
 
-    private static String getQueryDirect(Set<Long> inputKeywordIds, String label) {
-        String query = "match (k:" + label + ")\n";
-        if (inputKeywordIds.size() > 0) {
-            query += " WHERE id(k) IN {ids}\n" +
-                    "AND ";
-        } else {
-            query += "WHERE ";
+    private static String[] getKeywordWords(Map<String, Object> keyword) {
+        return keyword.get("words") != null ? (String[]) keyword.get("words") : String.valueOf(keyword.get("value")).split(" ");
+    }
+
+    /**
+     * A key phrase of several words is related to the longer ones containing the same words in sequence, subgroups
+     * only to the ones starting or ending with them.
+     */
+    private static boolean isPostProcessed(String method, String[] words, String[] otherWords) {
+        if (words.length < 2 || otherWords.length <= words.length) {
+            return false;
+        }
+        if (method.equals("subgroups")) {
+            return startsWith(otherWords, words) || endsWith(otherWords, words);
         }
-        query += "k.numTerms > 1\n"
-                + "with k, k.value as ks_orig\n"
-                + "match (k2:" + label + ")\n"
-                + "where k2.numTerms > k.numTerms and k2.value CONTAINS ks_orig\n"
-                + "match (k2)-[r2:DESCRIBES]->(a:AnnotatedText)\n"
-                + "where not (k)-[:DESCRIBES]->(a)\n" +
-                "MERGE (k)-[rn:DESCRIBES]->(a) SET rn.count = k2.count, rn.count_exactMatch = k2.count_exactMatch";
-        return query;
+
+        return containsSequence(otherWords, words);
+    }
+
+    private static Map<String, Object> toPair(Long from, Long to) {
+        Map<String, Object> pair = new HashMap<>();
+        pair.put("from", from);
+        pair.put("to", to);
+
+        return pair;
+    }
+
+    private static boolean containsSequence(String[] words, String[] sequence) {
+        for (int start = 0; start + sequence.length <= words.length; ++start) {
+            boolean found = true;
+            for (int i = 0; i < sequence.length && found; ++i) {
+                found = words[start + i].equals(sequence[i]);
+            }
+            if (found) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean startsWith(String[] words, String[] prefix) {
+        for (int i = 0; i < prefix.length; ++i) {
+            if (!words[i].equals(prefix[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean endsWith(String[] words, String[] suffix) {
+        int offset = words.length - suffix.length;
+        for (int i = 0; i < suffix.length; ++i) {
+            if (!words[offset + i].equals(suffix[i])) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     private Set<Long> getKeywordIds(Node annotatedText) {
@@ -707,28 +1068,28 @@ public class TextRank {
     }
 
     private void computeTotalOccurrence(Map<String, Keyword> results) {
-        results.entrySet().stream().forEach((entry) -> {
-            results.entrySet().stream().forEach((innerEntry) -> {
-                if (entry.getValue().getWordsCount() < innerEntry.getValue().getWordsCount()
-                        && innerEntry.getValue().getRawKeyword().contains(entry.getValue().getRawKeyword())) {
-                    entry.getValue().incTotalCountBy(innerEntry.getValue().getTotalCount());
-                }
-            });
+        KeywordTrie<Keyword> trie = createKeywordTrie(results.values());
+        results.values().forEach(keyword -> {
+            trie.getContaining(keyword.getListOfWords()).stream()
+                    .filter(other -> keyword.getWordsCount() < other.getWordsCount())
+                    .forEach(other -> keyword.incTotalCountBy(other.getTotalCount()));
         });
     }
 
+    private KeywordTrie<Keyword> createKeywordTrie(Collection<Keyword> keywords) {
+        KeywordTrie<Keyword> trie = new KeywordTrie<>();
+        keywords.forEach(keyword -> trie.add(keyword.getListOfWords(), keyword));
+
+        return trie;
+    }
+
     private Map<String, Keyword> cleanFinalKeywords(Map<String, Keyword> results, int topx) {
         Map<String, Keyword> newResults = new HashMap<>(results);
-        results.entrySet().stream().forEach((entry) -> {
-            results.entrySet().stream().forEach((innerEntry) -> {
-                if (entry.getValue().getWordsCount() < innerEntry.getValue().getWordsCount()
-                        && innerEntry.getValue().getRawKeyword().contains(entry.getValue().getRawKeyword())
-                ) {
-                    if (entry.getValue().getWordsCount() == 1) // remove single-word keywords when they occur _within_ some key phrase
-                        newResults.remove(entry.getKey());
-                }
-            });
-        });
+        KeywordTrie<Keyword> trie = createKeywordTrie(results.values());
+        results.entrySet().stream()
+                .filter(entry -> entry.getValue().getWordsCount() == 1) // remove single-word keywords when they occur _within_ some key phrase
+                .filter(entry -> trie.getContaining(entry.getValue().getListOfWords()).stream().anyMatch(other -> other.getWordsCount() > 1))
+                .forEach(entry -> newResults.remove(entry.getKey()));
 
         // Use (PR * tf*idf) for selecting top 1/3 of keywords / key phrases
         // Crucial piece of code for TextRank with dependencies enrichment, because the enrichment can cause more than 1/3 (topx) Keywords to be constructed
@@ -745,6 +1106,35 @@ public class TextRank {
     }
 
 
+    /**
+     * Resolves tag values to ids preferring an exact match over a case insensitive one.
+     */
+    private static class ValueIndex {
+
+        private final Map<String, Long> exact = new HashMap<>();
+
+        private final Map<String, Long> caseInsensitive = new HashMap<>();
+
+        ValueIndex(Map<Long, String> idToValue) {
+            idToValue.forEach(this::add);
+        }
+
+        void add(Long id, String value) {
+            exact.putIfAbsent(value, id);
+            caseInsensitive.putIfAbsent(value.toLowerCase(), id);
+        }
+
+        Long find(String value) {
+            Long id = exact.get(value);
+            return id != null ? id : caseInsensitive.get(value.toLowerCase());
+        }
+    }
+
+    private interface TagAnalysis {
+
+        void analyse(Map<Long, Double> pageRanks, List<KeywordExtractedItem> keywordsOccurrences, Map<Long, KeywordExtractedItem> keywordMap, List<Long> wrongNEs);
+    }
+
     public static class Builder {
 
         private static final String[] STOP_WORDS = {"new", "old", "large", "big", "vast", "small", "many", "few", "good", "better", "best", "bad", "worse", "worst"};
@@ -778,6 +1168,7 @@ public class TextRank {
         private List<String> admittedPOSs = Arrays.asList(ADMITTED_POS);
         private List<String> forbiddenNEs = Arrays.asList(FORBIDDEN_NE);
         private List<String> forbiddenPOSs = Arrays.asList(FORBIDDEN_POS);
+        private String seedProperty;
 
 
         public Builder(GraphDatabaseService database, DynamicConfiguration configuration) {
@@ -798,7 +1189,8 @@ public class TextRank {
                     stopWords,
                     admittedPOSs,
                     forbiddenNEs,
-                    forbiddenPOSs);
+                    forbiddenPOSs,
+                    seedProperty);
             return result;
         }
 
@@ -870,5 +1262,10 @@ public class TextRank {
             this.cleanKeywords = cleanKeywords;
             return this;
         }
+
+        public Builder setSeedProperty(String seedProperty) {
+            this.seedProperty = seedProperty;
+            return this;
+        }
     }
 }
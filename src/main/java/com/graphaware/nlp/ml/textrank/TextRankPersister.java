@@ -45,14 +45,13 @@ public class TextRankPersister {
     public void persistKeywords(Map<String, Keyword> results, Node annotatedText) {
         List<String> printKeywords = new ArrayList<>();
         KeywordPersister persister = NLPManager.getInstance().getPersister(Keyword.class);
-        persister.setLabel(keywordLabel);
         results.entrySet().stream()
                 .forEach(en -> {
                     // check keyword consistency
                     if (en.getKey().split("_").length > 2) {
                         LOG.warn("Tag " + en.getKey() + " has more than 1 underscore symbols, newly created " + keywordLabel.name() + " node might be wrong.");
                     }
-                    Node newNode = persister.persist(en.getValue(), en.getKey(), String.valueOf(System.currentTimeMillis()));
+                    Node newNode = persister.getOrCreate(en.getValue(), en.getKey(), String.valueOf(System.currentTimeMillis()), keywordLabel);
                     if (newNode != null) {
                         //LOG.info("New node has labels: " + iterableToList(newNode.getLabels()).stream().map(l -> l.name()).collect(Collectors.joining(", ")));
                         Relationship rel = mergeRelationship(annotatedText, newNode);
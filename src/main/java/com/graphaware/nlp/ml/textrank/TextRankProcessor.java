@@ -15,18 +15,40 @@
  */
 package com.graphaware.nlp.ml.textrank;
 
+import com.graphaware.nlp.NLPEvents;
 import com.graphaware.nlp.annotation.NLPModuleExtension;
+import com.graphaware.nlp.configuration.SettingsConstants;
+import com.graphaware.nlp.domain.AnnotatedText;
+import com.graphaware.nlp.domain.Tag;
+import com.graphaware.nlp.dsl.request.TextRankBatchRequest;
 import com.graphaware.nlp.dsl.request.TextRankPostprocessRequest;
 import com.graphaware.nlp.dsl.request.TextRankRequest;
 import com.graphaware.nlp.dsl.result.SingleResult;
+import com.graphaware.nlp.dsl.result.TextRankBatchResult;
+import com.graphaware.nlp.event.EventDispatcher;
+import com.graphaware.nlp.event.TextAnnotationEvent;
 import com.graphaware.nlp.extension.AbstractExtension;
 import com.graphaware.nlp.extension.NLPExtension;
+import com.graphaware.nlp.persistence.constants.Labels;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 @NLPModuleExtension(name = "TextRankProcessor")
 public class TextRankProcessor extends AbstractExtension implements NLPExtension {
@@ -34,17 +56,196 @@ public class TextRankProcessor extends AbstractExtension implements NLPExtension
     private static final Log LOG = LoggerFactory.getLogger(TextRankProcessor.class);
 
     public SingleResult computeAndStore(TextRankRequest request) {
+        return computeAndPersist(request).getStatus().equals(TextRankResult.TextRankStatus.SUCCESS)
+                ? SingleResult.success()
+                : SingleResult.fail();
+    }
+
+    /**
+     * Runs TextRank on every document selected by the request. Documents are processed in ascending id order by
+     * a pool of workers, the keywords of each batch being committed in one transaction by a single writer so that
+     * batches sharing a keyword do not both create it. The returned cursor is the highest id up to which all
+     * documents have been processed and can be passed as `afterId` to resume a run.
+     */
+    public TextRankBatchResult computeAndStoreBatch(TextRankBatchRequest request) {
+        long[] ids = getBatchDocumentIds(request);
+        int batchSize = request.getBatchSize();
+        int batches = (ids.length + batchSize - 1) / batchSize;
+        BatchProgress progress = new BatchProgress(ids, batchSize, request.getAfterId());
+        ExecutorService workers = Executors.newFixedThreadPool(request.getConcurrency());
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        LOG.info("Running TextRank on " + ids.length + " documents in batches of " + batchSize);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int batch = 0; batch < batches; ++batch) {
+                final int current = batch;
+                futures.add(workers.submit(() -> {
+                    int from = current * batchSize;
+                    int to = Math.min(from + batchSize, ids.length);
+                    progress.completed(current, to - from, processBatch(ids, from, to, request.getTextRankParameters(), writer));
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Error while running TextRank in batch, resume with afterId " + progress.getCursor(), e);
+        } finally {
+            workers.shutdownNow();
+            writer.shutdownNow();
+        }
+
+        return new TextRankBatchResult(ids.length, progress.getProcessed(), progress.getFailed(), progress.getCursor());
+    }
+
+    private long[] getBatchDocumentIds(TextRankBatchRequest request) {
+        String query = request.getQuery() != null
+                ? request.getQuery()
+                : "MATCH (n:`" + (request.getLabel() != null ? request.getLabel() : configuration().getLabelFor(Labels.AnnotatedText).name()) + "`) RETURN id(n) AS id";
+        LongStream.Builder ids = LongStream.builder();
+        try (Transaction tx = getDatabase().beginTx()) {
+            Result result = getDatabase().execute(query);
+            String column = result.columns().get(0);
+            while (result.hasNext()) {
+                Object value = result.next().get(column);
+                long id = value instanceof Node ? ((Node) value).getId() : ((Number) value).longValue();
+                if (id > request.getAfterId()) {
+                    ids.add(id);
+                }
+            }
+            tx.success();
+        }
+
+        return ids.build().sorted().distinct().toArray();
+    }
+
+    private int processBatch(long[] ids, int from, int to, Map<String, Object> parameters, ExecutorService writer) {
+        try {
+            return computeAndWrite(ids, from, to, parameters, writer);
+        } catch (Exception e) {
+            LOG.warn("Error while running TextRank on a batch of " + (to - from) + " documents, retrying one by one", e);
+        }
+
+        int failed = 0;
+        for (int i = from; i < to; ++i) {
+            try {
+                failed += computeAndWrite(ids, i, i + 1, parameters, writer);
+            } catch (Exception e) {
+                LOG.error("Error while running TextRank on AnnotatedText " + ids[i], e);
+                failed++;
+            }
+        }
+
+        return failed;
+    }
+
+    /**
+     * Computes the keywords of the documents in the worker's transaction, then hands them to the writer.
+     *
+     * @return the number of documents for which TextRank failed
+     */
+    private int computeAndWrite(long[] ids, int from, int to, Map<String, Object> parameters, ExecutorService writer) throws InterruptedException, ExecutionException {
+        List<TextRankRequest> requests = new ArrayList<>();
+        List<TextRankResult> results = new ArrayList<>();
+        int failed = 0;
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (int i = from; i < to; ++i) {
+                Map<String, Object> documentParameters = new HashMap<>(parameters);
+                documentParameters.put("annotatedText", getDatabase().getNodeById(ids[i]));
+                TextRankRequest request = TextRankRequest.fromMap(documentParameters);
+                TextRankResult result = compute(request);
+                failed += result.getStatus().equals(TextRankResult.TextRankStatus.SUCCESS) ? 0 : 1;
+                requests.add(request);
+                results.add(result);
+            }
+            tx.success();
+        }
+        writer.submit(() -> {
+            try (Transaction tx = getDatabase().beginTx()) {
+                for (int i = 0; i < requests.size(); ++i) {
+                    persist(requests.get(i), results.get(i));
+                }
+                tx.success();
+            }
+        }).get();
+
+        return failed;
+    }
+
+    private TextRankResult computeAndPersist(TextRankRequest request) {
         TextRankResult result = compute(request);
+        persist(request, result);
+
+        return result;
+    }
+
+    private void persist(TextRankRequest request, TextRankResult result) {
         TextRankPersister persister = new TextRankPersister(Label.label(request.getKeywordLabel()));
         Node attachedNode = request.getNode() != null ? request.getNode() : request.getMotherNode();
         persister.persistKeywords(result.getResult(), attachedNode);
+    }
+
+    public TextRankResult compute(TextRankRequest request) {
+        TextRank textRank = buildTextRank(request);
+        TextRankResult result = textRank.evaluate(request.getNodes(),
+                request.getLanguage(),
+                request.getIterations(), 
+                request.getDamp(), 
+                request.getThreshold());
+        LOG.info("AnnotatedText with ID(s) " + request.getNodes().stream().map(el -> String.valueOf(el.getId())).collect(Collectors.joining(", ")) + " processed. Result: " + result.getStatus());
+
+        return result;
+    }
+
+    public SingleResult computeAndStore(TextRankRequest request, AnnotatedText annotatedText) {
+        TextRankResult result = buildTextRank(request).evaluate(annotatedText,
+                request.getLanguage(),
+                request.getIterations(),
+                request.getDamp(),
+                request.getThreshold());
+        TextRankPersister persister = new TextRankPersister(Label.label(request.getKeywordLabel()));
+        persister.persistKeywords(result.getResult(), request.getNode());
 
         return result.getStatus().equals(TextRankResult.TextRankStatus.SUCCESS)
                 ? SingleResult.success()
                 : SingleResult.fail();
     }
 
-    public TextRankResult compute(TextRankRequest request) {
+    @Override
+    public void registerEventListeners(EventDispatcher eventDispatcher) {
+        eventDispatcher.registerListener(NLPEvents.POST_TEXT_ANNOTATION, event -> {
+            if (isEnabledOnAnnotation()) {
+                extractKeywordsOnAnnotation((TextAnnotationEvent) event);
+            }
+        });
+    }
+
+    private boolean isEnabledOnAnnotation() {
+        Object value = getConfiguration().getSettingValueFor(SettingsConstants.TEXT_RANK_ON_ANNOTATION);
+
+        return value != null && Boolean.valueOf(value.toString());
+    }
+
+    private void extractKeywordsOnAnnotation(TextAnnotationEvent event) {
+        if (event.getAnnotatedNode() == null) {
+            return;
+        }
+        TextRankRequest request = TextRankRequest.fromMap(Collections.<String, Object>singletonMap("annotatedText", event.getAnnotatedNode()));
+        event.getAnnotatedText().getTags().stream()
+                .map(Tag::getLanguage)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .ifPresent(request::setLanguage);
+        // the listener is synchronous, so keywords are stored in the transaction that persisted the document
+        try {
+            SingleResult result = computeAndStore(request, event.getAnnotatedText());
+            LOG.info("Keywords extracted on annotation for AnnotatedText " + event.getId() + ". Result: " + result.result);
+        } catch (Exception e) {
+            LOG.error("Error while extracting keywords on annotation of " + event.getId(), e);
+        }
+    }
+
+    private TextRank buildTextRank(TextRankRequest request) {
         TextRank.Builder textrankBuilder = new TextRank.Builder(getDatabase(), getNLPManager().getConfiguration());
         if (request.getStopWords() != null 
                 && !request.getStopWords().isEmpty()) {
@@ -61,17 +262,10 @@ public class TextRankProcessor extends AbstractExtension implements NLPExtension
                 .setKeywordLabel(request.getKeywordLabel())
                 .setAdmittedPOSs(request.getAdmittedPOSs())
                 .setForbiddenPOSs(request.getForbiddenPOSs())
-                .setForbiddenNEs(request.getForbiddenNEs());
-        
-        TextRank textRank = textrankBuilder.build();
-        TextRankResult result = textRank.evaluate(request.getNodes(),
-                request.getLanguage(),
-                request.getIterations(), 
-                request.getDamp(), 
-                request.getThreshold());
-        LOG.info("AnnotatedText with ID(s) " + request.getNodes().stream().map(el -> String.valueOf(el.getId())).collect(Collectors.joining(", ")) + " processed. Result: " + result.getStatus());
+                .setForbiddenNEs(request.getForbiddenNEs())
+                .setSeedProperty(request.getSeedProperty());
 
-        return result;
+        return textrankBuilder.build();
     }
 
     public SingleResult postprocess(TextRankPostprocessRequest request) {
@@ -83,4 +277,52 @@ public class TextRankProcessor extends AbstractExtension implements NLPExtension
         LOG.info("TextRank post-processing completed.");
         return SingleResult.success();
     }
+
+    private static class BatchProgress {
+
+        private final long[] ids;
+
+        private final int batchSize;
+
+        private final boolean[] done;
+
+        private int nextPending;
+
+        private long cursor;
+
+        private long processed;
+
+        private long failed;
+
+        BatchProgress(long[] ids, int batchSize, long afterId) {
+            this.ids = ids;
+            this.batchSize = batchSize;
+            this.done = new boolean[(ids.length + batchSize - 1) / batchSize];
+            this.cursor = afterId;
+        }
+
+        synchronized void completed(int batch, int documents, int failedDocuments) {
+            done[batch] = true;
+            processed += documents - failedDocuments;
+            failed += failedDocuments;
+            // batches finish out of order, the cursor only moves over a contiguous run of completed ones
+            while (nextPending < done.length && done[nextPending]) {
+                cursor = ids[Math.min((nextPending + 1) * batchSize, ids.length) - 1];
+                nextPending++;
+            }
+            LOG.info("TextRank batch: " + (processed + failed) + "/" + ids.length + " documents processed, " + failed + " failed, cursor at " + cursor);
+        }
+
+        synchronized long getProcessed() {
+            return processed;
+        }
+
+        synchronized long getFailed() {
+            return failed;
+        }
+
+        synchronized long getCursor() {
+            return cursor;
+        }
+    }
 }
@@ -26,7 +26,6 @@ import com.graphaware.common.log.LoggerFactory;
 
 import java.util.*;
 
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 public class TextRankSummarizer implements Summarizer {
@@ -38,7 +37,7 @@ public class TextRankSummarizer implements Summarizer {
     private static final double DEFAULT_DUMPING_FACTOR = 0.85d;
     private static final double DEFAULT_THRESHOLD = 0.0001d;
 
-    private static final Log LOG = LoggerFactory.getLogger(TextRank.class);
+    private static final Log LOG = LoggerFactory.getLogger(TextRankSummarizer.class);
     public static final String TEXT_RANK_SUMMARIZER = "TextRank";
 
     public static final String PARAMETER_STOP_WORDS = "stopWords";
@@ -48,6 +47,20 @@ public class TextRankSummarizer implements Summarizer {
     public static final String PARAMETER_ITERATIONS = "iter";
     public static final String PARAMETER_DAMP = "damp";
     public static final String PARAMETER_THRESHOLD = "threshold";
+    public static final String PARAMETER_MIN_HASH = "minHash";
+    public static final String PARAMETER_MIN_HASH_BANDS = "minHashBands";
+    public static final String PARAMETER_MIN_HASH_ROWS = "minHashRows";
+    public static final String PARAMETER_MIN_HASH_MIN_SENTENCES = "minHashMinSentences";
+
+    private static final int DEFAULT_MIN_HASH_BANDS = 20;
+    private static final int DEFAULT_MIN_HASH_ROWS = 3;
+    private static final int DEFAULT_MIN_HASH_MIN_SENTENCES = 500;
+
+    private static final String SAVE_RANKS_QUERY = "MATCH (a:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)\n"
+            + "WHERE id(a) = {id}\n"
+            + "WITH s, {ranks}[toString(s.sentenceNumber)] AS r\n"
+            + "WHERE r IS NOT NULL\n"
+            + "SET s.summaryRank = r.rank, s.summaryRelevance = r.relevance";
 
     private GraphDatabaseService database;
 
@@ -77,13 +90,14 @@ public class TextRankSummarizer implements Summarizer {
         int iter = getIntegerValue(params.getOrDefault(PARAMETER_ITERATIONS, DEFAULT_ITERATIONS));
         double damp = getDoubleValue(params.getOrDefault(PARAMETER_DAMP, DEFAULT_DUMPING_FACTOR));
         double threshold = getDoubleValue(params.getOrDefault(PARAMETER_THRESHOLD, DEFAULT_THRESHOLD));
-        return evaluate(annotatedText, iter, damp, threshold, stopWords, admittedPOSs, forbiddenPOSs);
+        return evaluate(annotatedText, iter, damp, threshold, stopWords, admittedPOSs, forbiddenPOSs, getMinHashSettings(params));
     }
 
     private Map<Long, Map<Long, CoOccurrenceItem>> createGraph(Node annotatedText,
                                                                Set<String> stopWords,
                                                                List<String> admittedPOSs,
-                                                               List<String> forbiddenPOSs) {
+                                                               List<String> forbiddenPOSs,
+                                                               MinHashSettings minHash) {
         String query =
                 "match (a:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)\n"
                         + "where id(a) = {id}\n"
@@ -99,48 +113,77 @@ public class TextRankSummarizer implements Summarizer {
         params.put("admittedPOSs", admittedPOSs);
         params.put("forbiddenPOSs", forbiddenPOSs);
 
-        Result res = null;
+        List<Long> sentenceNumbers = new ArrayList<>();
+        List<long[]> sentenceTags = new ArrayList<>();
         try (Transaction tx = database.beginTx();) {
-            res = database.execute(query, params);
+            Result res = database.execute(query, params);
+            while (res.hasNext()) {
+                Map<String, Object> next = res.next();
+                sentenceNumbers.add(toLong(next.get("sentenceNumber")));
+                sentenceTags.add(toSortedIds((Iterable<Long>) next.get("tags")));
+            }
             tx.success();
         } catch (Exception e) {
             LOG.error("Error while creating co-occurrences: ", e);
         }
 
-        Map<Long, Set<Long>> sentences = new HashMap<>();
-        while (res != null && res.hasNext()) {
-            Map<String, Object> next = res.next();
-            Long num = toLong(next.get("sentenceNumber"));
-            Set<Long> tags = iterableToSet((Iterable<Long>) next.get("tags"));
-            sentences.put(num, tags);
-        }
-
-        //System.out.println("\n >> Graph for AnnotatedText " + annotatedText.getId() + ":");
         Map<Long, Map<Long, CoOccurrenceItem>> results = new HashMap<>();
-        sentences.entrySet().stream()
-                .forEach(entry -> {
-                    sentences.entrySet().stream()
-                            .filter(en -> en.getKey().longValue() > entry.getKey().longValue()) // similarity between two sentences is commutative (no need to calculate it twice)
-                            .forEach(innerEntry -> {
-                                Set<Long> tags = new HashSet<>(entry.getValue());
-                                tags.retainAll(innerEntry.getValue());
-                                int n = tags.size();
-                                double denom = Math.log(1.0d * innerEntry.getValue().size()) + Math.log(1.0d * entry.getValue().size());
-                                //double denom = innerEntry.getValue().size() + entry.getValue().size();
-                                //double denom = entry.getValue().size() * innerEntry.getValue().size(); // for cosine similarity
-                                if (n > 0 && denom > 0) {
-                                    double val = n / denom;
-                                    //double val = n / Math.sqrt(denom); // cosine similarity
-                                    addToCoOccurrence(results, entry.getKey(), innerEntry.getKey(), val);
-                                    addToCoOccurrence(results, innerEntry.getKey(), entry.getKey(), val); // needed because we want an undirected PageRank
-                                    //System.out.println(" " + entry.getKey() + " -> " + innerEntry.getKey() + ": " + val);
-                                }
-                            });
-                });
+        int nSentences = sentenceTags.size();
+        if (minHash != null && nSentences >= minHash.minSentences) {
+            for (long pair : minHash.candidatePairs(sentenceTags)) {
+                int i = (int) (pair / nSentences);
+                int j = (int) (pair % nSentences);
+                addSimilarity(results, sentenceNumbers, sentenceTags, i, j);
+            }
+        } else {
+            // similarity between two sentences is commutative (no need to calculate it twice)
+            for (int i = 0; i < nSentences; ++i) {
+                for (int j = i + 1; j < nSentences; ++j) {
+                    addSimilarity(results, sentenceNumbers, sentenceTags, i, j);
+                }
+            }
+        }
 
         return results;
     }
 
+    private void addSimilarity(Map<Long, Map<Long, CoOccurrenceItem>> results, List<Long> sentenceNumbers, List<long[]> sentenceTags, int i, int j) {
+        long[] tags1 = sentenceTags.get(i);
+        long[] tags2 = sentenceTags.get(j);
+        int n = intersectionSize(tags1, tags2);
+        double denom = Math.log(1.0d * tags1.length) + Math.log(1.0d * tags2.length);
+        if (n > 0 && denom > 0) {
+            double val = n / denom;
+            addToCoOccurrence(results, sentenceNumbers.get(i), sentenceNumbers.get(j), val);
+            addToCoOccurrence(results, sentenceNumbers.get(j), sentenceNumbers.get(i), val); // needed because we want an undirected PageRank
+        }
+    }
+
+    private static long[] toSortedIds(Iterable<Long> ids) {
+        List<Long> list = new ArrayList<>();
+        ids.forEach(list::add);
+        return list.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+    }
+
+    static int intersectionSize(long[] a, long[] b) {
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                n++;
+                i++;
+                j++;
+            }
+        }
+
+        return n;
+    }
+
     private void addToCoOccurrence(Map<Long, Map<Long, CoOccurrenceItem>> results, Long source, Long destination, double w) {
         Map<Long, CoOccurrenceItem> mapTag1;
         if (!results.containsKey(source)) {
@@ -166,8 +209,9 @@ public class TextRankSummarizer implements Summarizer {
                              double threshold,
                              Set<String> stopWords,
                              List<String> admittedPOSs,
-                             List<String> forbiddenPOSs) {
-        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrence = createGraph(annotatedText, stopWords, admittedPOSs, forbiddenPOSs);
+                             List<String> forbiddenPOSs,
+                             MinHashSettings minHash) {
+        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrence = createGraph(annotatedText, stopWords, admittedPOSs, forbiddenPOSs, minHash);
         if (coOccurrence == null || coOccurrence.isEmpty()) {
             LOG.info("Graph of co-occurrences is empty, aborting ...");
             return true;
@@ -181,25 +225,24 @@ public class TextRankSummarizer implements Summarizer {
             return false;
         }
 
-        System.out.println("\n >> Ranked sentences:");
-        AtomicReference<Integer> currOrder = new AtomicReference<>(1);
-        AtomicReference<String> saveQuery = new AtomicReference<>("MATCH (a:AnnotatedText) WHERE id(a) = {id}\n");
-        pageRanks.entrySet().stream()
+        // Keyed by sentence number so that every sentence is matched once, instead of once per rank
+        Map<String, Object> ranks = new HashMap<>();
+        List<Map.Entry<Long, Double>> sorted = pageRanks.entrySet().stream()
                 .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .forEach(en -> {
-                    System.out.println("  " + en.getKey() + ": " + en.getValue());
-                    saveQuery.set(saveQuery.get() + "WITH a\n"
-                            + "MATCH (a)-[:CONTAINS_SENTENCE]->(s:Sentence {sentenceNumber: " + en.getKey() + "})\n"
-                            + "SET s.summaryRank = " + currOrder.get() + ", s.summaryRelevance = " + en.getValue() + "\n");
-                    currOrder.set(currOrder.get() + 1);
-                });
-
-        // Save results
-        //System.out.println(saveQuery.get());
+                .collect(Collectors.toList());
+        for (int i = 0; i < sorted.size(); ++i) {
+            Map<String, Object> rank = new HashMap<>();
+            rank.put("rank", i + 1);
+            rank.put("relevance", sorted.get(i).getValue());
+            ranks.put(String.valueOf(sorted.get(i).getKey()), rank);
+        }
+        LOG.debug("Ranked " + ranks.size() + " sentences of AnnotatedText " + annotatedText.getId());
+
         Map<String, Object> params = new HashMap<>();
         params.put("id", annotatedText.getId());
+        params.put("ranks", ranks);
         try (Transaction tx = database.beginTx();) {
-            database.execute(saveQuery.get(), params);
+            database.execute(SAVE_RANKS_QUERY, params);
             tx.success();
         } catch (Exception e) {
             LOG.error("Error while saving results: ", e);
@@ -208,6 +251,98 @@ public class TextRankSummarizer implements Summarizer {
         return true;
     }
 
+    private static MinHashSettings getMinHashSettings(Map<String, Object> params) {
+        Object minHash = params.getOrDefault(PARAMETER_MIN_HASH, false);
+        if (!(minHash instanceof Boolean ? (Boolean) minHash : Boolean.parseBoolean(String.valueOf(minHash)))) {
+            return null;
+        }
+        int bands = getIntegerValue(params.getOrDefault(PARAMETER_MIN_HASH_BANDS, DEFAULT_MIN_HASH_BANDS));
+        int rows = getIntegerValue(params.getOrDefault(PARAMETER_MIN_HASH_ROWS, DEFAULT_MIN_HASH_ROWS));
+        int minSentences = getIntegerValue(params.getOrDefault(PARAMETER_MIN_HASH_MIN_SENTENCES, DEFAULT_MIN_HASH_MIN_SENTENCES));
+        if (bands <= 0 || rows <= 0) {
+            throw new RuntimeException("Parameters " + PARAMETER_MIN_HASH_BANDS + " and " + PARAMETER_MIN_HASH_ROWS + " must be positive");
+        }
+
+        return new MinHashSettings(bands, rows, minSentences);
+    }
+
+    /**
+     * Locality sensitive hashing of the sentence tag sets: two sentences become a candidate pair when all the MinHash
+     * values of at least one band agree, which happens with probability 1 - (1 - J^rows)^bands for Jaccard
+     * similarity J. Only the candidate pairs get an exact similarity, so weakly related sentences may lose their edge.
+     */
+    static class MinHashSettings {
+
+        private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+        private final int bands;
+        private final int rows;
+        private final int minSentences;
+
+        MinHashSettings(int bands, int rows, int minSentences) {
+            this.bands = bands;
+            this.rows = rows;
+            this.minSentences = minSentences;
+        }
+
+        /**
+         * @return the candidate pairs i &lt; j encoded as {@code i * sentences.size() + j}
+         */
+        Set<Long> candidatePairs(List<long[]> sentences) {
+            int n = sentences.size();
+            long[][] signatures = new long[n][];
+            for (int s = 0; s < n; ++s) {
+                signatures[s] = signature(sentences.get(s));
+            }
+
+            Set<Long> pairs = new HashSet<>();
+            for (int band = 0; band < bands; ++band) {
+                Map<Long, List<Integer>> buckets = new HashMap<>();
+                for (int s = 0; s < n; ++s) {
+                    if (signatures[s] == null) {
+                        continue;
+                    }
+                    long key = band;
+                    for (int r = band * rows; r < (band + 1) * rows; ++r) {
+                        key = mix(key * 31 + signatures[s][r]);
+                    }
+                    buckets.computeIfAbsent(key, k -> new ArrayList<>()).add(s);
+                }
+                for (List<Integer> bucket : buckets.values()) {
+                    for (int i = 0; i < bucket.size(); ++i) {
+                        for (int j = i + 1; j < bucket.size(); ++j) {
+                            pairs.add((long) bucket.get(i) * n + bucket.get(j));
+                        }
+                    }
+                }
+            }
+
+            return pairs;
+        }
+
+        private long[] signature(long[] tags) {
+            if (tags.length == 0) {
+                return null;
+            }
+            long[] signature = new long[bands * rows];
+            Arrays.fill(signature, Long.MAX_VALUE);
+            for (long tag : tags) {
+                for (int h = 0; h < signature.length; ++h) {
+                    signature[h] = Math.min(signature[h], mix(tag ^ SEEDS[h % SEEDS.length] * (h + 1)));
+                }
+            }
+
+            return signature;
+        }
+
+        // SplitMix64 finalizer
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+
     public Set<String> getStopwords(Map<String, Object> params) {
         Object stopWords = params.get(PARAMETER_STOP_WORDS);
         if (stopWords == null) {
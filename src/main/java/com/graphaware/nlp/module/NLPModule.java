@@ -28,11 +28,14 @@ import com.graphaware.tx.event.improved.api.ImprovedTransactionData;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.logging.Log;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * {@link com.graphaware.runtime.module.TxDrivenModule} that assigns UUID's to
  * nodes in the graph.
  */
-public class NLPModule extends BaseTxDrivenModule<Void> {
+public class NLPModule extends BaseTxDrivenModule<List<Runnable>> {
 
     private static final Log LOG = LoggerFactory.getLogger(NLPModule.class);
     
@@ -81,9 +84,35 @@ public class NLPModule extends BaseTxDrivenModule<Void> {
     }
     
     @Override
-    public Void beforeCommit(ImprovedTransactionData itd) throws DeliberateTransactionRollbackException {
-        getNlpManager().getEventDispatcher().notify(NLPEvents.TRANSACTION_BEFORE_COMMIT, new DatabaseTransactionEvent(itd));
-        return null;
+    public List<Runnable> beforeCommit(ImprovedTransactionData itd) throws DeliberateTransactionRollbackException {
+        DatabaseTransactionEvent event = new DatabaseTransactionEvent(itd);
+        getNlpManager().getEventDispatcher().notifySync(NLPEvents.TRANSACTION_BEFORE_COMMIT, event);
+        List<Runnable> afterCommitActions = new ArrayList<>(getNlpManager().takeAfterCommitActions());
+        afterCommitActions.addAll(event.getAfterCommitActions());
+        return afterCommitActions;
+    }
+
+    @Override
+    public void afterCommit(List<Runnable> afterCommitActions) {
+        if (afterCommitActions == null) {
+            return;
+        }
+        // the transaction is committed already, a failing action must not prevent the others from running
+        for (Runnable action : afterCommitActions) {
+            try {
+                action.run();
+            } catch (Exception e) {
+                LOG.error("Error while running an action after commit", e);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (nlpManager != null) {
+            nlpManager.shutdown();
+        }
+        super.shutdown();
     }
 
     protected void checkMigrations(DynamicConfiguration dynamicConfiguration) {
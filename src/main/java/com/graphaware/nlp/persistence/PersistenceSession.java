@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.persistence;
+
+import com.graphaware.nlp.domain.Span;
+import com.graphaware.nlp.domain.Tag;
+import com.graphaware.nlp.domain.TagParentRelation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Holds the nodes resolved while persisting annotated texts in a single transaction, so that
+ * the same Tag is looked up in the index only once across sentences, occurrences and parents,
+ * and TagOccurrence nodes can be found by sentence and span without traversing the graph.
+ * A session must not outlive the transaction it has been used in.
+ */
+public class PersistenceSession {
+
+    private final Map<String, Long> tagNodeIds = new HashMap<>();
+
+    private final Map<String, Integer> processedTags = new HashMap<>();
+
+    private final Map<String, Map<Long, Long>> tagOccurrenceNodeIds = new HashMap<>();
+
+    public Long getTagNodeId(String tagId) {
+        return tagNodeIds.get(tagId);
+    }
+
+    public void registerTagNode(String tagId, long nodeId) {
+        tagNodeIds.put(tagId, nodeId);
+    }
+
+    /**
+     * @return false if a Tag with the same id and content has already been processed in this session
+     */
+    public boolean markTagProcessed(Tag tag) {
+        int hash = contentHash(tag);
+        Integer previous = processedTags.put(tag.getId(), hash);
+
+        return previous == null || previous != hash;
+    }
+
+    public void registerTagOccurrenceNode(String sentenceId, Span span, long nodeId) {
+        tagOccurrenceNodeIds.computeIfAbsent(sentenceId, k -> new HashMap<>()).put(spanKey(span), nodeId);
+    }
+
+    public void clearTagOccurrenceNodes(String sentenceId) {
+        tagOccurrenceNodeIds.remove(sentenceId);
+    }
+
+    public Long getTagOccurrenceNodeId(String sentenceId, Span span) {
+        Map<Long, Long> occurrences = tagOccurrenceNodeIds.get(sentenceId);
+
+        return occurrences != null ? occurrences.get(spanKey(span)) : null;
+    }
+
+    private static int contentHash(Tag tag) {
+        int hash = Objects.hash(tag.getNe(), tag.getPos(), tag.getExtraProperties());
+        for (TagParentRelation parent : tag.getParents()) {
+            hash = 31 * hash + Objects.hash(parent.getParent().getId(), parent.getRelation(), parent.getWeight(), parent.getSource());
+        }
+
+        return hash;
+    }
+
+    private static long spanKey(Span span) {
+        return ((long) span.first() << 32) | (span.second() & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.persistence.bulk;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.configuration.DynamicConfiguration;
+import com.graphaware.nlp.domain.AnnotatedText;
+import com.graphaware.nlp.dsl.request.BulkImportExportRequest;
+import com.graphaware.nlp.dsl.request.PipelineSpecification;
+import com.graphaware.nlp.dsl.request.RequestConstants;
+import com.graphaware.nlp.dsl.result.BulkImportExportResult;
+import com.graphaware.nlp.processor.TextProcessorsManager;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.neo4j.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Annotates a corpus outside of any transaction and writes the result as CSV files for
+ * neo4j-admin import. The input is either a directory, every file being a document identified
+ * by its file name, or a JSON lines file having an id and a text per line. Input and output paths are resolved
+ * against the import directory of the database and cannot point outside of it.
+ */
+public class BulkImportExporter {
+
+    private static final Log LOG = LoggerFactory.getLogger(BulkImportExporter.class);
+
+    private static final int PENDING_DOCUMENTS_PER_THREAD = 4;
+
+    private final DynamicConfiguration configuration;
+
+    private final TextProcessorsManager textProcessorsManager;
+
+    private final Path importDirectory;
+
+    public BulkImportExporter(DynamicConfiguration configuration, TextProcessorsManager textProcessorsManager, Path importDirectory) {
+        this.configuration = configuration;
+        this.textProcessorsManager = textProcessorsManager;
+        this.importDirectory = importDirectory.toAbsolutePath().normalize();
+    }
+
+    public BulkImportExportResult export(BulkImportExportRequest request) {
+        PipelineSpecification pipelineSpecification = textProcessorsManager.getPipelineSpecification(request.getPipeline());
+        Path input = resolve(request.getInput());
+        Path output = resolve(request.getOutput());
+        BulkImportExportResult result = new BulkImportExportResult(output.toAbsolutePath().toString());
+        int maxPendingDocuments = request.getConcurrency() * PENDING_DOCUMENTS_PER_THREAD;
+        ExecutorService annotators = Executors.newFixedThreadPool(request.getConcurrency());
+        try {
+            Files.createDirectories(output);
+            try (DocumentSource source = openSource(input);
+                 BulkImportWriter writer = new BulkImportWriter(configuration, output, String.valueOf(System.currentTimeMillis()))) {
+                Deque<PendingDocument> pending = new ArrayDeque<>();
+                while (source.hasNext()) {
+                    Document document = source.next();
+                    pending.add(new PendingDocument(document.id, annotators.submit(() -> textProcessorsManager.annotate(document.text, pipelineSpecification))));
+                    if (pending.size() >= maxPendingDocuments) {
+                        write(pending.poll(), writer, result);
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    write(pending.poll(), writer, result);
+                }
+                writer.finish(result);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException("Error while exporting the corpus " + request.getInput(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Export of the corpus " + request.getInput() + " interrupted", e);
+        } finally {
+            annotators.shutdownNow();
+        }
+        LOG.info("Exported " + result.documents + " documents (" + result.failed + " failed) to " + result.output);
+
+        return result;
+    }
+
+    private void write(PendingDocument document, BulkImportWriter writer, BulkImportExportResult result) throws IOException, InterruptedException {
+        AnnotatedText annotatedText;
+        try {
+            annotatedText = document.annotation.get();
+        } catch (ExecutionException e) {
+            LOG.error("Error while annotating document with ID " + document.id, e.getCause());
+            result.failed++;
+            return;
+        }
+        writer.write(document.id, annotatedText);
+        result.documents++;
+    }
+
+    private Path resolve(String path) {
+        Path resolved = importDirectory.resolve(path).normalize();
+        if (!resolved.startsWith(importDirectory)) {
+            throw new RuntimeException("The path " + path + " is outside of the import directory " + importDirectory);
+        }
+
+        return resolved;
+    }
+
+    private static DocumentSource openSource(Path input) throws IOException {
+        if (Files.isDirectory(input)) {
+            return new DirectoryDocumentSource(input);
+        }
+
+        return new JsonLinesDocumentSource(input);
+    }
+
+    private static class Document {
+
+        private final String id;
+
+        private final String text;
+
+        Document(String id, String text) {
+            this.id = id;
+            this.text = text;
+        }
+    }
+
+    private static class PendingDocument {
+
+        private final String id;
+
+        private final Future<AnnotatedText> annotation;
+
+        PendingDocument(String id, Future<AnnotatedText> annotation) {
+            this.id = id;
+            this.annotation = annotation;
+        }
+    }
+
+    private interface DocumentSource extends Iterator<Document>, Closeable {
+    }
+
+    private static class DirectoryDocumentSource implements DocumentSource {
+
+        private final Iterator<Path> files;
+
+        DirectoryDocumentSource(Path directory) throws IOException {
+            try (Stream<Path> paths = Files.list(directory)) {
+                this.files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList()).iterator();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return files.hasNext();
+        }
+
+        @Override
+        public Document next() {
+            Path file = files.next();
+            try {
+                return new Document(file.getFileName().toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class JsonLinesDocumentSource implements DocumentSource {
+
+        private final ObjectMapper mapper = new ObjectMapper();
+
+        private final BufferedReader reader;
+
+        private String nextLine;
+
+        JsonLinesDocumentSource(Path file) throws IOException {
+            this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            this.nextLine = readNextLine();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextLine != null;
+        }
+
+        @Override
+        public Document next() {
+            if (nextLine == null) {
+                throw new NoSuchElementException();
+            }
+            try {
+                Map<String, Object> row = mapper.readValue(nextLine, Map.class);
+                nextLine = readNextLine();
+                if (!row.containsKey(RequestConstants.ID_KEY) || row.get(RequestConstants.TEXT_KEY) == null) {
+                    throw new RuntimeException("Each line of the input should have an 'id' and a 'text'");
+                }
+
+                return new Document(String.valueOf(row.get(RequestConstants.ID_KEY)), String.valueOf(row.get(RequestConstants.TEXT_KEY)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        private String readNextLine() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && line.trim().isEmpty());
+
+            return line;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.persistence.bulk;
+
+import com.graphaware.nlp.configuration.DynamicConfiguration;
+import com.graphaware.nlp.domain.*;
+import com.graphaware.nlp.dsl.result.BulkImportExportResult;
+import com.graphaware.nlp.persistence.constants.Labels;
+import com.graphaware.nlp.persistence.constants.Properties;
+import com.graphaware.nlp.persistence.constants.Relationships;
+import com.graphaware.nlp.util.SentenceUtils;
+import com.graphaware.nlp.util.TagUtils;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Writes annotated texts as neo4j-admin import files reproducing the graph created by the
+ * AnnotatedText, Sentence and Tag persisters. Tags and Phrases are deduplicated over the
+ * whole export and written when the export is finished.
+ */
+class BulkImportWriter implements Closeable {
+
+    private static final String ANNOTATED_TEXT_GROUP = "AnnotatedText";
+    private static final String SENTENCE_GROUP = "Sentence";
+    private static final String TAG_GROUP = "Tag";
+    private static final String TAG_OCCURRENCE_GROUP = "TagOccurrence";
+    private static final String PHRASE_GROUP = "Phrase";
+    private static final String PHRASE_OCCURRENCE_GROUP = "PhraseOccurrence";
+    private static final String COREF = "COREF";
+    private static final String COREFERENCE = "COREFERENCE";
+    private static final String ROOT = "ROOT";
+
+    private final DynamicConfiguration configuration;
+    private final Path output;
+    private final String txId;
+
+    private final List<CsvFileWriter> writers = new ArrayList<>();
+    private final CsvFileWriter annotatedTexts;
+    private final CsvFileWriter sentences;
+    private final CsvFileWriter tagOccurrences;
+    private final CsvFileWriter phraseOccurrences;
+    private final CsvFileWriter annotatedTextSentences;
+    private final CsvFileWriter sentenceSentences;
+    private final CsvFileWriter sentenceTags;
+    private final CsvFileWriter sentenceTagOccurrences;
+    private final CsvFileWriter tagOccurrenceTags;
+    private final CsvFileWriter tagOccurrenceTagOccurrences;
+    private final CsvFileWriter sentencePhrases;
+    private final CsvFileWriter sentencePhraseOccurrences;
+    private final CsvFileWriter phraseOccurrencePhrases;
+
+    private final Map<String, TagRecord> tags = new LinkedHashMap<>();
+    private final Map<String, TagParentRecord> tagParents = new LinkedHashMap<>();
+    private final Map<String, String> phrases = new LinkedHashMap<>();
+    private final Map<String, Set<String>> phraseCoreferences = new LinkedHashMap<>();
+
+    private long nextTagOccurrenceId = 0;
+    private long nextPhraseOccurrenceId = 0;
+
+    BulkImportWriter(DynamicConfiguration configuration, Path output, String txId) throws IOException {
+        this.configuration = configuration;
+        this.output = output;
+        this.txId = txId;
+        this.annotatedTexts = open("nodes-annotatedtext.csv",
+                id(Properties.PROPERTY_ID, ANNOTATED_TEXT_GROUP),
+                property(Properties.NUM_TERMS) + ":int",
+                ":LABEL");
+        this.sentences = open("nodes-sentence.csv",
+                id(Properties.PROPERTY_ID, SENTENCE_GROUP),
+                property(Properties.SENTENCE_NUMBER) + ":int",
+                property(Properties.HASH),
+                property(Properties.TEXT),
+                ":LABEL");
+        this.tagOccurrences = open("nodes-tagoccurrence.csv",
+                ":ID(" + TAG_OCCURRENCE_GROUP + ")",
+                property(Properties.OCCURRENCE_BEGIN) + ":int",
+                property(Properties.OCCURRENCE_END) + ":int",
+                property(Properties.PART_OF_SPEECH) + ":string[]",
+                property(Properties.NAMED_ENTITY) + ":string[]",
+                property(Properties.TAG_ORIGINAL_VALUE),
+                Properties.CONFIDENCE + ":double",
+                ":LABEL");
+        this.phraseOccurrences = open("nodes-phraseoccurrence.csv",
+                ":ID(" + PHRASE_OCCURRENCE_GROUP + ")",
+                property(Properties.START_POSITION) + ":int",
+                property(Properties.END_POSITION) + ":int",
+                ":LABEL");
+        this.annotatedTextSentences = openRelationships("rels-annotatedtext-sentence.csv", ANNOTATED_TEXT_GROUP, SENTENCE_GROUP);
+        this.sentenceSentences = openRelationships("rels-sentence-sentence.csv", SENTENCE_GROUP, SENTENCE_GROUP);
+        this.sentenceTags = openRelationships("rels-sentence-tag.csv", SENTENCE_GROUP, TAG_GROUP, property(Properties.TF) + ":int");
+        this.sentenceTagOccurrences = openRelationships("rels-sentence-tagoccurrence.csv", SENTENCE_GROUP, TAG_OCCURRENCE_GROUP);
+        this.tagOccurrenceTags = openRelationships("rels-tagoccurrence-tag.csv", TAG_OCCURRENCE_GROUP, TAG_GROUP);
+        this.tagOccurrenceTagOccurrences = openRelationships("rels-tagoccurrence-tagoccurrence.csv", TAG_OCCURRENCE_GROUP, TAG_OCCURRENCE_GROUP, property(Properties.DEPENDENCY_SPECIFIC));
+        this.sentencePhrases = openRelationships("rels-sentence-phrase.csv", SENTENCE_GROUP, PHRASE_GROUP);
+        this.sentencePhraseOccurrences = openRelationships("rels-sentence-phraseoccurrence.csv", SENTENCE_GROUP, PHRASE_OCCURRENCE_GROUP);
+        this.phraseOccurrencePhrases = openRelationships("rels-phraseoccurrence-phrase.csv", PHRASE_OCCURRENCE_GROUP, PHRASE_GROUP);
+    }
+
+    void write(String id, AnnotatedText annotatedText) throws IOException {
+        annotatedTexts.write(id, annotatedText.getNumTerms(), label(Labels.AnnotatedText));
+        Map<String, Map<Long, Long>> occurrencesBySentence = new HashMap<>();
+        String previousSentenceId = null;
+        for (Sentence sentence : annotatedText.getSentencesSorted()) {
+            String sentenceId = getSentenceId(id, sentence);
+            occurrencesBySentence.put(sentenceId, writeSentence(sentence, sentenceId));
+            annotatedTextSentences.write(id, sentenceId, relationship(Relationships.CONTAINS_SENTENCE));
+            if (previousSentenceId == null) {
+                annotatedTextSentences.write(id, sentenceId, relationship(Relationships.FIRST_SENTENCE));
+            } else {
+                sentenceSentences.write(previousSentenceId, sentenceId, relationship(Relationships.NEXT_SENTENCE));
+            }
+            previousSentenceId = sentenceId;
+        }
+        writeCoreferences(id, annotatedText, occurrencesBySentence);
+    }
+
+    void finish(BulkImportExportResult result) throws IOException {
+        try (CsvFileWriter tagWriter = open("nodes-tag.csv",
+                id(Properties.PROPERTY_ID, TAG_GROUP),
+                property(Properties.CONTENT_VALUE),
+                property(Properties.LANGUAGE),
+                property(Properties.NAMED_ENTITY) + ":string[]",
+                property(Properties.PART_OF_SPEECH) + ":string[]",
+                property(Properties.LAST_TX_ID),
+                ":LABEL")) {
+            for (Map.Entry<String, TagRecord> entry : tags.entrySet()) {
+                TagRecord tag = entry.getValue();
+                List<String> labels = new ArrayList<>();
+                labels.add(label(Labels.Tag));
+                tag.ne.forEach(ne -> labels.add(property(Properties.NAMED_ENTITY_PREFIX) + TagUtils.getNamedEntityValue(ne)));
+                tagWriter.write(entry.getKey(), tag.value, tag.language, tag.ne, tag.pos, txId, labels);
+            }
+        }
+        try (CsvFileWriter parentWriter = openRelationships("rels-tag-tag.csv", TAG_GROUP, TAG_GROUP, "type", "weight:float", "source")) {
+            for (TagParentRecord parent : tagParents.values()) {
+                parentWriter.write(parent.source, parent.target, parent.relation, parent.weight, parent.origin, Relationships.IS_RELATED_TO.name());
+            }
+        }
+        try (CsvFileWriter phraseWriter = open("nodes-phrase.csv",
+                ":ID(" + PHRASE_GROUP + ")",
+                property(Properties.CONTENT_VALUE),
+                property(Properties.PHRASE_TYPE),
+                ":LABEL")) {
+            for (Map.Entry<String, String> phrase : phrases.entrySet()) {
+                phraseWriter.write(phrase.getKey(), phrase.getKey(), phrase.getValue(), label(Labels.Phrase));
+            }
+        }
+        try (CsvFileWriter coreferenceWriter = openRelationships("rels-phrase-phrase.csv", PHRASE_GROUP, PHRASE_GROUP)) {
+            for (Map.Entry<String, Set<String>> coreference : phraseCoreferences.entrySet()) {
+                for (String reference : coreference.getValue()) {
+                    if (phrases.containsKey(reference)) {
+                        coreferenceWriter.write(coreference.getKey(), reference, COREFERENCE);
+                    }
+                }
+            }
+        }
+        result.sentences = sentences.getRows();
+        result.tags = tags.size();
+        result.tagOccurrences = tagOccurrences.getRows();
+        result.phrases = phrases.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (CsvFileWriter writer : writers) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private Map<Long, Long> writeSentence(Sentence sentence, String sentenceId) throws IOException {
+        List<String> labels = new ArrayList<>();
+        labels.add(label(Labels.Sentence));
+        Label sentimentLabel = SentenceUtils.getDefaultLabelForSentimentLevel(sentence.getSentiment());
+        if (sentimentLabel != null) {
+            labels.add(label(sentimentLabel));
+        }
+        sentences.write(sentenceId, sentence.getSentenceNumber(), sentence.hash(), sentence.getSentence(), labels);
+
+        for (Tag tag : sentence.getTags().values()) {
+            sentenceTags.write(sentenceId, registerTag(tag), tag.getMultiplicity(), relationship(Relationships.HAS_TAG));
+        }
+
+        // occurrence ids are assigned first so that dependencies, and the Root label, are known when writing the nodes
+        List<TagOccurrence> occurrences = new ArrayList<>();
+        sentence.getTagOccurrences().values().forEach(occurrences::addAll);
+        long firstOccurrenceId = nextTagOccurrenceId;
+        nextTagOccurrenceId += occurrences.size();
+        Map<String, Long> tokenIdsToOccurrenceIds = new HashMap<>();
+        Map<Long, Long> spansToOccurrenceIds = new HashMap<>();
+        for (int i = 0; i < occurrences.size(); ++i) {
+            long occurrenceId = firstOccurrenceId + i;
+            occurrences.get(i).getPartIds().forEach(tokenId -> tokenIdsToOccurrenceIds.put(tokenId, occurrenceId));
+            spansToOccurrenceIds.putIfAbsent(spanKey(occurrences.get(i).getSpan()), occurrenceId);
+        }
+        Set<Long> roots = new HashSet<>();
+        List<Object[]> dependencies = new ArrayList<>();
+        for (TypedDependency dependency : sentence.getTypedDependencies()) {
+            Long source = tokenIdsToOccurrenceIds.get(dependency.getSource());
+            Long target = tokenIdsToOccurrenceIds.get(dependency.getTarget());
+            if (source == null || target == null) {
+                continue;
+            }
+            String type = dependency.getName().toUpperCase();
+            if (type.equals(ROOT)) {
+                roots.add(source);
+            }
+            dependencies.add(new Object[]{source, target, dependency.getSpecific(), type});
+        }
+
+        for (int i = 0; i < occurrences.size(); ++i) {
+            TagOccurrence occurrence = occurrences.get(i);
+            long occurrenceId = firstOccurrenceId + i;
+            String tagId = registerTag(occurrence.getElement());
+            List<String> occurrenceLabels = new ArrayList<>();
+            occurrenceLabels.add(label(Labels.TagOccurrence));
+            Double confidence = null;
+            if (occurrence.hasNamedEntity()) {
+                occurrenceLabels.add(property(Properties.NAMED_ENTITY_PREFIX_NEW) + TagUtils.getNamedEntityValue(occurrence.getElement().getNe().get(0)));
+                confidence = occurrence.getConfidence();
+            }
+            if (roots.contains(occurrenceId)) {
+                occurrenceLabels.add(label(Labels.Root));
+            }
+            tagOccurrences.write(occurrenceId,
+                    occurrence.getSpan().first(),
+                    occurrence.getSpan().second(),
+                    occurrence.getElement().getPosAsArray(),
+                    occurrence.getElement().getNeAsArray(),
+                    occurrence.getValue(),
+                    confidence,
+                    occurrenceLabels);
+            tagOccurrenceTags.write(occurrenceId, tagId, relationship(Relationships.TAG_OCCURRENCE_TAG));
+            sentenceTagOccurrences.write(sentenceId, occurrenceId, relationship(Relationships.SENTENCE_TAG_OCCURRENCE));
+        }
+        for (Object[] dependency : dependencies) {
+            tagOccurrenceTagOccurrences.write(dependency);
+        }
+
+        writePhrases(sentence, sentenceId);
+
+        return spansToOccurrenceIds;
+    }
+
+    private void writePhrases(Sentence sentence, String sentenceId) throws IOException {
+        for (Map<Integer, PartOfTextOccurrence<Phrase>> phraseOccurrencesAtPosition : sentence.getPhraseOccurrences().values()) {
+            for (PartOfTextOccurrence<Phrase> occurrence : phraseOccurrencesAtPosition.values()) {
+                Phrase phrase = occurrence.getElement();
+                phrases.put(phrase.getContent(), phrase.getType() != null ? phrase.getType() : NLPDefaultValues.PHRASE_TYPE);
+                if (phrase.getReference() != null) {
+                    phraseCoreferences.computeIfAbsent(phrase.getContent(), k -> new LinkedHashSet<>()).add(phrase.getReference().getContent());
+                }
+                long phraseOccurrenceId = nextPhraseOccurrenceId++;
+                phraseOccurrences.write(phraseOccurrenceId, occurrence.getSpan().first(), occurrence.getSpan().second(), label(Labels.PhraseOccurrence));
+                sentencePhrases.write(sentenceId, phrase.getContent(), relationship(Relationships.HAS_PHRASE));
+                sentencePhraseOccurrences.write(sentenceId, phraseOccurrenceId, relationship(Relationships.SENTENCE_PHRASE_OCCURRENCE));
+                phraseOccurrencePhrases.write(phraseOccurrenceId, phrase.getContent(), relationship(Relationships.PHRASE_OCCURRENCE_PHRASE));
+            }
+        }
+    }
+
+    private void writeCoreferences(String id, AnnotatedText annotatedText, Map<String, Map<Long, Long>> occurrencesBySentence) throws IOException {
+        Set<String> written = new HashSet<>();
+        for (Sentence sentence : annotatedText.getSentences()) {
+            for (List<TagOccurrence> occurrences : sentence.getTagOccurrences().values()) {
+                for (TagOccurrence occurrence : occurrences) {
+                    if (!occurrence.hasReference()) {
+                        continue;
+                    }
+                    Long from = getOccurrenceId(occurrencesBySentence, getSentenceId(id, sentence), occurrence);
+                    Long to = getOccurrenceId(occurrencesBySentence,
+                            getSentenceId(id, occurrence.getCoreference().getSentence()),
+                            occurrence.getCoreference().getTagOccurrence());
+                    if (from != null && to != null && written.add(from + "_" + to)) {
+                        tagOccurrenceTagOccurrences.write(from, to, null, COREF);
+                    }
+                }
+            }
+        }
+    }
+
+    private String registerTag(Tag tag) {
+        String tagId = tag.getId();
+        TagRecord record = tags.computeIfAbsent(tagId, k -> new TagRecord(tag.getLemma(), tag.getLanguage()));
+        record.ne.addAll(tag.getNe());
+        record.pos.addAll(tag.getPos());
+        for (TagParentRelation parent : tag.getParents()) {
+            String parentId = parent.getParent().getId();
+            String key = tagId + "|" + parentId + "|" + parent.getRelation();
+            if (!tagParents.containsKey(key)) {
+                tagParents.put(key, new TagParentRecord(tagId, parentId, parent.getRelation(), parent.getWeight(), parent.getSource()));
+                registerTag(parent.getParent());
+            }
+        }
+
+        return tagId;
+    }
+
+    private static Long getOccurrenceId(Map<String, Map<Long, Long>> occurrencesBySentence, String sentenceId, TagOccurrence occurrence) {
+        Map<Long, Long> spans = occurrencesBySentence.get(sentenceId);
+
+        return spans != null ? spans.get(spanKey(occurrence.getSpan())) : null;
+    }
+
+    private static String getSentenceId(String id, Sentence sentence) {
+        return String.format("%s_%s", id, sentence.getSentenceNumber());
+    }
+
+    private static long spanKey(Span span) {
+        return ((long) span.first() << 32) | (span.second() & 0xFFFFFFFFL);
+    }
+
+    private CsvFileWriter open(String fileName, String... header) throws IOException {
+        CsvFileWriter writer = new CsvFileWriter(output.resolve(fileName), header);
+        writers.add(writer);
+
+        return writer;
+    }
+
+    private CsvFileWriter openRelationships(String fileName, String startGroup, String endGroup, String... properties) throws IOException {
+        List<String> header = new ArrayList<>();
+        header.add(":START_ID(" + startGroup + ")");
+        header.add(":END_ID(" + endGroup + ")");
+        header.addAll(Arrays.asList(properties));
+        header.add(":TYPE");
+
+        return open(fileName, header.toArray(new String[0]));
+    }
+
+    private String id(String key, String group) {
+        return property(key) + ":ID(" + group + ")";
+    }
+
+    private String property(String key) {
+        return configuration.getPropertyKeyFor(key);
+    }
+
+    private String label(Label label) {
+        return configuration.getLabelFor(label).name();
+    }
+
+    private String relationship(RelationshipType relationshipType) {
+        return configuration.getRelationshipFor(relationshipType).name();
+    }
+
+    private static class TagRecord {
+
+        private final String value;
+        private final String language;
+        private final Set<String> ne = new LinkedHashSet<>();
+        private final Set<String> pos = new LinkedHashSet<>();
+
+        TagRecord(String value, String language) {
+            this.value = value;
+            this.language = language;
+        }
+    }
+
+    private static class TagParentRecord {
+
+        private final String source;
+        private final String target;
+        private final String relation;
+        private final float weight;
+        private final String origin;
+
+        TagParentRecord(String source, String target, String relation, float weight, String origin) {
+            this.source = source;
+            this.target = target;
+            this.relation = relation;
+            this.weight = weight;
+            this.origin = origin;
+        }
+    }
+}
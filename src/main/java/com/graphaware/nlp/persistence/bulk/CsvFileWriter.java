@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.persistence.bulk;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+/**
+ * Writes a CSV file in the default format expected by neo4j-admin import : comma separated
+ * fields, strings quoted with double quotes and array elements separated by ';'.
+ */
+class CsvFileWriter implements Closeable {
+
+    static final String ARRAY_DELIMITER = ";";
+
+    private final BufferedWriter writer;
+
+    private long rows = 0;
+
+    CsvFileWriter(Path path, String... header) throws IOException {
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        writer.write(String.join(",", header));
+        writer.newLine();
+    }
+
+    void write(Object... values) throws IOException {
+        for (int i = 0; i < values.length; ++i) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(format(values[i]));
+        }
+        writer.newLine();
+        rows++;
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private static String format(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof String[]) {
+            return quote(String.join(ARRAY_DELIMITER, (String[]) value));
+        }
+        if (value instanceof Collection) {
+            return quote(((Collection<?>) value).stream().map(String::valueOf).collect(Collectors.joining(ARRAY_DELIMITER)));
+        }
+
+        return quote(value.toString());
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -19,6 +19,7 @@ import com.graphaware.nlp.NLPManager;
 import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
 import com.graphaware.nlp.configuration.DynamicConfiguration;
+import com.graphaware.nlp.configuration.SettingsConstants;
 import com.graphaware.nlp.persistence.PersistenceRegistry;
 import org.codehaus.jackson.map.SerializationConfig;
 import org.neo4j.graphdb.*;
@@ -52,6 +53,16 @@ public abstract class AbstractPersister {
         return manager.getConfiguration();
     }
 
+    /**
+     * When enabled, shared nodes (Tag, Phrase) are only written when their content changes, so that concurrent
+     * transactions touching the same popular tags do not contend on their write locks.
+     */
+    protected boolean writeSharedNodesOnChangeOnly() {
+        Object value = configuration().getSettingValueFor(SettingsConstants.WRITE_SHARED_NODES_ON_CHANGE_ONLY);
+
+        return value != null && Boolean.valueOf(value.toString());
+    }
+
     protected ObjectMapper mapper() {
         return mapper;
     }
@@ -19,15 +19,22 @@ import com.graphaware.common.log.LoggerFactory;
 import com.graphaware.nlp.domain.AnnotatedText;
 import com.graphaware.nlp.domain.Sentence;
 import com.graphaware.nlp.persistence.PersistenceRegistry;
+import com.graphaware.nlp.persistence.PersistenceSession;
 import com.graphaware.nlp.persistence.constants.Labels;
 import com.graphaware.nlp.persistence.constants.Properties;
 import com.graphaware.nlp.persistence.constants.Relationships;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.logging.Log;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 public class AnnotatedTextPersister extends AbstractPersister implements Persister<AnnotatedText> {
 
@@ -44,6 +51,10 @@ public class AnnotatedTextPersister extends AbstractPersister implements Persist
 
     @Override
     public Node persist(AnnotatedText annotatedText, String id, String txId) {
+        return persist(annotatedText, id, txId, new PersistenceSession());
+    }
+
+    public Node persist(AnnotatedText annotatedText, String id, String txId, PersistenceSession session) {
         LOG.info("Start storing annotatedText " + id);
         long startTime = -System.currentTimeMillis();
         Node tmpAnnotatedNode = getIfExist(configuration().getLabelFor(Labels.AnnotatedText), Properties.PROPERTY_ID, id);
@@ -54,13 +65,73 @@ public class AnnotatedTextPersister extends AbstractPersister implements Persist
             annotatedTextNode = getOrCreate(annotatedText, id, txId);
 
         }
-        iterateSentencesAndStore(annotatedTextNode, annotatedText, id, txId);
+        iterateSentencesAndStore(annotatedTextNode, annotatedText, id, txId, session);
         tmpAnnotatedNode = annotatedTextNode;
 
         LOG.info("end storing annotatedText " + id + ". It took: " + (System.currentTimeMillis() + startTime));
         return tmpAnnotatedNode;
     }
 
+    /**
+     * Re-persists an already stored annotated text. Stored sentences are matched by hash wherever they
+     * moved in the text, kept ones are renumbered and their occurrence offsets shifted, the edited and
+     * added sentences are written and the removed ones deleted.
+     */
+    public Node persistIncremental(AnnotatedText annotatedText, String id, String txId, PersistenceSession session) {
+        Node annotatedTextNode = getIfExist(configuration().getLabelFor(Labels.AnnotatedText), Properties.PROPERTY_ID, id);
+        if (annotatedTextNode == null) {
+            return persist(annotatedText, id, txId, session);
+        }
+        LOG.info("Start incremental storing of annotatedText " + id);
+        long startTime = -System.currentTimeMillis();
+        Map<String, List<Node>> storedSentences = new HashMap<>();
+        for (Relationship relationship : annotatedTextNode.getRelationships(configuration().getRelationshipFor(Relationships.CONTAINS_SENTENCE), Direction.OUTGOING)) {
+            Node sentenceNode = relationship.getEndNode();
+            storedSentences.computeIfAbsent(String.valueOf(sentenceNode.getProperty(configuration().getPropertyKeyFor(Properties.HASH), "")), k -> new ArrayList<>())
+                    .add(sentenceNode);
+        }
+
+        List<Sentence> sentences = annotatedText.getSentencesSorted();
+        Node[] keptSentences = new Node[sentences.size()];
+        for (int i = 0; i < sentences.size(); i++) {
+            keptSentences[i] = takeStoredSentence(storedSentences.get(sentences.get(i).hash()), sentences.get(i).getSentenceNumber());
+        }
+        int removed = 0;
+        for (List<Node> unmatched : storedSentences.values()) {
+            unmatched.forEach(this::deleteSentence);
+            removed += unmatched.size();
+        }
+
+        SentencePersister sentencePersister = (SentencePersister) getPersister(Sentence.class);
+        // sentence ids are unique, moved sentences give up their old id before any is renumbered
+        for (Node keptSentence : keptSentences) {
+            if (keptSentence != null) {
+                keptSentence.setProperty(configuration().getPropertyKeyFor(Properties.PROPERTY_ID), id + "_moving_" + keptSentence.getId());
+            }
+        }
+        List<Node> sentenceNodes = new ArrayList<>();
+        int rewritten = 0;
+        for (int i = 0; i < sentences.size(); i++) {
+            Sentence sentence = sentences.get(i);
+            Node sentenceNode = keptSentences[i];
+            if (sentenceNode != null) {
+                sentencePersister.update(sentenceNode, sentence, id);
+                shiftOccurrences(sentenceNode, sentence);
+            } else {
+                sentenceNode = sentencePersister.persist(sentence, id, txId, session);
+                annotatedTextNode.createRelationshipTo(sentenceNode, configuration().getRelationshipFor(Relationships.CONTAINS_SENTENCE));
+                rewritten++;
+            }
+            sentenceNodes.add(sentenceNode);
+        }
+        relinkSentences(annotatedTextNode, sentenceNodes);
+        annotatedTextNode.setProperty(configuration().getPropertyKeyFor(Properties.NUM_TERMS), annotatedText.getNumTerms());
+
+        LOG.info("end incremental storing of annotatedText " + id + ", " + rewritten + " sentences written and "
+                + removed + " removed. It took: " + (System.currentTimeMillis() + startTime));
+        return annotatedTextNode;
+    }
+
     @Override
     public AnnotatedText fromNode(Node node, Object... properties) {
         if (!node.hasLabel(configuration().getLabelFor(Labels.AnnotatedText))) {
@@ -95,11 +166,12 @@ public class AnnotatedTextPersister extends AbstractPersister implements Persist
 
     }
 
-    private void iterateSentencesAndStore(Node annotatedTextNode, AnnotatedText annotatedText, String id, String txId) {
+    private void iterateSentencesAndStore(Node annotatedTextNode, AnnotatedText annotatedText, String id, String txId, PersistenceSession session) {
+        SentencePersister sentencePersister = (SentencePersister) getPersister(Sentence.class);
         final AtomicReference<Node> previousSentenceReference = new AtomicReference<>();
         annotatedText.getSentences().sort((Sentence o1, Sentence o2) -> o1.compareTo(o2));
         annotatedText.getSentences().forEach((sentence) -> {
-            Node sentenceNode = getPersister(Sentence.class).persist(sentence, id, txId);
+            Node sentenceNode = sentencePersister.persist(sentence, id, txId, session);
             Node previousSentence = previousSentenceReference.get();
             boolean isFirstSentence = previousSentence == null;
             relateSentenceToAnnotatedText(sentenceNode, annotatedTextNode, isFirstSentence);
@@ -122,4 +194,86 @@ public class AnnotatedTextPersister extends AbstractPersister implements Persist
     private void relatePreviousSentenceToNext(Node previous, Node next) {
         previous.createRelationshipTo(next, configuration().getRelationshipFor(Relationships.NEXT_SENTENCE));
     }
+
+    private void relinkSentences(Node annotatedTextNode, List<Node> sentenceNodes) {
+        annotatedTextNode.getRelationships(configuration().getRelationshipFor(Relationships.FIRST_SENTENCE), Direction.OUTGOING)
+                .forEach(Relationship::delete);
+        Node previous = null;
+        for (Node sentenceNode : sentenceNodes) {
+            if (previous == null) {
+                annotatedTextNode.createRelationshipTo(sentenceNode, configuration().getRelationshipFor(Relationships.FIRST_SENTENCE));
+            } else if (!relationshipExistBetween(previous, sentenceNode, configuration().getRelationshipFor(Relationships.NEXT_SENTENCE))) {
+                previous.getRelationships(configuration().getRelationshipFor(Relationships.NEXT_SENTENCE), Direction.OUTGOING)
+                        .forEach(Relationship::delete);
+                relatePreviousSentenceToNext(previous, sentenceNode);
+            }
+            previous = sentenceNode;
+        }
+        if (previous != null) {
+            previous.getRelationships(configuration().getRelationshipFor(Relationships.NEXT_SENTENCE), Direction.OUTGOING)
+                    .forEach(Relationship::delete);
+        }
+    }
+
+    private Node takeStoredSentence(List<Node> candidates, int sentenceNumber) {
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        // repeated sentences keep the stored node with the same number when there is one
+        for (Node candidate : candidates) {
+            if (((Number) candidate.getProperty(configuration().getPropertyKeyFor(Properties.SENTENCE_NUMBER))).intValue() == sentenceNumber) {
+                candidates.remove(candidate);
+                return candidate;
+            }
+        }
+
+        return candidates.remove(0);
+    }
+
+    private void shiftOccurrences(Node sentenceNode, Sentence sentence) {
+        List<Node> occurrences = new ArrayList<>();
+        sentenceNode.getRelationships(Direction.OUTGOING,
+                configuration().getRelationshipFor(Relationships.SENTENCE_TAG_OCCURRENCE),
+                configuration().getRelationshipFor(Relationships.SENTENCE_PHRASE_OCCURRENCE))
+                .forEach(relationship -> occurrences.add(relationship.getEndNode()));
+        String startKey = configuration().getPropertyKeyFor(Properties.START_POSITION);
+        String endKey = configuration().getPropertyKeyFor(Properties.END_POSITION);
+        Integer storedStart = occurrences.stream()
+                .filter(occurrence -> occurrence.hasProperty(startKey))
+                .map(occurrence -> ((Number) occurrence.getProperty(startKey)).intValue())
+                .min(Integer::compare)
+                .orElse(null);
+        Integer start = Stream.concat(sentence.getTagOccurrences().keySet().stream(), sentence.getPhraseOccurrences().keySet().stream())
+                .min(Integer::compare)
+                .orElse(null);
+        if (storedStart == null || start == null || start.equals(storedStart)) {
+            return;
+        }
+        int offset = start - storedStart;
+        occurrences.forEach(occurrence -> {
+            if (occurrence.hasProperty(startKey)) {
+                occurrence.setProperty(startKey, ((Number) occurrence.getProperty(startKey)).intValue() + offset);
+            }
+            if (occurrence.hasProperty(endKey)) {
+                occurrence.setProperty(endKey, ((Number) occurrence.getProperty(endKey)).intValue() + offset);
+            }
+        });
+    }
+
+    private void deleteSentence(Node sentenceNode) {
+        List<Node> occurrences = new ArrayList<>();
+        sentenceNode.getRelationships(Direction.OUTGOING,
+                configuration().getRelationshipFor(Relationships.SENTENCE_TAG_OCCURRENCE),
+                configuration().getRelationshipFor(Relationships.SENTENCE_PHRASE_OCCURRENCE))
+                .forEach(relationship -> occurrences.add(relationship.getEndNode()));
+        occurrences.forEach(this::detachDelete);
+        detachDelete(sentenceNode);
+    }
+
+    private void detachDelete(Node node) {
+        List<Relationship> relationships = new ArrayList<>();
+        node.getRelationships().forEach(relationships::add);
+        relationships.forEach(Relationship::delete);
+        node.delete();
+    }
 }
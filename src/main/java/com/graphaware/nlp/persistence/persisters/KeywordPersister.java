@@ -53,12 +53,20 @@ public class KeywordPersister extends AbstractPersister implements Persister<Key
 
     @Override
     public Node getOrCreate(Keyword keyword, String id, String txId) {
+        return getOrCreate(keyword, id, txId, keywordLabel);
+    }
+
+    /**
+     * Same as {@link #getOrCreate(Keyword, String, String)} with the given label, leaving the one of the shared
+     * persister untouched.
+     */
+    public Node getOrCreate(Keyword keyword, String id, String txId, Label label) {
         Node newNode;
-        Node storedKeyword = getIfExist(keywordLabel, "id", keyword.getKeyword());
+        Node storedKeyword = getIfExist(label, "id", keyword.getKeyword());
         if (storedKeyword != null) {
             newNode = storedKeyword;
         } else {
-            newNode = database.createNode(keywordLabel);
+            newNode = database.createNode(label);
             update(newNode, keyword, id);
         }
         return newNode;
@@ -17,6 +17,7 @@ package com.graphaware.nlp.persistence.persisters;
 
 import com.graphaware.nlp.domain.*;
 import com.graphaware.nlp.persistence.PersistenceRegistry;
+import com.graphaware.nlp.persistence.PersistenceSession;
 import com.graphaware.nlp.persistence.constants.Labels;
 import com.graphaware.nlp.persistence.constants.Properties;
 import com.graphaware.nlp.persistence.constants.Relationships;
@@ -35,6 +36,10 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
 
     @Override
     public Node persist(Sentence sentence, String id, String txId) {
+        return persist(sentence, id, txId, new PersistenceSession());
+    }
+
+    public Node persist(Sentence sentence, String id, String txId, PersistenceSession session) {
         Node sentenceNode = get(sentence, id);
         Node newSentenceNode;
         if (sentenceNode == null) {
@@ -43,12 +48,12 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
             newSentenceNode = sentenceNode;
         }
         update(newSentenceNode, sentence, id);
-        storeSentenceTags(sentence, newSentenceNode, id, txId);
-        storeSentenceTagOccurrences(sentence, newSentenceNode, txId);
-        storeUniversalDependenciesForSentence(sentence, newSentenceNode);
+        storeSentenceTags(sentence, newSentenceNode, id, txId, session);
+        Map<String, Long> tokenIdsToNodeIds = storeSentenceTagOccurrences(sentence, newSentenceNode, id, txId, session);
+        storeUniversalDependenciesForSentence(sentence, tokenIdsToNodeIds);
         storePhrases(sentence, newSentenceNode, txId);
         storeCoreferences(sentence);
-        storeCorefOptimized(sentence, id);
+        storeCorefOptimized(sentence, id, session);
         assignSentimentLabel(sentence, newSentenceNode);
         sentenceNode = newSentenceNode;
 
@@ -94,9 +99,10 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
         node.setProperty(configuration().getPropertyKeyFor(Properties.TEXT), sentence.getSentence());
     }
 
-    private void storeSentenceTags(Sentence sentence, Node sentenceNode, String id, String txId) {
+    private void storeSentenceTags(Sentence sentence, Node sentenceNode, String id, String txId, PersistenceSession session) {
+        TagPersister tagPersister = (TagPersister) getPersister(Tag.class);
         sentence.getTags().values().forEach(tag -> {
-            Node tagNode = getPersister(Tag.class).getOrCreate(tag, id, txId);
+            Node tagNode = tagPersister.getOrCreate(tag, id, txId, session);
             relateSentenceToTag(sentenceNode, tagNode, tag.getMultiplicity());
         });
     }
@@ -118,15 +124,25 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
         });
     }
 
-    private void storeSentenceTagOccurrences(Sentence sentence, Node sentenceNode, String txId) {
+    private Map<String, Long> storeSentenceTagOccurrences(Sentence sentence, Node sentenceNode, String id, String txId, PersistenceSession session) {
+        final Map<String, Long> tokenIdsToNodeIds = new HashMap<>();
+        final String sentenceId = getSentenceId(sentence, id);
+        session.clearTagOccurrenceNodes(sentenceId);
+        TagPersister tagPersister = (TagPersister) getPersister(Tag.class);
         sentence.getTagOccurrences().values().forEach(occurrence -> {
             for (TagOccurrence tagAtPosition : occurrence) {
-                Node tagNode = getPersister(Tag.class).getOrCreate(tagAtPosition.getElement(), null, txId);
+                Node tagNode = tagPersister.getOrCreate(tagAtPosition.getElement(), null, txId, session);
                 Node tagOccurrenceNode = createTagOccurrenceNode(tagAtPosition);
                 relateTagOccurrenceToTag(tagOccurrenceNode, tagNode);
                 relateSentenceToTagOccurrence(sentenceNode, tagOccurrenceNode);
+                session.registerTagOccurrenceNode(sentenceId, tagAtPosition.getSpan(), tagOccurrenceNode.getId());
+                tagAtPosition.getPartIds().forEach(tokenId -> {
+                    tokenIdsToNodeIds.put(tokenId, tagOccurrenceNode.getId());
+                });
             }
         });
+
+        return tokenIdsToNodeIds;
     }
 
     private void relateSentenceToTagOccurrence(Node sentenceNode, Node tagOccurrenceNode) {
@@ -153,20 +169,7 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
         tagOccurrence.createRelationshipTo(tag, configuration().getRelationshipFor(Relationships.TAG_OCCURRENCE_TAG));
     }
 
-    private void storeUniversalDependenciesForSentence(Sentence sentence, Node sentenceNode) {
-        final Map<String, Long> tokenIdsToNodeIds = new HashMap<>();
-        sentence.getTagOccurrences().values().forEach(occurence -> {
-            occurence.forEach(tagOccurrence -> {
-                Node tagOccurrenceNode = getTagOccurrenceInSentence(sentenceNode, tagOccurrence);
-                if (tagOccurrenceNode == null) {
-                    throw new RuntimeException("Expected to find a TagOccurrence node, got null");
-                }
-                tagOccurrence.getPartIds().forEach(tokenId -> {
-                    tokenIdsToNodeIds.put(tokenId, tagOccurrenceNode.getId());
-                });
-            });
-        });
-
+    private void storeUniversalDependenciesForSentence(Sentence sentence, Map<String, Long> tokenIdsToNodeIds) {
         sentence.getTypedDependencies().forEach(typedDependency -> {
             if (!tokenIdsToNodeIds.containsKey(typedDependency.getSource()) || !tokenIdsToNodeIds.containsKey(typedDependency.getTarget())) {
 //                LOG.info("source: {} or target: {} for typed dependency not found", typedDependency.getSource(), typedDependency.getTarget());
@@ -190,13 +193,12 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
         }
     }
 
-    private void storeCorefOptimized(Sentence sentence, String id) {
+    private void storeCorefOptimized(Sentence sentence, String id, PersistenceSession session) {
         sentence.getTagOccurrences().values().forEach(tagOccurrences -> {
             tagOccurrences.forEach(tagOccurrence -> {
                 if (tagOccurrence.hasReference()) {
-                    Node sentenceNode = get(sentence, id);
-                    Node occurrenceFrom = getTagOccurrenceInSentence(sentenceNode, tagOccurrence);
-                    Node occurrenceTo = getTagOccurrenceInSentence(get(tagOccurrence.getCoreference().getSentence(), id), tagOccurrence.getCoreference().getTagOccurrence());
+                    Node occurrenceFrom = getTagOccurrenceNode(sentence, tagOccurrence, id, session);
+                    Node occurrenceTo = getTagOccurrenceNode(tagOccurrence.getCoreference().getSentence(), tagOccurrence.getCoreference().getTagOccurrence(), id, session);
                     if (occurrenceFrom != null && occurrenceTo != null) {
                         boolean shouldCreate = true;
                         for (Relationship relationship : occurrenceFrom.getRelationships(RelationshipType.withName("COREF"), Direction.OUTGOING)) {
@@ -222,6 +224,17 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
         sentenceNode.addLabel(configuration().getLabelFor(sentimentLabel));
     }
 
+    private Node getTagOccurrenceNode(Sentence sentence, TagOccurrence tagOccurrence, String id, PersistenceSession session) {
+        Long nodeId = session.getTagOccurrenceNodeId(getSentenceId(sentence, id), tagOccurrence.getSpan());
+        if (nodeId != null) {
+            return database.getNodeById(nodeId);
+        }
+        // the sentence has not been stored in this session, fallback to the graph
+        Node sentenceNode = get(sentence, id);
+
+        return sentenceNode != null ? getTagOccurrenceInSentence(sentenceNode, tagOccurrence) : null;
+    }
+
     private Node getTagOccurrenceInSentence(Node sentenceNode, TagOccurrence tagOccurrence) {
         for (Relationship relationship : sentenceNode.getRelationships(configuration().getRelationshipFor(Relationships.SENTENCE_TAG_OCCURRENCE), Direction.OUTGOING)) {
             Node otherNode = relationship.getEndNode();
@@ -263,7 +276,7 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
         if (node == null) {
             node = database.createNode(configuration().getLabelFor(Labels.Phrase));
             updatePhrase(phrase, node);
-        } else {
+        } else if (!writeSharedNodesOnChangeOnly() || !getPhraseType(phrase).equals(node.getProperty(configuration().getPropertyKeyFor(Properties.PHRASE_TYPE), null))) {
             updatePhrase(phrase, node);
         }
 
@@ -297,8 +310,11 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
 
     private void updatePhrase(Phrase phrase, Node phraseNode) {
         phraseNode.setProperty(configuration().getPropertyKeyFor(Properties.CONTENT_VALUE), phrase.getContent());
-        String type = phrase.getType() != null ? phrase.getType() : NLPDefaultValues.PHRASE_TYPE;
-        phraseNode.setProperty(configuration().getPropertyKeyFor(Properties.PHRASE_TYPE), type);
+        phraseNode.setProperty(configuration().getPropertyKeyFor(Properties.PHRASE_TYPE), getPhraseType(phrase));
+    }
+
+    private String getPhraseType(Phrase phrase) {
+        return phrase.getType() != null ? phrase.getType() : NLPDefaultValues.PHRASE_TYPE;
     }
 
     @Override
@@ -307,9 +323,13 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
     }
 
     private Node get(Sentence sentence, String id) {
-        String sentenceId = String.format("%s_%s", id, sentence.getSentenceNumber());
+        String sentenceId = getSentenceId(sentence, id);
         Node sentenceNode = getIfExist(configuration().getLabelFor(Labels.Sentence), configuration().getPropertyKeyFor(Properties.PROPERTY_ID), sentenceId);
 
         return sentenceNode;
     }
+
+    private static String getSentenceId(Sentence sentence, String id) {
+        return String.format("%s_%s", id, sentence.getSentenceNumber());
+    }
 }
@@ -19,15 +19,18 @@ import com.graphaware.nlp.NLPManager;
 import com.graphaware.nlp.domain.Tag;
 import com.graphaware.nlp.domain.VectorContainer;
 import com.graphaware.nlp.persistence.PersistenceRegistry;
+import com.graphaware.nlp.persistence.PersistenceSession;
 import com.graphaware.nlp.persistence.constants.Labels;
 import com.graphaware.nlp.persistence.constants.Properties;
 import com.graphaware.nlp.persistence.constants.Relationships;
 import com.graphaware.nlp.util.TagUtils;
 import com.graphaware.nlp.util.TypeConverter;
 import com.graphaware.nlp.vector.VectorHandler;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 
 import java.util.*;
 
@@ -65,13 +68,35 @@ public class TagPersister extends AbstractPersister implements Persister<Tag> {
 
     @Override
     public Node getOrCreate(Tag tag, String id, String txId) {
-        Node node = getIfExist(
-                configuration().getLabelFor(configuration().getLabelFor(Labels.Tag)),
-                configuration().getPropertyKeyFor(configuration().getPropertyKeyFor(Properties.PROPERTY_ID)),
-                tag.getId());
+        return getOrCreate(tag, id, txId, new PersistenceSession());
+    }
+
+    public Node getOrCreate(Tag tag, String id, String txId, PersistenceSession session) {
+        Long nodeId = session.getTagNodeId(tag.getId());
+        Node node;
+        boolean created = false;
+        if (nodeId != null) {
+            node = database.getNodeById(nodeId);
+            if (!session.markTagProcessed(tag)) {
+                return node;
+            }
+        } else {
+            node = getIfExist(
+                    configuration().getLabelFor(configuration().getLabelFor(Labels.Tag)),
+                    configuration().getPropertyKeyFor(configuration().getPropertyKeyFor(Properties.PROPERTY_ID)),
+                    tag.getId());
+
+            if (null == node) {
+                node = database.createNode(configuration().getLabelFor(Labels.Tag));
+                created = true;
+            }
+            session.registerTagNode(tag.getId(), node.getId());
+            session.markTagProcessed(tag);
+        }
 
-        if (null == node) {
-            node = database.createNode(configuration().getLabelFor(Labels.Tag));
+        if (writeSharedNodesOnChangeOnly()) {
+            storeTagChanges(node, tag, txId, session, created);
+            return node;
         }
 
         if (shouldBeUpdated(tag, node)) {
@@ -85,11 +110,39 @@ public class TagPersister extends AbstractPersister implements Persister<Tag> {
             assignNamedEntityOnTag(node, tag);
             assignPartOfSpeechOnTag(node, tag);
             setLastTransaction(node, txId);
-            storeTagParent(node, tag, txId);
+            storeTagParent(node, tag, txId, session);
         }
         return node;
     }
 
+    private void storeTagChanges(Node node, Tag tag, String txId, PersistenceSession session, boolean created) {
+        // The in-memory session replaces the lastTxId check, existing nodes are only read unless something is new
+        if (created) {
+            update(node, tag, tag.getId());
+            setLastTransaction(node, txId);
+        }
+        if (created || hasNewValues(node, Properties.NAMED_ENTITY, tag.getNe())) {
+            assignNamedEntityOnTag(node, tag);
+        }
+        if (created || hasNewValues(node, Properties.PART_OF_SPEECH, tag.getPos())) {
+            assignPartOfSpeechOnTag(node, tag);
+        }
+        if (tag.getExtraProperties().keySet().stream().anyMatch(k -> !node.hasProperty(k))) {
+            storeExtraProperties(tag, node);
+        }
+        storeTagParent(node, tag, txId, session);
+    }
+
+    private boolean hasNewValues(Node tagNode, String property, List<String> values) {
+        String[] stored = (String[]) tagNode.getProperty(configuration().getPropertyKeyFor(property), null);
+        if (stored == null) {
+            return true;
+        }
+        List<String> original = Arrays.asList(stored);
+
+        return values.stream().anyMatch(value -> !original.contains(value));
+    }
+
     private boolean shouldBeUpdated(Tag tag, Node tagNode) {
         if (tagNode.hasProperty(configuration().getPropertyKeyFor(Properties.PART_OF_SPEECH))) {
             String[] pos = (String[]) tagNode.getProperty(configuration().getPropertyKeyFor(Properties.PART_OF_SPEECH));
@@ -172,7 +225,7 @@ public class TagPersister extends AbstractPersister implements Persister<Tag> {
             if (entry.getValue() instanceof VectorHandler) {
                 VectorPersister persister = NLPManager.getInstance().getPersister(VectorContainer.class);
                 VectorHandler vectorHandler = (VectorHandler) entry.getValue();
-                persister.storeVector(tagNode, entry.getKey(), vectorHandler.getType(), vectorHandler.getArray(), Optional.empty());
+                persister.storeVector(tagNode, entry.getKey(), vectorHandler, Optional.empty());
             } else {
                 tagNode.setProperty(entry.getKey(), entry.getValue());
             }
@@ -180,11 +233,14 @@ public class TagPersister extends AbstractPersister implements Persister<Tag> {
         }
     }
 
-    private void storeTagParent(Node tagNode, Tag tag, String txId) {
+    private void storeTagParent(Node tagNode, Tag tag, String txId, PersistenceSession session) {
         if (tag.getParents() != null) {
             tag.getParents().stream().forEach((tagRelationship) -> {
                 Tag parent = tagRelationship.getParent();
-                Node parentTagNode = getOrCreate(parent, parent.getId(), txId);
+                Node parentTagNode = getOrCreate(parent, parent.getId(), txId, session);
+                if (writeSharedNodesOnChangeOnly() && tagRelationExists(tagNode, parentTagNode, tagRelationship.getRelation())) {
+                    return;
+                }
                 long sourceId = tagNode.getId();
                 long targetId = parentTagNode.getId();
                 //@todo mode type and weight to config constants
@@ -208,6 +264,17 @@ public class TagPersister extends AbstractPersister implements Persister<Tag> {
         }
     }
 
+    private boolean tagRelationExists(Node tagNode, Node parentTagNode, String type) {
+        for (Relationship relationship : tagNode.getRelationships(Relationships.IS_RELATED_TO, Direction.OUTGOING)) {
+            if (relationship.getEndNodeId() == parentTagNode.getId()
+                    && Objects.equals(type, relationship.getProperty("type", null))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     private void checkNodeIsATag(Node tagNode) {
         Map<String, Object> allProperties = tagNode.getAllProperties();
         assert (tagNode.hasLabel(configuration().getLabelFor(Labels.Tag)));
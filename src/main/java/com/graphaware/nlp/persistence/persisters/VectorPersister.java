@@ -23,6 +23,7 @@ import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.vector.SparseVector;
 import com.graphaware.nlp.vector.VectorFactory;
 import com.graphaware.nlp.vector.VectorHandler;
 
@@ -46,7 +47,13 @@ public class VectorPersister extends AbstractPersister implements Persister<Vect
         String basePropertyname = (String)properties[0];
         String type = (String)node.getProperty(getTypePropertyName(basePropertyname));
         float[] vector = (float[]) node.getProperty(getArrayPropertyName(basePropertyname));
-        VectorHandler createVector = VectorFactory.createVector(type, vector);
+        VectorHandler createVector;
+        if (node.hasProperty(getIndexPropertyName(basePropertyname))) {
+            long[] index = (long[]) node.getProperty(getIndexPropertyName(basePropertyname));
+            createVector = new VectorHandler(new SparseVector(index, vector));
+        } else {
+            createVector = VectorFactory.createVector(type, vector);
+        }
         return new VectorContainer(node.getId(), basePropertyname, createVector);
     }
 
@@ -69,11 +76,24 @@ public class VectorPersister extends AbstractPersister implements Persister<Vect
         if (null == node) {
             throw new RuntimeException("Node should exist to store a vector");
         }
-        storeVector(node, object.getPropertyName(), object.getVectorHandler().getType(), object.getVectorHandler().getArray(), Optional.ofNullable(label));
+        storeVector(node, object.getPropertyName(), object.getVectorHandler(), Optional.ofNullable(label));
         
         return node;
     }
 
+    /**
+     * Sparse vectors are stored as an id array and a value array, so that ids are not rounded to float.
+     */
+    public void storeVector(Node node, String propertyName, VectorHandler vectorHandler, Optional<String> label) {
+        if (vectorHandler.getVector() instanceof SparseVector) {
+            SparseVector vector = (SparseVector) vectorHandler.getVector();
+            storeVector(node, propertyName, vectorHandler.getType(), vector.getValuesArray(), label);
+            node.setProperty(getIndexPropertyName(propertyName), vector.getIndexArray());
+        } else {
+            storeVector(node, propertyName, vectorHandler.getType(), vectorHandler.getArray(), label);
+        }
+    }
+
     public void storeVector(Node node, String propertyName, String type, float[] vector, Optional<String> label) {
         Label vectorContainerLabel;
         if (label.isPresent()) {
@@ -84,14 +104,23 @@ public class VectorPersister extends AbstractPersister implements Persister<Vect
         node.addLabel(vectorContainerLabel);
         node.setProperty(getTypePropertyName(propertyName), type);
         node.setProperty(getArrayPropertyName(propertyName), vector);
+        node.removeProperty(getIndexPropertyName(propertyName));
+    }
+
+    public boolean hasVector(Node node, String propertyName) {
+        return node.hasProperty(getTypePropertyName(propertyName)) && node.hasProperty(getArrayPropertyName(propertyName));
+    }
+
+    public static String getArrayPropertyName(String basePropertyname) {
+        return basePropertyname + "_array";
     }
 
     private static String getTypePropertyName(String basePropertyname) {
         return basePropertyname + "_type";
     }
     
-    private static String getArrayPropertyName(String basePropertyname) {
-        return basePropertyname + "_array";
+    private static String getIndexPropertyName(String basePropertyname) {
+        return basePropertyname + "_index";
     }
 
     @Override
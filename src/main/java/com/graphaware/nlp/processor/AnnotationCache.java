@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.graphaware.nlp.domain.AnnotatedText;
+import com.graphaware.nlp.dsl.request.PipelineSpecification;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of annotation results keyed by pipeline name, pipeline version and text. The cached
+ * {@link AnnotatedText} instances are shared, callers must not modify them.
+ */
+public class AnnotationCache {
+
+    public static final long DEFAULT_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_TTL_SECONDS = 3600;
+
+    // Rough estimate of the footprint of one annotated token (tag, occurrence, NE and POS lists)
+    private static final int BYTES_PER_TOKEN = 512;
+
+    private final Cache<Key, AnnotatedText> cache;
+
+    public AnnotationCache() {
+        this(DEFAULT_MAX_ENTRIES, 0, DEFAULT_TTL_SECONDS);
+    }
+
+    /**
+     * @param maxEntries maximum number of cached annotations, used when maxBytes is not positive
+     * @param maxBytes   maximum estimated size of the cached annotations, 0 to bound by entries
+     * @param ttlSeconds time to live of an entry after its creation, 0 for no expiration
+     */
+    public AnnotationCache(long maxEntries, long maxBytes, long ttlSeconds) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+        if (maxBytes > 0) {
+            builder.maximumWeight(maxBytes)
+                    .weigher((Key key, AnnotatedText value) -> estimateSize(key, value));
+        } else {
+            builder.maximumSize(maxEntries);
+        }
+        if (ttlSeconds > 0) {
+            builder.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS);
+        }
+        this.cache = builder.build();
+    }
+
+    public AnnotatedText get(String text, PipelineSpecification pipelineSpecification, long pipelineVersion, Supplier<AnnotatedText> annotator) {
+        try {
+            return cache.get(new Key(pipelineSpecification.getName(), pipelineVersion, text), annotator::get);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public void invalidate(String pipelineName) {
+        cache.asMap().keySet().removeIf(key -> key.pipeline.equals(pipelineName));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("size", cache.size());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("averageLoadPenaltyMillis", stats.averageLoadPenalty() / 1_000_000d);
+
+        return result;
+    }
+
+    private static int estimateSize(Key key, AnnotatedText annotatedText) {
+        long size = 2L * key.text.length() + (long) BYTES_PER_TOKEN * annotatedText.getNumTerms();
+
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    private static class Key {
+
+        private final String pipeline;
+        private final long version;
+        private final String text;
+        private final int hash;
+
+        Key(String pipeline, long version, String text) {
+            this.pipeline = pipeline;
+            this.version = version;
+            this.text = text;
+            this.hash = Objects.hash(pipeline, version, text);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+
+            return version == key.version && hash == key.hash && pipeline.equals(key.pipeline) && text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -45,12 +45,30 @@ public class TextProcessorsManager {
 
     private String supportedLanguage;
 
+    private final AnnotationCache annotationCache;
+
     public TextProcessorsManager(DynamicConfiguration configuration) {
         this.configuration = configuration;
+        this.annotationCache = createAnnotationCache();
         loadTextProcessors();
         initiateTextProcessors();
     }
 
+    private AnnotationCache createAnnotationCache() {
+        return new AnnotationCache(
+                getLongSetting(SettingsConstants.ANNOTATION_CACHE_MAX_ENTRIES, AnnotationCache.DEFAULT_MAX_ENTRIES),
+                getLongSetting(SettingsConstants.ANNOTATION_CACHE_MAX_BYTES, 0),
+                getLongSetting(SettingsConstants.ANNOTATION_CACHE_TTL_SECONDS, AnnotationCache.DEFAULT_TTL_SECONDS));
+    }
+
+    private long getLongSetting(String key, long defaultValue) {
+        if (configuration == null || !configuration.hasSettingValue(key)) {
+            return defaultValue;
+        }
+
+        return Long.valueOf(configuration.getSettingValueFor(key).toString());
+    }
+
     private void loadTextProcessors() {
         Map<String, TextProcessor> loadedInstances = ServiceLoader.loadInstances(NLPTextProcessor.class);
         textProcessors.putAll(loadedInstances);
@@ -99,6 +117,7 @@ public class TextProcessorsManager {
         }
         createPipeline(pipelineSpecification);
         configuration.storeCustomPipeline(pipelineSpecification);
+        annotationCache.invalidate(pipelineSpecification.getName());
     }
 
     public void removePipeline(String pipeline, String processor) {
@@ -106,6 +125,7 @@ public class TextProcessorsManager {
         String language = pipelineSpecification.getLanguage();
         configuration.removePipeline(pipeline, processor);
         getTextProcessor(processor).removePipeline(pipeline);
+        annotationCache.invalidate(pipeline);
         if (getPipelineSpecifications().stream().noneMatch(item -> item.getLanguage().equals(language))) {
             removeSupportedLanguage(language);
         } else {
@@ -221,6 +241,21 @@ public class TextProcessorsManager {
         return annotatedText;
     }
 
+    /**
+     * Annotates the text going through the annotation cache. The returned instance can be shared with other
+     * callers and must not be modified.
+     */
+    public AnnotatedText annotateCached(String text, PipelineSpecification pipelineSpecification) {
+        TextProcessor processor = getTextProcessor(pipelineSpecification.getTextProcessor());
+
+        return annotationCache.get(text, pipelineSpecification, configuration.getPipelinesVersion(),
+                () -> processor.annotateText(text, pipelineSpecification));
+    }
+
+    public AnnotationCache getAnnotationCache() {
+        return annotationCache;
+    }
+
     private PipelineCreationResult createPipeline(PipelineSpecification pipelineSpecification) {
         addSupportedLanguage(pipelineSpecification);
         String processorName = pipelineSpecification.getTextProcessor();
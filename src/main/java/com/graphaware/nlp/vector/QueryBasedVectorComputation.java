@@ -16,6 +16,7 @@
 package com.graphaware.nlp.vector;
 
 import com.graphaware.nlp.annotation.NLPVectorComputationProcess;
+import com.graphaware.nlp.ml.similarity.DocumentFrequencyProcessor;
 import static com.graphaware.nlp.util.TypeConverter.getFloatValue;
 import java.util.HashMap;
 import java.util.Map;
@@ -41,7 +42,9 @@ public class QueryBasedVectorComputation implements VectorComputation {
 
     @Override
     public VectorHandler computeSparseVector(long node, Map<String, Object> parameters) throws QueryExecutionException {
-        String query = (String) parameters.getOrDefault(QUERY_PARAMETER, DEFAULT_VECTOR_QUERY);
+        String query = parameters.containsKey(QUERY_PARAMETER)
+                ? (String) parameters.get(QUERY_PARAMETER)
+                : DocumentFrequencyProcessor.getVectorQuery(DEFAULT_VECTOR_QUERY);
         Map<Long, Float> fmap;
         fmap = createFeatureMap(node, query);
         GenericVector vector = SparseVector.fromMap(fmap);
@@ -16,96 +16,135 @@
 package com.graphaware.nlp.vector;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
+/**
+ * Sparse vector kept as two parallel arrays, the ids sorted in ascending order and their values.
+ */
 public class SparseVector implements GenericVector {
 
-    private Integer cardinality;
-    private List<Long> index;
-    private List<Float> values;
-    
-    public SparseVector() {        
+    private static final long[] EMPTY_INDEX = new long[0];
+    private static final float[] EMPTY_VALUES = new float[0];
+
+    private long[] index = EMPTY_INDEX;
+    private float[] values = EMPTY_VALUES;
+    private float norm = Float.NaN;
+
+    public SparseVector() {
     }
 
     public SparseVector(int cardinality, List<Long> index, List<Float> values) {
-        this.cardinality = cardinality;
+        this.index = new long[cardinality];
+        this.values = new float[cardinality];
+        for (int i = 0; i < cardinality; i++) {
+            this.index[i] = index.get(i);
+            this.values[i] = values.get(i);
+        }
+    }
+
+    /**
+     * @param index the ids, sorted in ascending order without duplicates
+     * @param values the value of each id
+     */
+    public SparseVector(long[] index, float[] values) {
+        if (index.length != values.length) {
+            throw new RuntimeException("The index and the values of a SparseVector must have the same length");
+        }
         this.index = index;
         this.values = values;
     }
 
     public static GenericVector fromMap(Map<Long, Float> map) {
-        int cardinality = map.size();
-        List<Long> index = map.keySet().stream()
-                .sorted()
-                .collect(Collectors.toList());
-        List<Float> values = IntStream.range(0, cardinality)
-                .mapToObj(i -> map.get(index.get(i)))
-                .collect(Collectors.toList());
-        return new SparseVector(cardinality, index, values);
+        long[] index = new long[map.size()];
+        int i = 0;
+        for (Long key : map.keySet()) {
+            index[i++] = key;
+        }
+        Arrays.sort(index);
+        float[] values = new float[index.length];
+        for (i = 0; i < index.length; i++) {
+            values[i] = map.get(index[i]);
+        }
+        return new SparseVector(index, values);
     }
 
     public static GenericVector fromList(List<Float> vector) {
         int cardinality = vector.get(0).intValue();
-        List<Long> index = vector.subList(1, cardinality + 1).stream().map((x) -> x.longValue()).collect(Collectors.toList());
-        List<Float> values = vector.subList(cardinality + 1, 2 * cardinality + 1).stream().collect(Collectors.toList());
-        return new SparseVector(cardinality, index, values);
+        long[] index = new long[cardinality];
+        float[] values = new float[cardinality];
+        for (int i = 0; i < cardinality; i++) {
+            index[i] = vector.get(i + 1).longValue();
+            values[i] = vector.get(cardinality + 1 + i);
+        }
+        return new SparseVector(index, values);
     }
-    
+
+    /**
+     * Reads the legacy layout [cardinality, ids..., values...], where ids are only exact up to 2^24.
+     */
     @Override
     public void setArray(float[] vector) {
-        this.cardinality = Float.valueOf(vector[0]).intValue();
-        this.index = new ArrayList<>();
-        this.values = new ArrayList<>();
-        for (int i = 1; i < vector.length; i++) {
-            if (i >= 1 && i < cardinality + 1) {
-               index.add(Float.valueOf(vector[i]).longValue());
-            } else {
-               values.add(vector[i]);
-            }
+        int cardinality = (int) vector[0];
+        this.index = new long[cardinality];
+        this.values = new float[cardinality];
+        for (int i = 0; i < cardinality; i++) {
+            index[i] = (long) vector[i + 1];
+            values[i] = vector[cardinality + 1 + i];
         }
+        this.norm = Float.NaN;
     }
 
     public List<Float> getList() {
-        List<Float> vectorAsList = new ArrayList<>(Collections.nCopies(cardinality * 2 + 1, 0.0f));
-        vectorAsList.set(0, cardinality.floatValue());
-        final int offset = cardinality;
-        IntStream.range(0, cardinality).forEach((k) -> {
-            float pos = index.get(k).floatValue();
-            Float value = values.get(k);
-            vectorAsList.set(k + 1, pos);
-            vectorAsList.set(offset + 1 + k, value);
-        });
+        List<Float> vectorAsList = new ArrayList<>(index.length * 2 + 1);
+        for (float value : getArray()) {
+            vectorAsList.add(value);
+        }
         return vectorAsList;
     }
-    
+
+    /**
+     * @return the vector in the legacy layout [cardinality, ids..., values...], ids above 2^24 lose precision, so
+     * {@link #getIndexArray()} and {@link #getValuesArray()} should be used to store it
+     */
     @Override
     public float[] getArray() {
+        int cardinality = index.length;
         float[] vector = new float[cardinality * 2 + 1];
-        vector[0] = cardinality.floatValue();
-        final int offset = cardinality;
-        IntStream.range(0, cardinality).forEach((k) -> {
-            float pos = index.get(k).floatValue();
-            Float value = values.get(k);
-            vector[k + 1] = pos;
-            vector[offset + 1 + k] = value;
-        });
+        vector[0] = cardinality;
+        for (int k = 0; k < cardinality; k++) {
+            vector[k + 1] = index[k];
+            vector[cardinality + 1 + k] = values[k];
+        }
         return vector;
     }
 
     public Integer getCardinality() {
-        return cardinality;
+        return index.length;
     }
 
     public List<Long> getIndex() {
-        return index;
+        List<Long> result = new ArrayList<>(index.length);
+        for (long id : index) {
+            result.add(id);
+        }
+        return result;
     }
 
     public List<Float> getValues() {
+        List<Float> result = new ArrayList<>(values.length);
+        for (float value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    public long[] getIndexArray() {
+        return index;
+    }
+
+    public float[] getValuesArray() {
         return values;
     }
 
@@ -114,47 +153,41 @@ public class SparseVector implements GenericVector {
         if (!(other instanceof SparseVector)) {
             throw new RuntimeException("other is not an instance of SparseVector");
         }
-        
-        SparseVector otherSparseVector = (SparseVector)other;
-
-        if (this.values == null || 
-                this.cardinality == 0 ||
-                otherSparseVector.values == null || 
-                otherSparseVector.cardinality == 0) {
-            return 0f;
-        }
-        
-        final AtomicReference<Float> sum = new AtomicReference<>(0f);
-        int xIndex = 0;
-        int yIndex = 0;
-
-        while (true) {
-            if (index.get(xIndex).longValue() == otherSparseVector.getIndex().get(yIndex).longValue()) {
-                float curValue = sum.get();
-                curValue += values.get(xIndex) * otherSparseVector.getValues().get(yIndex);
-                sum.set(curValue);
-                xIndex++;
-                yIndex++;
-            } else if (index.get(xIndex) > otherSparseVector.getIndex().get(yIndex)) {
-                yIndex++;
+        SparseVector otherSparseVector = (SparseVector) other;
+        long[] otherIndex = otherSparseVector.index;
+        float[] otherValues = otherSparseVector.values;
+
+        float sum = 0f;
+        int x = 0;
+        int y = 0;
+        while (x < index.length && y < otherIndex.length) {
+            long xId = index[x];
+            long yId = otherIndex[y];
+            if (xId == yId) {
+                sum += values[x++] * otherValues[y++];
+            } else if (xId > yId) {
+                y++;
             } else {
-                xIndex++;
-            }
-            if (xIndex == cardinality
-                    || yIndex == otherSparseVector.getCardinality()) {
-                break;
+                x++;
             }
         }
-        return sum.get();
+        return sum;
     }
 
     @Override
     public float norm() {
-        return Double.valueOf(Math.sqrt(this.dot(this))).floatValue();
+        if (Float.isNaN(norm)) {
+            float sum = 0f;
+            for (float value : values) {
+                sum += value * value;
+            }
+            norm = (float) Math.sqrt(sum);
+        }
+        return norm;
     }
 
     @Override
     public String toString() {
-        return getList().toString(); //To change body of generated methods, choose Tools | Templates.
+        return getList().toString();
     }
 }
@@ -21,6 +21,7 @@ import org.junit.Test;
 import org.neo4j.graphdb.Transaction;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 import static com.graphaware.runtime.RuntimeRegistry.getStartedRuntime;
@@ -75,6 +76,61 @@ public class DynamicConfigurationTest extends AbstractEmbeddedTest {
         }
     }
 
+    @Test
+    public void testPipelineRegistryIsUpdatedOnStoreAndRemove() {
+        DynamicConfiguration configuration = new DynamicConfiguration(getDatabase());
+        assertNull(configuration.loadPipeline("custom"));
+        long version = configuration.getPipelinesVersion();
+        PipelineSpecification specification = new PipelineSpecification("custom", StubTextProcessor.class.getName());
+        configuration.storeCustomPipeline(specification);
+
+        assertTrue(configuration.getPipelinesVersion() > version);
+        assertEquals(StubTextProcessor.class.getName(), configuration.loadPipeline("custom").getTextProcessor());
+        assertNotSame(configuration.loadPipeline("custom"), configuration.loadPipeline("custom"));
+
+        version = configuration.getPipelinesVersion();
+        configuration.removePipeline("custom", StubTextProcessor.class.getName());
+        assertTrue(configuration.getPipelinesVersion() > version);
+        assertNull(configuration.loadPipeline("custom"));
+        assertTrue(configuration.loadCustomPipelines().isEmpty());
+    }
+
+    @Test
+    public void testStoringAPipelineKeepsOtherLoadedPipelines() {
+        DynamicConfiguration configuration = new DynamicConfiguration(getDatabase());
+        PipelineSpecification specification = new PipelineSpecification("custom", StubTextProcessor.class.getName());
+        specification.setStopWords("hello,hihi");
+        configuration.storeCustomPipeline(specification);
+        long version = configuration.getPipelinesVersion();
+
+        configuration.storeCustomPipeline(new PipelineSpecification("other", StubTextProcessor.class.getName()));
+        assertEquals("hello,hihi", configuration.loadPipeline("custom").getStopWords());
+        assertEquals("other", configuration.loadPipeline("other").getName());
+
+        configuration.removeValue(DynamicConfiguration.PIPELINE_KEY_PREFIX + "other");
+        assertNull(configuration.loadPipeline("other"));
+        assertEquals("hello,hihi", configuration.loadPipeline("custom").getStopWords());
+        assertTrue(configuration.getPipelinesVersion() > version);
+    }
+
+    @Test
+    public void testChangingALoadedPipelineDoesNotChangeTheStoredOne() {
+        DynamicConfiguration configuration = new DynamicConfiguration(getDatabase());
+        PipelineSpecification specification = new PipelineSpecification("custom", "en", StubTextProcessor.class.getName());
+        specification.setExcludedNER(new ArrayList<>());
+        configuration.storeCustomPipeline(specification);
+
+        PipelineSpecification loaded = configuration.loadPipeline("custom");
+        loaded.setLanguage("de");
+        loaded.getExcludedNER().add("PERSON");
+        configuration.loadCustomPipelines().get(0).setStopWords("hello");
+
+        PipelineSpecification reloaded = configuration.loadPipeline("custom");
+        assertEquals("en", reloaded.getLanguage());
+        assertTrue(reloaded.getExcludedNER().isEmpty());
+        assertNull(reloaded.getStopWords());
+    }
+
     @Test
     public void testConfigurationValuesShouldBeLoadedFromPreviousState() throws Exception {
         resetSingleton();
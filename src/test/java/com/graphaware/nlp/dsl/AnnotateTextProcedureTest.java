@@ -1,15 +1,22 @@
 package com.graphaware.nlp.dsl;
 
+import com.graphaware.nlp.NLPEvents;
 import com.graphaware.nlp.NLPIntegrationTest;
+import com.graphaware.nlp.event.TextAnnotationEvent;
 import com.graphaware.nlp.processor.TextProcessor;
 import com.graphaware.nlp.stub.StubTextProcessor;
 import com.graphaware.nlp.util.TestNLPGraph;
 import org.junit.Before;
 import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -35,6 +42,25 @@ public class AnnotateTextProcedureTest extends NLPIntegrationTest {
                     "Which is the world’s fastest-growing large economy? Clue: it’s not #China http://wef.ch/29xuXFd  #economics"
             );
 
+    @Test
+    public void testAsyncListenersAreNotifiedOnlyOnceTheAnnotationIsCommitted() throws Exception {
+        clearDb();
+        List<String> notified = Collections.synchronizedList(new ArrayList<>());
+        getNLPManager().getEventDispatcher().registerAsyncListener(NLPEvents.POST_TEXT_ANNOTATION, event -> {
+            notified.add(((TextAnnotationEvent) event).getId());
+        });
+        try (Transaction tx = getDatabase().beginTx()) {
+            getDatabase().execute("CALL ga.nlp.annotate({pipeline:'tokenizer', text: 'hello my name is Frank', id: 'rolled-back', checkLanguage: false})").close();
+            assertTrue(getNLPManager().getEventDispatcher().awaitCompletion(10, TimeUnit.SECONDS));
+            assertTrue(notified.isEmpty());
+            tx.failure();
+        }
+        executeInTransaction("CALL ga.nlp.annotate({pipeline:'tokenizer', text: 'hello my name is Frank', id: 'committed', checkLanguage: false})", emptyConsumer());
+
+        assertTrue(getNLPManager().getEventDispatcher().awaitCompletion(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("committed"), notified);
+    }
+
     @Test
     public void testTextAnnotationViaProcedure() {
         clearDb();
@@ -59,6 +85,65 @@ public class AnnotateTextProcedureTest extends NLPIntegrationTest {
         }));
     }
 
+    @Test
+    public void testBatchAnnotationReportsEachDocument() {
+        clearDb();
+        List<Map<String, Object>> documents = new ArrayList<>();
+        for (int i = 0; i < SHORT_TEXTS.size(); ++i) {
+            Map<String, Object> document = new HashMap<>();
+            document.put("id", "doc-" + i);
+            document.put("text", SHORT_TEXTS.get(i));
+            documents.add(document);
+        }
+        Map<String, Object> failing = new HashMap<>();
+        failing.put("id", "doc-empty");
+        failing.put("text", " ");
+        documents.add(failing);
+        executeInTransaction("CALL ga.nlp.annotate.batch({input: {documents}, pipeline: 'tokenizer', concurrency: 2, batchSize: 3}) YIELD id, success RETURN id, success",
+                Collections.singletonMap("documents", documents), (result -> {
+            int succeeded = 0;
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                if ((Boolean) row.get("success")) {
+                    succeeded++;
+                } else {
+                    assertEquals("doc-empty", row.get("id"));
+                }
+            }
+            assertEquals(SHORT_TEXTS.size(), succeeded);
+        }));
+
+        TestNLPGraph tester = new TestNLPGraph(getDatabase());
+        tester.assertAnnotatedTextNodesCount(SHORT_TEXTS.size());
+    }
+
+    @Test
+    public void testIncrementalAnnotationKeepsUnchangedSentences() {
+        clearDb();
+        executeInTransaction("CALL ga.nlp.annotate({pipeline:'tokenizer', text: 'My name is Frank. I live in London.', id: 'test-incremental', checkLanguage: false})", emptyConsumer());
+        Map<String, Object> firstSentence = new HashMap<>();
+        executeInTransaction("MATCH (:AnnotatedText {id: 'test-incremental'})-[:FIRST_SENTENCE]->(s) RETURN id(s) AS nodeId", (result -> {
+            firstSentence.put("nodeId", result.next().get("nodeId"));
+        }));
+
+        executeInTransaction("CALL ga.nlp.annotate({pipeline:'tokenizer', text: 'My name is Frank. I live in Paris. I like cheese.', id: 'test-incremental', checkLanguage: false, incremental: true})", emptyConsumer());
+
+        TestNLPGraph tester = new TestNLPGraph(getDatabase());
+        tester.assertAnnotatedTextNodesCount(1);
+        tester.assertSentenceNodesCount(3);
+        executeInTransaction("MATCH (:AnnotatedText {id: 'test-incremental'})-[:FIRST_SENTENCE]->(s)-[:NEXT_SENTENCE]->()-[:NEXT_SENTENCE]->(last) RETURN id(s) AS nodeId, trim(last.text) AS text", (result -> {
+            Map<String, Object> row = result.next();
+            assertEquals(firstSentence.get("nodeId"), row.get("nodeId"));
+            assertEquals("I like cheese", row.get("text"));
+        }));
+        executeInTransaction("MATCH (t:Tag {value: 'London'}) RETURN count(t) AS c", (result -> {
+            assertEquals(1L, result.next().get("c"));
+        }));
+        executeInTransaction("MATCH (:Tag {value: 'London'})<-[:TAG_OCCURRENCE_TAG]-(o) RETURN count(o) AS c", (result -> {
+            assertEquals(0L, result.next().get("c"));
+        }));
+    }
+
     @Test
     public void testExceptionIsThrownWhenLanguageCannotBeDetected() {
         try {
@@ -10,8 +10,11 @@ import org.junit.Test;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -104,6 +107,54 @@ public class TextRankProcedureTest extends NLPIntegrationTest {
         }));
     }
 
+    @Test
+    public void testTextRankPostProcessPerDocumentMatchesCorpus() throws Exception {
+        for (String method : Arrays.asList("direct", "subgroups")) {
+            clearDb();
+            createPostProcessGraph();
+            executeInTransaction("MATCH (a:AnnotatedText) CALL ga.nlp.ml.textRank.postprocess({method: {p0}, annotatedText: a}) YIELD result RETURN count(*)", buildSeqParameters(method), emptyConsumer());
+            Set<String> perDocument = getPostProcessLinks();
+
+            clearDb();
+            createPostProcessGraph();
+            executeInTransaction("CALL ga.nlp.ml.textRank.postprocess({method: {p0}})", buildSeqParameters(method), emptyConsumer());
+            Set<String> corpus = getPostProcessLinks();
+
+            assertEquals(method, corpus, perDocument);
+            assertFalse(method, corpus.contains("space station -> aerospace stationery"));
+            assertFalse(method, corpus.contains("space station -> doc4"));
+            if (method.equals("direct")) {
+                assertTrue(corpus.contains("space station -> doc2"));
+                assertTrue(corpus.contains("space station -> doc5"));
+            } else {
+                assertTrue(corpus.contains("space station -> international space station"));
+                assertTrue(corpus.contains("space station -> space station crew"));
+                assertFalse(corpus.contains("space station -> big space station crew"));
+            }
+        }
+    }
+
+    private void createPostProcessGraph() {
+        executeInTransaction("CREATE (a1:AnnotatedText {id: 'doc1'}), (a2:AnnotatedText {id: 'doc2'}), (a3:AnnotatedText {id: 'doc3'}), (a4:AnnotatedText {id: 'doc4'}), (a5:AnnotatedText {id: 'doc5'})\n"
+                + "CREATE (:Keyword {value: 'space station', keywordsList: ['space', 'station'], numTerms: 2})-[:DESCRIBES {count: 1}]->(a1)\n"
+                + "CREATE (:Keyword {value: 'international space station', keywordsList: ['international', 'space', 'station'], numTerms: 3})-[:DESCRIBES {count: 1}]->(a2)\n"
+                + "CREATE (:Keyword {value: 'space station crew', keywordsList: ['space', 'station', 'crew'], numTerms: 3})-[:DESCRIBES {count: 1}]->(a3)\n"
+                + "CREATE (:Keyword {value: 'aerospace stationery', keywordsList: ['aerospace', 'stationery'], numTerms: 2})-[:DESCRIBES {count: 1}]->(a4)\n"
+                + "CREATE (:Keyword {value: 'big space station crew', keywordsList: ['big', 'space', 'station', 'crew'], numTerms: 4})-[:DESCRIBES {count: 1}]->(a5)", emptyConsumer());
+    }
+
+    private Set<String> getPostProcessLinks() {
+        Set<String> links = new HashSet<>();
+        executeInTransaction("MATCH (k:Keyword)-[:DESCRIBES]->(a:AnnotatedText) RETURN k.value + ' -> ' + a.id AS link\n"
+                + "UNION MATCH (k:Keyword)-[:HAS_SUBGROUP]->(k2:Keyword) RETURN k.value + ' -> ' + k2.value AS link", (result -> {
+            while (result.hasNext()) {
+                links.add((String) result.next().get("link"));
+            }
+        }));
+
+        return links;
+    }
+
     private void createGraph() throws Exception {
         String content = new String(Files.readAllBytes(Paths.get(getClass().getClassLoader().getResource("exported.cypher").toURI())));
         List<String> queries = ImportUtils.getImportQueriesFromApocExport(content);
@@ -0,0 +1,115 @@
+package com.graphaware.nlp.dsl;
+
+import com.graphaware.nlp.NLPIntegrationTest;
+import com.graphaware.nlp.domain.VectorContainer;
+import com.graphaware.nlp.ml.hnsw.HnswIndex;
+import com.graphaware.nlp.ml.hnsw.HnswIndexProcessor;
+import com.graphaware.nlp.persistence.persisters.VectorPersister;
+import com.graphaware.nlp.vector.DenseVector;
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class VectorIndexProcedureTest extends NLPIntegrationTest {
+
+    @Test
+    public void testNearestNodesAreFoundAndIndexFollowsUpdates() {
+        clearDb();
+        createDocument("a", new float[]{1f, 0f, 0f});
+        createDocument("b", new float[]{0.9f, 0.1f, 0f});
+        createDocument("c", new float[]{0f, 1f, 0f});
+        createDocument("d", new float[]{0f, 0f, 1f});
+
+        executeInTransaction("CALL ga.nlp.vector.index.build({label: 'Document', property: 'embedding', m: 4, recallSample: 4}) YIELD size, dimension, recall RETURN size, dimension, recall", (result -> {
+            java.util.Map<String, Object> row = result.next();
+            assertEquals(4L, row.get("size"));
+            assertEquals(3L, row.get("dimension"));
+            assertEquals(1.0, (Double) row.get("recall"), 0.0);
+        }));
+        assertNearest("a", "b");
+
+        createDocument("e", new float[]{1f, 0.01f, 0f});
+        assertNearest("a", "e");
+
+        executeInTransaction("MATCH (n:Document {name: 'e'}) DETACH DELETE n", emptyConsumer());
+        assertNearest("a", "b");
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node node = getDatabase().createNode(Label.label("Document"));
+            node.setProperty("name", "rolledBack");
+            VectorPersister persister = getNLPManager().getPersister(VectorContainer.class);
+            persister.storeVector(node, "embedding", DenseVector.class.getName(), new float[]{1f, 0.001f, 0f}, Optional.empty());
+            tx.failure();
+        }
+        assertNearest("a", "b");
+    }
+
+    @Test
+    public void testIndexFollowsTheIndexedLabel() {
+        clearDb();
+        createDocument("a", new float[]{1f, 0f, 0f});
+        createDocument("b", new float[]{0.9f, 0.1f, 0f});
+        createDocument("c", new float[]{0f, 1f, 0f});
+        createNode("Draft", "f", new float[]{1f, 0.02f, 0f});
+        executeInTransaction("CALL ga.nlp.vector.index.build({label: 'Document', property: 'embedding', m: 4}) YIELD size RETURN size", (result -> {
+            assertEquals(3L, result.next().get("size"));
+        }));
+        assertNearest("a", "b");
+
+        executeInTransaction("MATCH (n:Draft {name: 'f'}) SET n:Document", emptyConsumer());
+        assertNearest("a", "f");
+
+        executeInTransaction("MATCH (n:Document {name: 'f'}) REMOVE n:Document", emptyConsumer());
+        assertNearest("a", "b");
+    }
+
+    @Test
+    public void testIndexSavedOnShutdownIsReconciledWithLaterTransactions() {
+        clearDb();
+        createDocument("a", new float[]{1f, 0f, 0f});
+        createDocument("b", new float[]{0.9f, 0.1f, 0f});
+        executeInTransaction("CALL ga.nlp.vector.index.build({label: 'Document', property: 'embedding', m: 4}) YIELD size RETURN size", emptyConsumer());
+        createDocument("c", new float[]{1f, 0.05f, 0f});
+        getNLPManager().getExtension(HnswIndexProcessor.class).shutdown();
+
+        createDocument("d", new float[]{1f, 0.01f, 0f});
+        HnswIndexProcessor restarted = new HnswIndexProcessor();
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node node = getDatabase().findNode(Label.label("Document"), "name", "a");
+            List<HnswIndex.Neighbour> nearest = restarted.nearest(node, "embedding", 3, null);
+            assertEquals(3, nearest.size());
+            assertEquals("d", getDatabase().getNodeById(nearest.get(0).nodeId).getProperty("name"));
+            assertEquals("c", getDatabase().getNodeById(nearest.get(1).nodeId).getProperty("name"));
+            tx.success();
+        }
+    }
+
+    private void createDocument(String name, float[] vector) {
+        createNode("Document", name, vector);
+    }
+
+    private void createNode(String label, String name, float[] vector) {
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node node = getDatabase().createNode(Label.label(label));
+            node.setProperty("name", name);
+            VectorPersister persister = getNLPManager().getPersister(VectorContainer.class);
+            persister.storeVector(node, "embedding", DenseVector.class.getName(), vector, Optional.empty());
+            tx.success();
+        }
+    }
+
+    private void assertNearest(String name, String expected) {
+        executeInTransaction("MATCH (n:Document {name: {name}}) CALL ga.nlp.vector.nearest(n, 'embedding', 1) YIELD node, score RETURN node.name AS name, score",
+                Collections.singletonMap("name", name), (result -> {
+            assertEquals(expected, result.next().get("name"));
+            assertFalse(result.hasNext());
+        }));
+    }
+}
@@ -3,6 +3,8 @@ package com.graphaware.nlp.event;
 import com.graphaware.nlp.NLPEvents;
 import org.junit.Test;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -36,6 +38,70 @@ public class EventDispatcherTest {
         assertEquals("hello100", out.get(1));
     }
 
+    @Test
+    public void testAsyncListenersAreIsolatedFromFailures() throws Exception {
+        EventDispatcher eventDispatcher = new EventDispatcher();
+        final List<String> out = Collections.synchronizedList(new ArrayList<>());
+        eventDispatcher.registerAsyncListener(NLPEvents.POST_TEXT_ANNOTATION, (event) -> {
+            throw new RuntimeException("failing listener");
+        }, 50);
+        eventDispatcher.registerAsyncListener(NLPEvents.POST_TEXT_ANNOTATION, (event) -> {
+            out.add(Thread.currentThread().getName());
+        }, 100);
+        eventDispatcher.notify(NLPEvents.POST_TEXT_ANNOTATION, new GenericEvent("hello", "1"));
+        eventDispatcher.notify(NLPEvents.POST_TEXT_ANNOTATION, new GenericEvent("hello", "2"));
+
+        assertTrue(eventDispatcher.awaitCompletion(10, TimeUnit.SECONDS));
+        assertEquals(2, out.size());
+        assertFalse(out.contains(Thread.currentThread().getName()));
+        assertEquals(2, eventDispatcher.getFailedListenersCount());
+        eventDispatcher.shutdown();
+    }
+
+    @Test
+    public void testSyncAndAsyncListenersCanBeNotifiedSeparately() throws Exception {
+        EventDispatcher eventDispatcher = new EventDispatcher();
+        final List<String> out = Collections.synchronizedList(new ArrayList<>());
+        eventDispatcher.registerListener(NLPEvents.POST_TEXT_ANNOTATION, (event) -> out.add("sync"));
+        eventDispatcher.registerAsyncListener(NLPEvents.POST_TEXT_ANNOTATION, (event) -> out.add("async"));
+
+        eventDispatcher.notifySync(NLPEvents.POST_TEXT_ANNOTATION, new GenericEvent("hello", "1"));
+        assertTrue(eventDispatcher.awaitCompletion(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("sync"), out);
+
+        eventDispatcher.notifyAsync(NLPEvents.POST_TEXT_ANNOTATION, new GenericEvent("hello", "1"));
+        assertTrue(eventDispatcher.awaitCompletion(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("sync", "async"), out);
+        eventDispatcher.shutdown();
+    }
+
+    @Test
+    public void testEventsAreDroppedWhenQueueIsFull() throws Exception {
+        EventDispatcher eventDispatcher = new EventDispatcher(1, 1, EventDispatcher.BackPressurePolicy.DROP);
+        final CountDownLatch release = new CountDownLatch(1);
+        eventDispatcher.registerAsyncListener(NLPEvents.POST_TEXT_ANNOTATION, (event) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (int i = 0; i < 5; ++i) {
+            eventDispatcher.notify(NLPEvents.POST_TEXT_ANNOTATION, new GenericEvent("hello", String.valueOf(i)));
+        }
+        assertFalse(eventDispatcher.awaitCompletion(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+
+        assertTrue(eventDispatcher.awaitCompletion(10, TimeUnit.SECONDS));
+        assertTrue(eventDispatcher.getDroppedEventsCount() >= 3);
+        eventDispatcher.shutdown();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testAsyncListenersCannotReadTransactionData() {
+        new EventDispatcher().registerAsyncListener(NLPEvents.TRANSACTION_BEFORE_COMMIT, (event) -> {});
+    }
+
     private class GenericEvent implements Event {
 
         private final String text;
@@ -0,0 +1,128 @@
+package com.graphaware.nlp.ml.hnsw;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class HnswIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentBuildHasHighRecall() {
+        HnswIndex index = createIndex(3000, 32);
+        assertEquals(3000, index.size());
+        assertTrue(index.recall(100, 10, 1) > 0.95);
+    }
+
+    @Test
+    public void testRecallWithAnotherEfSearchKeepsTheIndexOne() {
+        HnswIndex index = createIndex(1000, 32);
+        int efSearch = index.getEfSearch();
+        assertTrue(index.recall(100, 10, 200, 1) > 0.95);
+        assertEquals(efSearch, index.getEfSearch());
+    }
+
+    @Test
+    public void testReplacedAndRemovedNodesAreNotReturned() {
+        HnswIndex index = new HnswIndex(2, 4, 20, 20);
+        index.add(1L, new float[]{1f, 0f});
+        index.add(2L, new float[]{0.9f, 0.1f});
+        index.add(3L, new float[]{0f, 1f});
+        assertEquals(2L, index.nearest(1L, 1).get(0).nodeId);
+
+        index.add(2L, new float[]{0f, 2f});
+        index.remove(3L);
+        List<HnswIndex.Neighbour> neighbours = index.search(new float[]{0f, 1f}, 3);
+        assertEquals(2, neighbours.size());
+        assertEquals(2L, neighbours.get(0).nodeId);
+        assertEquals(1f, neighbours.get(0).similarity, 1e-6f);
+        assertFalse(index.contains(3L));
+    }
+
+    @Test
+    public void testIndexIsSavedAndLoaded() throws Exception {
+        HnswIndex index = createIndex(500, 8);
+        index.remove(7L);
+        File file = new File(folder.getRoot(), "index.hnsw");
+        index.save(file);
+
+        HnswIndex loaded = HnswIndex.load(file);
+        assertEquals(index.size(), loaded.size());
+        assertFalse(loaded.contains(7L));
+        assertEquals(index.nearest(11L, 5).get(0).nodeId, loaded.nearest(11L, 5).get(0).nodeId);
+    }
+
+    @Test
+    public void testIndexIsSavedWhileNodesAreAdded() throws Exception {
+        HnswIndex index = createIndex(500, 8);
+        File file = new File(folder.getRoot(), "index.hnsw");
+        Thread writer = new Thread(() -> {
+            Random random = new Random(3);
+            for (long nodeId = 1000; nodeId < 3000; ++nodeId) {
+                float[] vector = new float[8];
+                for (int i = 0; i < vector.length; ++i) {
+                    vector[i] = (float) random.nextGaussian();
+                }
+                index.add(nodeId, vector);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            index.save(file);
+            assertTrue(HnswIndex.load(file).size() >= 500);
+        }
+        writer.join();
+        index.save(file);
+        assertEquals(2500, HnswIndex.load(file).size());
+    }
+
+    @Test
+    public void testCompactionDropsDeletedEntriesAndCatchesUp() {
+        HnswIndex index = createIndex(1000, 16);
+        for (long nodeId = 0; nodeId < 600; ++nodeId) {
+            index.remove(nodeId);
+        }
+        assertEquals(600, index.getDeletedCount());
+
+        HnswIndex compacted = index.compact();
+        assertEquals(400, compacted.size());
+        assertEquals(0, compacted.getDeletedCount());
+
+        index.add(1L, index.getVector(700L));
+        index.remove(701L);
+        compacted.catchUp(index);
+        assertEquals(400, compacted.size());
+        assertTrue(compacted.contains(1L));
+        assertFalse(compacted.contains(701L));
+        assertTrue(compacted.recall(100, 10, 1) > 0.95);
+    }
+
+    private HnswIndex createIndex(int size, int dimension) {
+        Random random = new Random(5);
+        float[][] centers = new float[20][dimension];
+        for (float[] center : centers) {
+            for (int i = 0; i < dimension; ++i) {
+                center[i] = (float) random.nextGaussian();
+            }
+        }
+        float[][] vectors = new float[size][dimension];
+        for (float[] vector : vectors) {
+            float[] center = centers[random.nextInt(centers.length)];
+            for (int i = 0; i < dimension; ++i) {
+                vector[i] = center[i] + 0.5f * (float) random.nextGaussian();
+            }
+        }
+        HnswIndex index = new HnswIndex(dimension, 8, 100, 50);
+        IntStream.range(0, size).parallel().forEach(i -> index.add(i, vectors[i]));
+        return index;
+    }
+}
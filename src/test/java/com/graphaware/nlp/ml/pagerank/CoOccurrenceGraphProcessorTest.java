@@ -0,0 +1,60 @@
+package com.graphaware.nlp.ml.pagerank;
+
+import com.graphaware.nlp.NLPIntegrationTest;
+import com.graphaware.nlp.configuration.SettingsConstants;
+import com.graphaware.nlp.processor.TextProcessor;
+import com.graphaware.nlp.stub.StubTextProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class CoOccurrenceGraphProcessorTest extends NLPIntegrationTest {
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        createPipeline(StubTextProcessor.class.getName(), TextProcessor.DEFAULT_PIPELINE);
+        executeInTransaction("CALL ga.nlp.processor.pipeline.default({p0})", buildSeqParameters("tokenizer"), emptyConsumer());
+        getNLPManager().getConfiguration().updateInternalSetting(SettingsConstants.CO_OCCURRENCE_GRAPH, true);
+    }
+
+    @After
+    public void resetSettings() {
+        getNLPManager().getConfiguration().removeSettingValue(SettingsConstants.CO_OCCURRENCE_GRAPH);
+    }
+
+    @Test
+    public void testCoOccurrencesAreUpdatedOnAnnotationAndSentenceRemoval() {
+        clearDb();
+        executeInTransaction("CALL ga.nlp.annotate({pipeline:'tokenizer', text: 'alpha beta gamma. alpha beta delta', id: 'cooc', checkLanguage: false})", emptyConsumer());
+        assertWeight("alpha", "beta", 2L);
+        assertWeight("beta", "delta", 1L);
+
+        executeInTransaction("CALL ga.nlp.annotate({pipeline:'tokenizer', text: 'alpha beta gamma. epsilon zeta', id: 'cooc', checkLanguage: false, incremental: true})", emptyConsumer());
+        assertWeight("alpha", "beta", 1L);
+        assertWeight("beta", "delta", null);
+        assertWeight("epsilon", "zeta", 1L);
+    }
+
+    @Test
+    public void testAdjacentPairsSkipRepeatedTags() {
+        long[] pairs = CoOccurrenceGraphProcessor.adjacentPairs(Arrays.asList(1L, 2L, 2L, 3L));
+        assertArrayEquals(new long[]{1L, 2L, 2L, 3L}, pairs);
+        assertEquals(0, CoOccurrenceGraphProcessor.adjacentPairs(Collections.<Long>emptyList()).length);
+    }
+
+    private void assertWeight(String source, String destination, Long expected) {
+        executeInTransaction("MATCH (:Tag {value: '" + source + "'})-[r:CO_OCCURRENCE]->(:Tag {value: '" + destination + "'}) RETURN r.weight AS weight", (result -> {
+            if (expected == null) {
+                assertFalse(result.hasNext());
+            } else {
+                assertEquals(expected.longValue(), ((Number) result.next().get("weight")).longValue());
+            }
+        }));
+    }
+}
@@ -0,0 +1,128 @@
+package com.graphaware.nlp.ml.pagerank;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PageRankGraphTest {
+
+    private static final double DAMP = 0.85;
+
+    @Test
+    public void testGraphIsCompiledWithTransitionWeights() {
+        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences = new HashMap<>();
+        addEdge(coOccurrences, 10L, 20L, 1.0);
+        addEdge(coOccurrences, 10L, 30L, 3.0);
+        addEdge(coOccurrences, 20L, 30L, 2.0);
+
+        PageRankGraph graph = PageRankGraph.build(coOccurrences, Arrays.asList(30L, 10L, 20L));
+        assertEquals(3, graph.nodeCount());
+        assertEquals(3, graph.edgeCount());
+        assertEquals(10L, graph.nodeId(0));
+
+        double[] ranks = {1.0, 10.0, 100.0};
+        assertEquals(0.0, graph.incomingRank(0, ranks), 1e-12);
+        assertEquals(0.25, graph.incomingRank(1, ranks), 1e-12);
+        assertEquals(0.75 + 10.0, graph.incomingRank(2, ranks), 1e-12);
+    }
+
+    @Test
+    public void testPageRankMatchesNestedMapComputation() {
+        Random random = new Random(7L);
+        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences = new HashMap<>();
+        for (int i = 0; i < 400; ++i) {
+            long source = random.nextInt(60);
+            long destination = random.nextInt(60);
+            if (source != destination) {
+                addEdge(coOccurrences, source, destination, 1 + random.nextInt(5));
+            }
+        }
+
+        Map<Long, Double> pageRanks = new PageRank(null).run(coOccurrences, 30, DAMP, 0.0001);
+        Map<Long, Double> expected = nestedMapPageRank(coOccurrences, pageRanks.keySet().size(), 30, 0.0001);
+
+        assertEquals(expected.keySet(), pageRanks.keySet());
+        expected.forEach((node, value) -> assertEquals(value, pageRanks.get(node), 1e-12));
+    }
+
+    @Test
+    public void testParallelPageRankIsIndependentOfConcurrency() {
+        Random random = new Random(11L);
+        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences = new HashMap<>();
+        for (int i = 0; i < 5000; ++i) {
+            // skewed degrees so that partitions get uneven edge counts
+            long source = random.nextInt(1 + random.nextInt(500));
+            long destination = random.nextInt(500);
+            if (source != destination) {
+                addEdge(coOccurrences, source, destination, 1 + random.nextInt(3));
+            }
+        }
+        PageRankGraph graph = PageRankGraph.build(coOccurrences, nodesOf(coOccurrences));
+        PageRank pageRank = new PageRank(null);
+        double[] sequential = pageRank.run(graph, 50, DAMP, 0.0);
+
+        for (int concurrency : new int[]{2, 3, 8}) {
+            assertArrayEquals(sequential, pageRank.run(graph, 50, DAMP, 0.0, concurrency), 0.0);
+        }
+        int[] bounds = graph.partition(7);
+        assertEquals(0, bounds[0]);
+        assertEquals(graph.nodeCount(), bounds[bounds.length - 1]);
+    }
+
+    private Set<Long> nodesOf(Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences) {
+        Set<Long> nodes = new HashSet<>();
+        coOccurrences.forEach((source, edges) -> {
+            nodes.add(source);
+            nodes.addAll(edges.keySet());
+        });
+
+        return nodes;
+    }
+
+    private Map<Long, Double> nestedMapPageRank(Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences, int nNodes, int iter, double threshold) {
+        Map<Long, Double> pagerank = new HashMap<>();
+        coOccurrences.values().forEach(edges -> edges.values().forEach(item -> {
+            pagerank.put(item.getSource(), (1 - DAMP) / nNodes);
+            pagerank.put(item.getDestination(), (1 - DAMP) / nNodes);
+        }));
+        for (int iteration = 0; iteration < iter; ++iteration) {
+            Map<Long, Double> next = new HashMap<>();
+            for (Long target : pagerank.keySet()) {
+                double sum = 0.0;
+                for (Long source : pagerank.keySet()) {
+                    Map<Long, CoOccurrenceItem> edges = coOccurrences.get(source);
+                    if (edges != null && edges.containsKey(target)) {
+                        double total = edges.values().stream().mapToDouble(CoOccurrenceItem::getCount).sum();
+                        sum += edges.get(target).getCount() / total * pagerank.get(source);
+                    }
+                }
+                next.put(target, (1 - DAMP) / nNodes + DAMP * sum);
+            }
+            boolean thresholdHit = pagerank.keySet().stream().allMatch(node -> Math.abs(next.get(node) - pagerank.get(node)) <= threshold);
+            pagerank.putAll(next);
+            if (thresholdHit) {
+                break;
+            }
+        }
+
+        return pagerank;
+    }
+
+    private void addEdge(Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences, long source, long destination, double weight) {
+        Map<Long, CoOccurrenceItem> edges = coOccurrences.computeIfAbsent(source, k -> new HashMap<>());
+        if (edges.containsKey(destination)) {
+            edges.get(destination).incCountBy(weight);
+        } else {
+            CoOccurrenceItem item = new CoOccurrenceItem(source, destination);
+            item.setCount(weight);
+            edges.put(destination, item);
+        }
+    }
+}
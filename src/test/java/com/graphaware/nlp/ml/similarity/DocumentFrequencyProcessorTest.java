@@ -0,0 +1,71 @@
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.nlp.NLPIntegrationTest;
+import com.graphaware.nlp.configuration.SettingsConstants;
+import com.graphaware.nlp.processor.TextProcessor;
+import com.graphaware.nlp.stub.StubTextProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DocumentFrequencyProcessorTest extends NLPIntegrationTest {
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        createPipeline(StubTextProcessor.class.getName(), TextProcessor.DEFAULT_PIPELINE);
+        executeInTransaction("CALL ga.nlp.processor.pipeline.default({p0})", buildSeqParameters("tokenizer"), emptyConsumer());
+        getNLPManager().getConfiguration().updateInternalSetting(SettingsConstants.DOCUMENT_FREQUENCIES, true);
+    }
+
+    @After
+    public void resetSettings() {
+        getNLPManager().getConfiguration().removeSettingValue(SettingsConstants.DOCUMENT_FREQUENCIES);
+    }
+
+    @Test
+    public void testDocumentFrequenciesAreUpdatedOnAnnotationAndDeletion() {
+        clearDb();
+        executeInTransaction("CALL ga.nlp.annotate({pipeline:'tokenizer', text: 'alpha beta gamma', id: 'df-1', checkLanguage: false})", emptyConsumer());
+        executeInTransaction("CALL ga.nlp.annotate({pipeline:'tokenizer', text: 'alpha delta. alpha beta', id: 'df-2', checkLanguage: false})", emptyConsumer());
+        assertDocumentFrequency("alpha", 2L);
+        assertDocumentFrequency("beta", 2L);
+        assertDocumentFrequency("delta", 1L);
+
+        executeInTransaction("CALL ga.nlp.annotate({pipeline:'tokenizer', text: 'epsilon zeta', id: 'df-2', checkLanguage: false, incremental: true})", emptyConsumer());
+        assertDocumentFrequency("alpha", 1L);
+        assertDocumentFrequency("delta", 0L);
+        assertDocumentFrequency("epsilon", 1L);
+
+        executeInTransaction("MATCH (a:AnnotatedText {id: 'df-1'}) DETACH DELETE a", emptyConsumer());
+        assertDocumentFrequency("alpha", 0L);
+        assertDocumentFrequency("epsilon", 1L);
+    }
+
+    @Test
+    public void testRebuildCountsExistingDocuments() {
+        clearDb();
+        getNLPManager().getConfiguration().removeSettingValue(SettingsConstants.DOCUMENT_FREQUENCIES);
+        executeInTransaction("CALL ga.nlp.annotate({pipeline:'tokenizer', text: 'alpha beta', id: 'df-1', checkLanguage: false})", emptyConsumer());
+        executeInTransaction("CALL ga.nlp.annotate({pipeline:'tokenizer', text: 'alpha gamma', id: 'df-2', checkLanguage: false})", emptyConsumer());
+        getNLPManager().getConfiguration().updateInternalSetting(SettingsConstants.DOCUMENT_FREQUENCIES, true);
+        executeInTransaction("CREATE (:Tag {value: 'stale', " + DocumentFrequencyProcessor.DOCUMENT_FREQUENCY_PROPERTY + ": 3})", emptyConsumer());
+
+        executeInTransaction("CALL ga.nlp.ml.similarity.documentFrequency.rebuild()", (result -> {
+            assertEquals(2L, ((Number) result.next().get("result")).longValue());
+        }));
+        assertDocumentFrequency("alpha", 2L);
+        assertDocumentFrequency("gamma", 1L);
+        executeInTransaction("MATCH (t:Tag {value: 'stale'}) RETURN t." + DocumentFrequencyProcessor.DOCUMENT_FREQUENCY_PROPERTY + " AS df", (result -> {
+            assertNull(result.next().get("df"));
+        }));
+    }
+
+    private void assertDocumentFrequency(String value, long expected) {
+        executeInTransaction("MATCH (t:Tag {value: '" + value + "'}) RETURN t." + DocumentFrequencyProcessor.DOCUMENT_FREQUENCY_PROPERTY + " AS df", (result -> {
+            assertEquals(expected, ((Number) result.next().get("df")).longValue());
+        }));
+    }
+}
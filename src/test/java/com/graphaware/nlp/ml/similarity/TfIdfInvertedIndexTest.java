@@ -0,0 +1,56 @@
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.nlp.ml.queue.SimilarityItem;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TfIdfInvertedIndexTest {
+
+    @Test
+    public void testMostSimilarMatchesCosineOfTfIdfVectors() {
+        TfIdfInvertedIndex index = new TfIdfInvertedIndex.Builder()
+                .add(1, new long[]{10, 11, 12}, new float[]{2, 1, 1})
+                .add(2, new long[]{10, 11}, new float[]{1, 3})
+                .add(3, new long[]{12, 13}, new float[]{1, 1})
+                .add(4, new long[]{14}, new float[]{5})
+                .build();
+
+        List<SimilarityItem> similar = index.getMostSimilar(1, 10, "SIMILARITY_COSINE");
+        assertEquals(2, similar.size());
+        assertEquals(2, similar.get(0).getSecondNode());
+        assertEquals(3, similar.get(1).getSecondNode());
+
+        float idf10 = (float) Math.log10(5.0 / 2);
+        float idf12 = (float) Math.log10(5.0 / 2);
+        float idf13 = (float) Math.log10(5.0 / 1);
+        Map<Long, Float> first = new HashMap<>();
+        first.put(10L, 2 * idf10);
+        first.put(11L, idf10);
+        first.put(12L, idf12);
+        Map<Long, Float> third = new HashMap<>();
+        third.put(12L, idf12);
+        third.put(13L, idf13);
+        assertEquals(new CosineSimilarity().getSimilarity(first, third), similar.get(1).getSimilarity(), 1e-6);
+
+        assertTrue(index.getMostSimilar(4, 10, "SIMILARITY_COSINE").isEmpty());
+        assertEquals(1, index.getMostSimilar(1, 1, "SIMILARITY_COSINE").size());
+    }
+
+    @Test
+    public void testCommonTagsArePrunedByMaxDocumentFrequency() {
+        TfIdfInvertedIndex index = new TfIdfInvertedIndex.Builder()
+                .add(1, new long[]{10, 11}, new float[]{1, 1})
+                .add(2, new long[]{10, 12}, new float[]{1, 1})
+                .add(3, new long[]{10, 13}, new float[]{1, 1})
+                .setMaxDocumentFrequency(0.5)
+                .build();
+
+        assertEquals(3, index.tagCount());
+        assertTrue(index.getMostSimilar(1, 10, "SIMILARITY_COSINE").isEmpty());
+    }
+}
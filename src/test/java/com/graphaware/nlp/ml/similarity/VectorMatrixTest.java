@@ -0,0 +1,83 @@
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.nlp.ml.queue.SimilarityItem;
+import com.graphaware.nlp.vector.DenseVector;
+import com.graphaware.nlp.vector.GenericVector;
+import com.graphaware.nlp.vector.SparseVector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VectorMatrixTest {
+
+    @Test
+    public void testDenseMostSimilarMatchesPairwiseCosine() {
+        Random random = new Random(7);
+        int size = 600;
+        VectorMatrix.Builder builder = new VectorMatrix.Builder();
+        List<GenericVector> vectors = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            float[] values = new float[20];
+            for (int j = 0; j < values.length; ++j) {
+                values[j] = random.nextFloat() - 0.3f;
+            }
+            vectors.add(new DenseVector(values));
+            ids.add(1000L + i);
+            builder.addCandidate(1000L + i, vectors.get(i));
+        }
+        VectorMatrix matrix = builder.build();
+        assertTrue(matrix.isDense());
+
+        Map<Long, ArrayList<SimilarityItem>> results = new HashMap<>();
+        long compared = matrix.getMostSimilar(ids, 5, "SIMILARITY", (id, kNN) -> {
+            synchronized (results) {
+                results.put(id, kNN);
+            }
+        });
+        assertEquals((long) size * (size - 1), compared);
+        assertEquals(size, results.size());
+        for (int i = 0; i < size; i += 37) {
+            float best = 0f;
+            long bestId = -1;
+            for (int j = 0; j < size; ++j) {
+                float similarity = VectorProcessLogic.getSimilarity(vectors.get(i), vectors.get(j));
+                if (j != i && similarity > best) {
+                    best = similarity;
+                    bestId = ids.get(j);
+                }
+            }
+            ArrayList<SimilarityItem> kNN = results.get(ids.get(i));
+            assertEquals(5, kNN.size());
+            assertEquals(bestId, kNN.get(0).getSecondNode());
+            assertEquals(best, kNN.get(0).getSimilarity(), 1e-5f);
+            assertTrue(kNN.get(0).getSimilarity() >= kNN.get(4).getSimilarity());
+        }
+    }
+
+    @Test
+    public void testSparseQueriesAreComparedWithCandidatesOnly() {
+        VectorMatrix matrix = new VectorMatrix.Builder()
+                .addCandidate(1L, new SparseVector(new long[]{1L, 2L}, new float[]{1f, 1f}))
+                .addCandidate(2L, new SparseVector(new long[]{3L}, new float[]{1f}))
+                .addQuery(3L, new SparseVector(new long[]{2L, 3L}, new float[]{1f, 1f}))
+                .build();
+        assertFalse(matrix.isDense());
+
+        Map<Long, ArrayList<SimilarityItem>> results = new HashMap<>();
+        long compared = matrix.getMostSimilar(Arrays.asList(1L, 3L), 10, "SIMILARITY", results::put);
+        assertEquals(3L, compared);
+        assertTrue(results.get(1L).isEmpty());
+        assertEquals(2, results.get(3L).size());
+        assertEquals(2L, results.get(3L).get(0).getSecondNode());
+        assertEquals(0.7071f, results.get(3L).get(0).getSimilarity(), 1e-4f);
+        assertEquals(0.5f, results.get(3L).get(1).getSimilarity(), 1e-4f);
+    }
+}
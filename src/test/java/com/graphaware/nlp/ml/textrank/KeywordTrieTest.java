@@ -0,0 +1,36 @@
+package com.graphaware.nlp.ml.textrank;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class KeywordTrieTest {
+
+    @Test
+    public void testPhrasesContainingWordSequenceAreFound() {
+        KeywordTrie<String> trie = new KeywordTrie<>();
+        trie.add(new String[]{"space", "shuttle"}, "space shuttle");
+        trie.add(new String[]{"space", "shuttle", "program"}, "space shuttle program");
+        trie.add(new String[]{"international", "space", "station"}, "international space station");
+        trie.add(new String[]{"spaces"}, "spaces");
+
+        assertEquals(new HashSet<>(Arrays.asList("space shuttle", "space shuttle program", "international space station")),
+                new HashSet<>(trie.getContaining(new String[]{"space"})));
+        assertEquals(Arrays.asList("space shuttle", "space shuttle program"), trie.getContaining(new String[]{"space", "shuttle"}));
+        assertEquals(Collections.singletonList("space shuttle program"), trie.getContaining(new String[]{"shuttle", "program"}));
+        assertTrue(trie.getContaining(new String[]{"space", "program"}).isEmpty());
+        assertTrue(trie.getContaining(new String[]{"station", "space"}).isEmpty());
+    }
+
+    @Test
+    public void testRepeatedWordSequenceIsReportedOnce() {
+        KeywordTrie<String> trie = new KeywordTrie<>();
+        trie.add(new String[]{"data", "to", "data"}, "data to data");
+
+        assertEquals(Collections.singletonList("data to data"), trie.getContaining(new String[]{"data"}));
+    }
+}
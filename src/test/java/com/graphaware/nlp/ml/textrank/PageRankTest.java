@@ -67,6 +67,53 @@ public class PageRankTest extends NLPIntegrationTest {
         }
     }
 
+    @Test
+    public void testPageRankWarmStartsFromStoredScores() {
+        createGraph();
+        String query = "CALL ga.nlp.ml.pageRank({query: \"MATCH (t1:Test)-[r:Related_to]->(t2:Test) "
+                + "RETURN id(t1) as start, id(t2) as dest, r.weight as weight, count(*)\", "
+                + "damp: " + damp + ", iteration: 100, threshold: 0.0000001, writeProperty: 'rank'%s}) YIELD result, iterations, iterationsUnderBudget, iterationsSaved "
+                + "RETURN result, iterations, iterationsUnderBudget, iterationsSaved";
+        Map<String, Object> cold = new HashMap<>();
+        executeInTransaction(String.format(query, ""), (result -> cold.putAll(result.next())));
+        assertEquals(100L - (Long) cold.get("iterations"), cold.get("iterationsUnderBudget"));
+        assertNull(cold.get("iterationsSaved"));
+
+        executeInTransaction(String.format(query, ", seedProperty: 'rank'"), (result -> {
+            Map<String, Object> warm = result.next();
+            assertEquals("SUCCESS", warm.get("result"));
+            assertTrue((Long) warm.get("iterations") < (Long) cold.get("iterations"));
+            assertEquals(100L - (Long) warm.get("iterations"), warm.get("iterationsUnderBudget"));
+            assertEquals((Long) cold.get("iterations") - (Long) warm.get("iterations"), warm.get("iterationsSaved"));
+        }));
+    }
+
+    @Test
+    public void testPageRankIsWrittenInBatchesToTheGivenProperty() {
+        createGraph();
+        executeInTransaction("CALL ga.nlp.ml.pageRank({query: \"MATCH (t1:Test)-[r:Related_to]->(t2:Test) "
+                + "RETURN id(t1) as start, id(t2) as dest, r.weight as weight, count(*)\", "
+                + "damp: " + damp + ", concurrency: 2, writeProperty: 'rank', batchSize: 3}) YIELD result, written RETURN result, written", (result -> {
+            Map<String, Object> row = result.next();
+            assertEquals("SUCCESS", row.get("result"));
+            assertEquals((long) expectedPRs.size(), row.get("written"));
+        }));
+
+        Map<String, Double> ranks = new HashMap<>();
+        executeInTransaction("MATCH (t:Test) RETURN t.value AS tag, t.rank AS pr, t.pagerank AS defaultPr", (result -> {
+            while (result.hasNext()) {
+                Map<String, Object> next = result.next();
+                assertNull(next.get("defaultPr"));
+                assertNotNull(next.get("pr"));
+                ranks.put((String) next.get("tag"), (Double) next.get("pr"));
+            }
+        }));
+        assertEquals(expectedPRs.size(), ranks.size());
+        assertTrue(ranks.get("B") > ranks.get("E"));
+        assertTrue(ranks.get("C") > ranks.get("E"));
+        assertTrue(ranks.get("E") > ranks.get("G"));
+    }
+
     private void createGraph() {
         try (Transaction tx = getDatabase().beginTx()) {
             getDatabase().execute(
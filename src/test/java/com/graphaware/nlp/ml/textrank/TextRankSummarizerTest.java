@@ -0,0 +1,75 @@
+package com.graphaware.nlp.ml.textrank;
+
+import com.graphaware.nlp.NLPIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TextRankSummarizerTest extends NLPIntegrationTest {
+
+    private static final List<List<String>> SENTENCES = Arrays.asList(
+            Arrays.asList("graph", "database", "query"),
+            Arrays.asList("graph", "database", "index", "storage"),
+            Arrays.asList("graph", "query", "language"),
+            Arrays.asList("weather", "forecast", "rain"));
+
+    @Test
+    public void testSentencesAreRankedWithSingleWriteBack() {
+        assertRanks(new HashMap<>());
+    }
+
+    @Test
+    public void testSentencesAreRankedWithMinHashCandidates() {
+        Map<String, Object> params = new HashMap<>();
+        params.put(TextRankSummarizer.PARAMETER_MIN_HASH, true);
+        params.put(TextRankSummarizer.PARAMETER_MIN_HASH_MIN_SENTENCES, 0);
+        params.put(TextRankSummarizer.PARAMETER_MIN_HASH_BANDS, 50);
+        params.put(TextRankSummarizer.PARAMETER_MIN_HASH_ROWS, 1);
+        assertRanks(params);
+    }
+
+    @Test
+    public void testIntersectionSizeOfSortedIds() {
+        assertEquals(2, TextRankSummarizer.intersectionSize(new long[]{1, 3, 5, 7}, new long[]{2, 3, 4, 7, 9}));
+        assertEquals(0, TextRankSummarizer.intersectionSize(new long[]{}, new long[]{1}));
+    }
+
+    private void assertRanks(Map<String, Object> params) {
+        clearDb();
+        Map<String, Object> queryParams = new HashMap<>();
+        queryParams.put("sentences", SENTENCES);
+        executeInTransaction("CREATE (a:AnnotatedText {id: 'summary'}) WITH a "
+                + "UNWIND range(0, size({sentences}) - 1) AS i "
+                + "CREATE (a)-[:CONTAINS_SENTENCE]->(s:Sentence {sentenceNumber: i}) "
+                + "WITH s, {sentences}[i] AS words UNWIND words AS word "
+                + "MERGE (t:Tag {value: word}) ON CREATE SET t.pos = ['NN'] "
+                + "CREATE (s)-[:HAS_TAG]->(t)", queryParams, emptyConsumer());
+
+        TextRankSummarizer summarizer = new TextRankSummarizer();
+        summarizer.setDatabase(getDatabase());
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node annotatedText = getDatabase().findNode(Label.label("AnnotatedText"), "id", "summary");
+            params.put(TextRankSummarizer.PARAMETER_ANNOTATED_NODE, annotatedText);
+            assertTrue(summarizer.evaluate(params));
+            tx.success();
+        }
+
+        executeInTransaction("MATCH (s:Sentence) RETURN s.sentenceNumber AS number, s.summaryRank AS rank, s.summaryRelevance AS relevance ORDER BY number", (result -> {
+            Map<String, Object> first = result.next();
+            assertEquals(1L, ((Number) first.get("rank")).longValue());
+            assertNotNull(first.get("relevance"));
+            assertNotNull(result.next().get("rank"));
+            assertNotNull(result.next().get("rank"));
+            // the unrelated sentence has no co-occurrence, so it is not ranked
+            assertNull(result.next().get("rank"));
+        }));
+    }
+}
@@ -23,6 +23,11 @@ import java.util.*;
 
 import com.graphaware.nlp.NLPManager;
 import com.graphaware.nlp.configuration.DynamicConfiguration;
+import com.graphaware.nlp.configuration.SettingsConstants;
+import com.graphaware.nlp.domain.AnnotatedText;
+import com.graphaware.nlp.domain.Sentence;
+import com.graphaware.nlp.domain.Tag;
+import com.graphaware.nlp.dsl.request.PipelineSpecification;
 import com.graphaware.nlp.stub.StubTextProcessor;
 import com.graphaware.nlp.util.ImportUtils;
 import org.junit.Before;
@@ -179,6 +184,127 @@ public class TextRankTest extends NLPIntegrationTest {
         executeInTransaction("MATCH (n:AnnotatedText) CALL ga.nlp.ml.textRank({annotatedText:n}) YIELD result RETURN count(*)", emptyConsumer());
     }
 
+    @Test
+    public void testTextRankBatchProcessesAllDocumentsAndReturnsResumableCursor() {
+        clearDb();
+        createPipeline(StubTextProcessor.class.getName(), "default");
+        executeInTransaction("UNWIND range(1, 5) AS i CREATE (n:Document) SET n.text = {p0} WITH n " +
+                "CALL ga.nlp.annotate({text: n.text, id: id(n), pipeline:'default'}) YIELD result MERGE (n)-[:HAS_ANNOTATED_TEXT]->(result)", buildSeqParameters(TEXT1), emptyConsumer());
+        Map<String, Object> lastId = new HashMap<>();
+        executeInTransaction("MATCH (n:AnnotatedText) RETURN max(id(n)) AS id", (result -> lastId.put("id", result.next().get("id"))));
+
+        executeInTransaction("CALL ga.nlp.ml.textRank.batch({label: 'AnnotatedText', concurrency: 2, batchSize: 2, removeStopwords: true}) YIELD documents, processed, failed, cursor RETURN documents, processed, failed, cursor", (result -> {
+            Map<String, Object> row = result.next();
+            assertEquals(5L, row.get("documents"));
+            assertEquals(5L, row.get("processed"));
+            assertEquals(0L, row.get("failed"));
+            assertEquals(lastId.get("id"), row.get("cursor"));
+        }));
+        executeInTransaction("CALL ga.nlp.ml.textRank.batch({query: 'MATCH (n:AnnotatedText) RETURN n', afterId: {p0}}) YIELD documents, cursor RETURN documents, cursor", buildSeqParameters(lastId.get("id")), (result -> {
+            Map<String, Object> row = result.next();
+            assertEquals(0L, row.get("documents"));
+            assertEquals(lastId.get("id"), row.get("cursor"));
+        }));
+    }
+
+    @Test
+    public void testTextRankBatchDoesNotDuplicateKeywordsSharedAcrossBatches() {
+        clearDb();
+        createPipeline(StubTextProcessor.class.getName(), "default");
+        executeInTransaction("UNWIND range(1, 12) AS i CREATE (n:Document) SET n.text = {p0} WITH n " +
+                "CALL ga.nlp.annotate({text: n.text, id: id(n), pipeline:'default'}) YIELD result MERGE (n)-[:HAS_ANNOTATED_TEXT]->(result)", buildSeqParameters(TEXT1), emptyConsumer());
+
+        executeInTransaction("CALL ga.nlp.ml.textRank.batch({label: 'AnnotatedText', concurrency: 4, batchSize: 1, removeStopwords: true}) YIELD processed RETURN processed", (result -> {
+            assertEquals(12L, result.next().get("processed"));
+        }));
+        executeInTransaction("MATCH (k:Keyword) WITH k.id AS id, count(*) AS c RETURN count(id) AS keywords, sum(c) AS nodes", (result -> {
+            Map<String, Object> row = result.next();
+            assertTrue((Long) row.get("keywords") > 0);
+            assertEquals(row.get("keywords"), row.get("nodes"));
+        }));
+        executeInTransaction("MATCH (k:Keyword) WHERE size((k)-[:DESCRIBES]->()) <> 12 RETURN count(k) AS c", (result -> {
+            assertEquals(0L, result.next().get("c"));
+        }));
+    }
+
+    @Test
+    public void testTextRankFromAnnotatedTextOnAnnotation() {
+        clearDb();
+        String text = "space shuttle speed brake actuator failed during flight test";
+        AnnotatedText annotatedText = createAnnotatedText(Arrays.asList(text.split(" ")),
+                Arrays.asList("NN", "NN", "NN", "NN", "NN", "VBD", "IN", "NN", "NN"),
+                Collections.emptyMap());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            TextRankResult result = new TextRank.Builder(getDatabase(), getNLPManager().getConfiguration())
+                    .setTopXTags(1.0)
+                    .useDependencies(false)
+                    .build()
+                    .evaluate(annotatedText, "en", 30, 0.85, 0.0001);
+            assertEquals(TextRankResult.TextRankStatus.SUCCESS, result.getStatus());
+            assertTrue(result.getResult().keySet().stream().anyMatch(k -> k.startsWith("space shuttle speed brake actuator")));
+
+            getNLPManager().getConfiguration().updateInternalSetting(SettingsConstants.TEXT_RANK_ON_ANNOTATION, true);
+            getNLPManager().processAnnotationPersist("in-memory", text, annotatedText, pipelineSpecification);
+            tx.success();
+        } finally {
+            getNLPManager().getConfiguration().removeSettingValue(SettingsConstants.TEXT_RANK_ON_ANNOTATION);
+        }
+
+        executeInTransaction("MATCH (k:Keyword)-[:DESCRIBES]->(:AnnotatedText {id: 'in-memory'}) RETURN count(k) AS c", (result -> {
+            assertTrue((Long) result.next().get("c") > 0);
+        }));
+    }
+
+    @Test
+    public void testNamedEntityTokensAreCachedAcrossRuns() {
+        clearDb();
+        TextRank.clearNamedEntityTokensCache();
+        AnnotatedText annotatedText = createAnnotatedText(Arrays.asList("the", "Kessler Orbital Station", "power", "supply", "failure"),
+                Arrays.asList("DT", "NNP", "NN", "NN", "NN"),
+                Collections.singletonMap("Kessler Orbital Station", "LOCATION"));
+        StubTextProcessor processor = (StubTextProcessor) getNLPManager().getTextProcessorsManager().getTextProcessor(StubTextProcessor.class.getName());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            TextRankResult first = new TextRank.Builder(getDatabase(), getNLPManager().getConfiguration()).build()
+                    .evaluate(annotatedText, "en", 30, 0.85, 0.0001);
+            assertEquals(TextRankResult.TextRankStatus.SUCCESS, first.getStatus());
+            assertEquals("CORE.TEXTRANK_PIPELINE_en", processor.getLastPipelineUsed());
+
+            processor.annotateText("something else", pipelineSpecification);
+            TextRankResult second = new TextRank.Builder(getDatabase(), getNLPManager().getConfiguration()).build()
+                    .evaluate(annotatedText, "en", 30, 0.85, 0.0001);
+            assertEquals(first.getResult().keySet(), second.getResult().keySet());
+            assertEquals(pipelineSpecification.getName(), processor.getLastPipelineUsed());
+
+            // any pipeline change makes the cached tokens stale
+            getNLPManager().getConfiguration().storeCustomPipeline(new PipelineSpecification("textrank-cache", StubTextProcessor.class.getName()));
+            new TextRank.Builder(getDatabase(), getNLPManager().getConfiguration()).build()
+                    .evaluate(annotatedText, "en", 30, 0.85, 0.0001);
+            assertEquals("CORE.TEXTRANK_PIPELINE_en", processor.getLastPipelineUsed());
+            getNLPManager().getConfiguration().removePipeline("textrank-cache", StubTextProcessor.class.getName());
+            tx.success();
+        }
+    }
+
+    private AnnotatedText createAnnotatedText(List<String> tokens, List<String> pos, Map<String, String> namedEntities) {
+        AnnotatedText annotatedText = new AnnotatedText();
+        Sentence sentence = new Sentence(String.join(" ", tokens), 0);
+        int begin = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            Tag tag = new Tag(tokens.get(i), "en");
+            tag.setPos(Collections.singletonList(pos.get(i)));
+            if (namedEntities.containsKey(tokens.get(i))) {
+                tag.setNe(Collections.singletonList(namedEntities.get(tokens.get(i))));
+            }
+            sentence.addTagOccurrence(begin, begin + tokens.get(i).length(), tokens.get(i), sentence.addTag(tag), Collections.singletonList("0_" + i));
+            begin += tokens.get(i).length() + 1;
+        }
+        annotatedText.addSentence(sentence);
+
+        return annotatedText;
+    }
+
     @Test
     public void testCreate() throws Exception {
         createGraph("exported.cypher");
@@ -1,19 +1,27 @@
 package com.graphaware.nlp.persistence;
 
 import com.graphaware.nlp.NLPIntegrationTest;
+import com.graphaware.nlp.configuration.SettingsConstants;
 import com.graphaware.nlp.domain.AnnotatedText;
+import com.graphaware.nlp.domain.OptimizedCoreference;
 import com.graphaware.nlp.domain.Sentence;
+import com.graphaware.nlp.domain.Span;
 import com.graphaware.nlp.domain.Tag;
+import com.graphaware.nlp.domain.TypedDependency;
+import com.graphaware.nlp.persistence.persisters.AnnotatedTextPersister;
 import com.graphaware.nlp.processor.TextProcessor;
 import com.graphaware.nlp.stub.StubTextProcessor;
 import com.graphaware.nlp.util.TestNLPGraph;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -27,6 +35,11 @@ public class AnnotatedTextPersistenceTest extends NLPIntegrationTest {
         executeInTransaction("CALL ga.nlp.processor.pipeline.default({p0})", buildSeqParameters("tokenizer"), emptyConsumer());
     }
 
+    @After
+    public void resetSettings() {
+        getNLPManager().getConfiguration().removeSettingValue(SettingsConstants.WRITE_SHARED_NODES_ON_CHANGE_ONLY);
+    }
+
     @Test
     public void testTagsHavingTwoDifferentPOSInDifferentSentencesShouldReflectBothPOS() {
         String text = "The discipline of preparing and peer reviewing formal engineering reports leads to a high degree of accuracy and technical rigor.";
@@ -112,6 +125,167 @@ public class AnnotatedTextPersistenceTest extends NLPIntegrationTest {
         }));
     }
 
+    @Test
+    public void testTagsAreResolvedOnceAcrossDocumentsPersistedInTheSameSession() {
+        clearDb();
+        TestNLPGraph test = new TestNLPGraph(getDatabase());
+        AnnotatedText at1 = createAnnotatedTextFor("The reports are ready", "reports", "VGB");
+        AnnotatedText at2 = createAnnotatedTextFor("Read the reports", "reports", "NNS");
+        AnnotatedTextPersister persister = getNLPManager().getPersister(AnnotatedText.class);
+        try (Transaction tx = getDatabase().beginTx()) {
+            PersistenceSession session = new PersistenceSession();
+            persister.persist(at1, "test-a", "1", session);
+            persister.persist(at2, "test-b", "2", session);
+            tx.success();
+        }
+        test.assertTagNodesCount(6);
+        test.assertTagWithValueHasPos("reports", "VGB");
+        test.assertTagWithValueHasPos("reports", "NNS");
+    }
+
+    @Test
+    public void testSessionTracksProcessedTagsByIdAndContent() {
+        PersistenceSession session = new PersistenceSession();
+        Tag tag = new Tag("report", "en");
+        tag.setPos(Collections.singletonList("NN"));
+        assertTrue(session.markTagProcessed(tag));
+        assertFalse(session.markTagProcessed(tag));
+
+        Tag sameContent = new Tag("report", "en");
+        sameContent.setPos(Collections.singletonList("NN"));
+        assertFalse(session.markTagProcessed(sameContent));
+
+        Tag changedContent = new Tag("report", "en");
+        changedContent.setPos(Collections.singletonList("VB"));
+        assertTrue(session.markTagProcessed(changedContent));
+    }
+
+    @Test
+    public void testSessionKeepsTheLatestTagOccurrenceOfARewrittenSentence() {
+        PersistenceSession session = new PersistenceSession();
+        session.registerTagOccurrenceNode("doc_0", new Span(0, 4), 1L);
+        session.registerTagOccurrenceNode("doc_0", new Span(0, 4), 2L);
+        assertEquals(Long.valueOf(2L), session.getTagOccurrenceNodeId("doc_0", new Span(0, 4)));
+
+        session.clearTagOccurrenceNodes("doc_0");
+        assertNull(session.getTagOccurrenceNodeId("doc_0", new Span(0, 4)));
+    }
+
+    @Test
+    public void testSharedTagsAreOnlyWrittenOnChangeWhenEnabled() {
+        clearDb();
+        getNLPManager().getConfiguration().updateInternalSetting(SettingsConstants.WRITE_SHARED_NODES_ON_CHANGE_ONLY, true);
+        TestNLPGraph test = new TestNLPGraph(getDatabase());
+        AnnotatedTextPersister persister = getNLPManager().getPersister(AnnotatedText.class);
+        try (Transaction tx = getDatabase().beginTx()) {
+            persister.persist(createAnnotatedTextFor("The reports are ready", "reports", "VGB"), "test-a", "1", new PersistenceSession());
+            tx.success();
+        }
+        try (Transaction tx = getDatabase().beginTx()) {
+            persister.persist(createAnnotatedTextFor("Read the reports", "reports", "VGB"), "test-b", "2", new PersistenceSession());
+            tx.success();
+        }
+        executeInTransaction("MATCH (t:Tag {value: 'reports'}) RETURN t.lastTxId AS txId", (result -> {
+            assertEquals("1", result.next().get("txId"));
+        }));
+        try (Transaction tx = getDatabase().beginTx()) {
+            persister.persist(createAnnotatedTextFor("Print the reports", "reports", "NNS"), "test-c", "3", new PersistenceSession());
+            tx.success();
+        }
+        test.assertTagWithValueHasPos("reports", "VGB");
+        test.assertTagWithValueHasPos("reports", "NNS");
+    }
+
+    @Test
+    public void testDependenciesAndCoreferencesAreWiredBetweenTagOccurrences() {
+        clearDb();
+        AnnotatedText annotatedText = new AnnotatedText();
+        Sentence first = new Sentence("John runs", 0);
+        first.addTagOccurrence(0, 4, "John", first.addTag(new Tag("John", "en")), Collections.singletonList("0_1"));
+        first.addTagOccurrence(5, 9, "runs", first.addTag(new Tag("run", "en")), Collections.singletonList("0_2"));
+        first.addTypedDependency(new TypedDependency("0_2", "0_1", "nsubj", null));
+        annotatedText.addSentence(first);
+        Sentence second = new Sentence("He sleeps", 1);
+        second.addTagOccurrence(0, 2, "He", second.addTag(new Tag("he", "en")), Collections.singletonList("1_1"));
+        second.addTagOccurrence(3, 9, "sleeps", second.addTag(new Tag("sleep", "en")), Collections.singletonList("1_2"));
+        second.getTagOccurrences().get(0).get(0).setCoreference(new OptimizedCoreference(first, first.getTagOccurrences().get(0).get(0)));
+        annotatedText.addSentence(second);
+        try (Transaction tx = getDatabase().beginTx()) {
+            getNLPManager().getPersister(AnnotatedText.class).persist(annotatedText, "test", "1");
+            tx.success();
+        }
+        executeInTransaction("MATCH (s:TagOccurrence {value: 'runs'})-[:NSUBJ]->(t:TagOccurrence {value: 'John'}) RETURN count(*) AS c", (result -> {
+            assertEquals(1L, result.next().get("c"));
+        }));
+        executeInTransaction("MATCH (s:TagOccurrence {value: 'He'})-[:COREF]->(t:TagOccurrence {value: 'John'}) RETURN count(*) AS c", (result -> {
+            assertEquals(1L, result.next().get("c"));
+        }));
+    }
+
+    @Test
+    public void testIncrementalPersistenceShiftsOffsetsOfKeptSentences() {
+        clearDb();
+        try (Transaction tx = getDatabase().beginTx()) {
+            getNLPManager().persistAnnotatedText(createTwoSentencesText("John runs.", 0), "test", "1", new PersistenceSession(), true);
+            tx.success();
+        }
+        Long keptId = getSentenceNodeId("He sleeps.");
+        try (Transaction tx = getDatabase().beginTx()) {
+            getNLPManager().persistAnnotatedText(createTwoSentencesText("Old John runs.", 1), "test", "2", new PersistenceSession(), true);
+            tx.success();
+        }
+        assertEquals(keptId, getSentenceNodeId("He sleeps."));
+        executeInTransaction("MATCH (s:Sentence {text: 'He sleeps.'})-[:SENTENCE_TAG_OCCURRENCE]->(o:TagOccurrence) "
+                + "RETURN s.sentenceNumber AS number, s.id AS id, o.value AS value, o.startPosition AS start, o.endPosition AS end ORDER BY start", (result -> {
+            Map<String, Object> he = result.next();
+            assertEquals(2, ((Number) he.get("number")).intValue());
+            assertEquals("test_2", he.get("id"));
+            assertEquals("He", he.get("value"));
+            assertEquals(22, ((Number) he.get("start")).intValue());
+            assertEquals(24, ((Number) he.get("end")).intValue());
+            Map<String, Object> sleeps = result.next();
+            assertEquals(25, ((Number) sleeps.get("start")).intValue());
+            assertEquals(31, ((Number) sleeps.get("end")).intValue());
+        }));
+        executeInTransaction("MATCH (:AnnotatedText {id: 'test'})-[:CONTAINS_SENTENCE]->(s:Sentence) RETURN count(s) AS c", (result -> {
+            assertEquals(3L, result.next().get("c"));
+        }));
+    }
+
+    private AnnotatedText createTwoSentencesText(String firstText, int firstNumber) {
+        AnnotatedText annotatedText = new AnnotatedText();
+        int offset = 0;
+        if (firstNumber > 0) {
+            Sentence heading = new Sentence("Title.", 0);
+            heading.addTagOccurrence(0, 5, "Title", heading.addTag(new Tag("title", "en")), Collections.singletonList("0_1"));
+            annotatedText.addSentence(heading);
+            offset = 7;
+        }
+        Sentence first = new Sentence(firstText, firstNumber);
+        int begin = offset;
+        for (String token : firstText.replace(".", "").split(" ")) {
+            first.addTagOccurrence(begin, begin + token.length(), token, first.addTag(new Tag(token.toLowerCase(), "en")),
+                    Collections.singletonList(firstNumber + "_" + begin));
+            begin += token.length() + 1;
+        }
+        annotatedText.addSentence(first);
+        offset += firstText.length() + 1;
+        Sentence second = new Sentence("He sleeps.", firstNumber + 1);
+        second.addTagOccurrence(offset, offset + 2, "He", second.addTag(new Tag("he", "en")), Collections.singletonList("1_1"));
+        second.addTagOccurrence(offset + 3, offset + 9, "sleeps", second.addTag(new Tag("sleep", "en")), Collections.singletonList("1_2"));
+        annotatedText.addSentence(second);
+
+        return annotatedText;
+    }
+
+    private Long getSentenceNodeId(String text) {
+        try (Transaction tx = getDatabase().beginTx()) {
+            Long nodeId = getDatabase().findNode(Label.label("Sentence"), "text", text).getId();
+            tx.success();
+            return nodeId;
+        }
+    }
+
     private AnnotatedText createAnnotatedTextFor(String text, String expectedTokenForPOS, String expectedPOS) {
         AnnotatedText annotatedText = new AnnotatedText();
         annotatedText.setText(text);
@@ -0,0 +1,48 @@
+package com.graphaware.nlp.persistence;
+
+import com.graphaware.nlp.NLPIntegrationTest;
+import com.graphaware.nlp.domain.VectorContainer;
+import com.graphaware.nlp.persistence.persisters.VectorPersister;
+import com.graphaware.nlp.vector.SparseVector;
+import com.graphaware.nlp.vector.VectorHandler;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class VectorPersisterTest extends NLPIntegrationTest {
+
+    @Test
+    public void testSparseVectorIdsAreStoredLosslessly() {
+        clearDb();
+        SparseVector vector = new SparseVector(new long[]{5L, 16777217L}, new float[]{0.5f, 1.5f});
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node node = getDatabase().createNode();
+            VectorPersister persister = getNLPManager().getPersister(VectorContainer.class);
+            persister.persist(new VectorContainer(node.getId(), "vector", new VectorHandler(vector)));
+
+            SparseVector stored = (SparseVector) ((VectorContainer) persister.fromNode(node, "vector")).getVectorHandler().getVector();
+            assertArrayEquals(new long[]{5L, 16777217L}, stored.getIndexArray());
+            assertArrayEquals(new float[]{0.5f, 1.5f}, stored.getValuesArray(), 0.0f);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void testLegacySparseVectorFormatIsRead() {
+        clearDb();
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node node = getDatabase().createNode();
+            VectorPersister persister = getNLPManager().getPersister(VectorContainer.class);
+            persister.storeVector(node, "vector", SparseVector.class.getName(), new float[]{2f, 3f, 8f, 0.1f, 0.2f}, Optional.empty());
+
+            SparseVector stored = (SparseVector) ((VectorContainer) persister.fromNode(node, "vector")).getVectorHandler().getVector();
+            assertArrayEquals(new long[]{3L, 8L}, stored.getIndexArray());
+            assertArrayEquals(new float[]{0.1f, 0.2f}, stored.getValuesArray(), 0.0f);
+            tx.success();
+        }
+    }
+}
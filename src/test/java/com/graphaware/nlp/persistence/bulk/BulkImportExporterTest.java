@@ -0,0 +1,85 @@
+package com.graphaware.nlp.persistence.bulk;
+
+import com.graphaware.nlp.NLPIntegrationTest;
+import com.graphaware.nlp.processor.TextProcessor;
+import com.graphaware.nlp.stub.StubTextProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BulkImportExporterTest extends NLPIntegrationTest {
+
+    private File folder;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        createPipeline(StubTextProcessor.class.getName(), TextProcessor.DEFAULT_PIPELINE);
+        Path importDirectory = getNLPManager().getImportDirectory();
+        Files.createDirectories(importDirectory);
+        folder = Files.createTempDirectory(importDirectory, "bulk-export").toFile();
+    }
+
+    @After
+    public void deleteFolder() throws Exception {
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testCorpusIsExportedAsImportFilesWithDeduplicatedTags() throws Exception {
+        File input = new File(folder, "corpus.jsonl");
+        Files.write(input.toPath(), Arrays.asList(
+                "{\"id\": \"doc-1\", \"text\": \"hello my name is Frank. Frank is here\"}",
+                "",
+                "{\"id\": \"doc-2\", \"text\": \"hello Frank\"}"
+        ), StandardCharsets.UTF_8);
+        File output = new File(folder, "out");
+
+        executeInTransaction("CALL ga.nlp.annotate.export({input: {p0}, output: {p1}, pipeline: 'tokenizer', concurrency: 2}) YIELD documents, failed, sentences RETURN documents, failed, sentences",
+                buildSeqParameters(folder.getName() + "/corpus.jsonl", output.getAbsolutePath()), (result -> {
+            assertTrue(result.hasNext());
+            Map<String, Object> row = result.next();
+            assertEquals(2L, row.get("documents"));
+            assertEquals(0L, row.get("failed"));
+            assertEquals(3L, row.get("sentences"));
+        }));
+
+        List<String> annotatedTexts = Files.readAllLines(new File(output, "nodes-annotatedtext.csv").toPath(), StandardCharsets.UTF_8);
+        assertEquals("id:ID(AnnotatedText),numTerms:int,:LABEL", annotatedTexts.get(0));
+        assertEquals(3, annotatedTexts.size());
+
+        List<String> tags = Files.readAllLines(new File(output, "nodes-tag.csv").toPath(), StandardCharsets.UTF_8);
+        assertEquals(1, tags.stream().filter(line -> line.startsWith("\"hello_en\"")).count());
+
+        List<String> nextSentences = Files.readAllLines(new File(output, "rels-sentence-sentence.csv").toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, nextSentences.size());
+        assertEquals("\"doc-1_0\",\"doc-1_1\",\"NEXT_SENTENCE\"", nextSentences.get(1));
+    }
+
+    @Test
+    public void testPathsOutsideOfTheImportDirectoryAreRejected() throws Exception {
+        File input = new File(folder, "corpus.jsonl");
+        Files.write(input.toPath(), Arrays.asList("{\"id\": \"doc-1\", \"text\": \"hello Frank\"}"), StandardCharsets.UTF_8);
+        File outside = folder.getParentFile().getParentFile();
+
+        executeInTransaction("CALL ga.nlp.annotate.export({input: {p0}, output: {p1}, pipeline: 'tokenizer'}) YIELD documents RETURN documents",
+                buildSeqParameters(folder.getName() + "/corpus.jsonl", "../out"), emptyConsumer(), RuntimeException.class);
+        executeInTransaction("CALL ga.nlp.annotate.export({input: {p0}, output: {p1}, pipeline: 'tokenizer'}) YIELD documents RETURN documents",
+                buildSeqParameters(input.getAbsolutePath(), new File(outside, "out").getAbsolutePath()), emptyConsumer(), RuntimeException.class);
+        assertFalse(new File(outside, "out").exists());
+    }
+}
@@ -0,0 +1,53 @@
+package com.graphaware.nlp.processor;
+
+import com.graphaware.nlp.domain.AnnotatedText;
+import com.graphaware.nlp.dsl.request.PipelineSpecification;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AnnotationCacheTest {
+
+    @Test
+    public void testAnnotationsAreCachedPerPipelineAndVersion() {
+        AnnotationCache cache = new AnnotationCache();
+        PipelineSpecification pipeline = new PipelineSpecification("tokenizer", "stub");
+        AtomicInteger annotations = new AtomicInteger();
+
+        AnnotatedText first = cache.get("hello world", pipeline, 1, () -> annotate(annotations));
+        assertSame(first, cache.get("hello world", pipeline, 1, () -> annotate(annotations)));
+        assertEquals(1, annotations.get());
+
+        cache.get("hello world", pipeline, 2, () -> annotate(annotations));
+        cache.get("hello world", new PipelineSpecification("other", "stub"), 2, () -> annotate(annotations));
+        assertEquals(3, annotations.get());
+        assertEquals(1L, cache.getStats().get("hits"));
+        assertEquals(3L, cache.getStats().get("misses"));
+
+        cache.invalidate("tokenizer");
+        cache.get("hello world", pipeline, 2, () -> annotate(annotations));
+        assertEquals(4, annotations.get());
+    }
+
+    @Test
+    public void testAnnotationErrorsAreNotCached() {
+        AnnotationCache cache = new AnnotationCache();
+        PipelineSpecification pipeline = new PipelineSpecification("tokenizer", "stub");
+        try {
+            cache.get("hello", pipeline, 1, () -> {
+                throw new IllegalStateException("annotation failed");
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("annotation failed", e.getMessage());
+        }
+        assertEquals(0L, cache.getStats().get("size"));
+    }
+
+    private AnnotatedText annotate(AtomicInteger annotations) {
+        annotations.incrementAndGet();
+        return new AnnotatedText();
+    }
+}
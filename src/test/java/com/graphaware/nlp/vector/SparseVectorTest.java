@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import org.junit.Test;
@@ -127,6 +128,21 @@ public class SparseVectorTest {
 
     @Test
     public void testNorm() {
+        SparseVector vector = new SparseVector(new long[]{2L, 7L}, new float[]{3f, 4f});
+        assertEquals(5f, vector.norm(), 0.0f);
+        assertEquals(0f, new SparseVector().norm(), 0.0f);
+    }
+
+    @Test
+    public void testIdsAboveFloatPrecisionAreKept() {
+        Map<Long, Float> map = new HashMap<>();
+        map.put(16777217L, 1.0f);
+        map.put(16777216L, 2.0f);
+        SparseVector vector = (SparseVector) SparseVector.fromMap(map);
+        assertArrayEquals(new long[]{16777216L, 16777217L}, vector.getIndexArray());
+
+        SparseVector other = new SparseVector(new long[]{16777217L}, new float[]{3.0f});
+        assertEquals(3f, vector.dot(other), 0.0f);
     }
 
 }